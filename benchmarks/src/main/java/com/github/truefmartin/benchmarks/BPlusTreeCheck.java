@@ -0,0 +1,236 @@
+package com.github.truefmartin.benchmarks;
+
+import com.github.truefmartin.storage.BPlusTree;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+/**
+ * Runs random inserts, deletes and range searches against a {@link BPlusTree} and the same against a TreeSet, and
+ * fails on the first answer that differs. Keys are long and the page cache small, so leaves and internal nodes split
+ * over several levels and pages are evicted and read back. Then checks a close and reopen, a bulk load followed by
+ * more changes, and the rebuild of a file left unflushed as by a crash.
+ * Run with {@code java -cp target/benchmarks.jar com.github.truefmartin.benchmarks.BPlusTreeCheck [seed]}.
+ */
+public class BPlusTreeCheck {
+    private static final int KEY_SIZE = 64;
+    private static final int CACHE_PAGES = 8;
+    private static final int OPERATIONS = 100_000;
+    private static final int KEYS = 5_000;
+    private static final int VALUES = 20;
+
+    private static final class Entry {
+        final byte[] key;
+        final int value;
+
+        Entry(byte[] key, int value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int byKey = Arrays.compareUnsigned(a.key, b.key);
+        return byKey != 0 ? byKey : Integer.compare(a.value, b.value);
+    };
+
+    private final SplittableRandom random;
+    private final TreeSet<Entry> expected = new TreeSet<>(ORDER);
+
+    private BPlusTreeCheck(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        Path directory = Files.createTempDirectory("bplustree-check");
+        try {
+            new BPlusTreeCheck(seed).run(directory);
+        } catch (AssertionError e) {
+            System.err.println("seed " + seed + ": " + e.getMessage());
+            System.exit(1);
+        } finally {
+            deleteDirectory(directory);
+        }
+        System.out.println("The B+tree matched the TreeSet throughout.");
+    }
+
+    private void run(Path directory) throws IOException {
+        Path file = directory.resolve("inserted.idx");
+        try (BPlusTree tree = new BPlusTree(file, KEY_SIZE, CACHE_PAGES)) {
+            check(tree.needsRebuild(), "a new file needs a rebuild");
+            randomChanges(tree, OPERATIONS);
+            System.out.println("after inserts and deletes: " + tree);
+        }
+        try (BPlusTree tree = new BPlusTree(file, KEY_SIZE, CACHE_PAGES)) {
+            check(!tree.needsRebuild(), "a closed file needs no rebuild");
+            checkAll(tree, "after reopening");
+            randomChanges(tree, OPERATIONS / 10);
+        }
+
+        Path loaded = directory.resolve("loaded.idx");
+        BPlusTree tree = new BPlusTree(loaded, KEY_SIZE, CACHE_PAGES);
+        bulkLoad(tree);
+        checkAll(tree, "after the bulk load");
+        // Nodes are 90% full after a bulk load, so the first inserts split them
+        randomChanges(tree, OPERATIONS / 2);
+        System.out.println("after a bulk load and changes: " + tree);
+        tree.flush();
+        // Changed and never flushed nor closed, as if the process died
+        randomChanges(tree, 100);
+        try (BPlusTree reopened = new BPlusTree(loaded, KEY_SIZE, CACHE_PAGES)) {
+            check(reopened.needsRebuild(), "a file changed after its last flush needs a rebuild");
+            bulkLoad(reopened);
+            checkAll(reopened, "after the rebuild");
+        }
+        try (BPlusTree reopened = new BPlusTree(loaded, KEY_SIZE, CACHE_PAGES)) {
+            check(!reopened.needsRebuild(), "a rebuilt and closed file needs no rebuild");
+            checkAll(reopened, "after reopening the rebuilt file");
+        }
+    }
+
+    private void randomChanges(BPlusTree tree, int operations) {
+        List<Entry> entries = new ArrayList<>(expected);
+        for (int i = 0; i < operations; i++) {
+            int operation = random.nextInt(10);
+            if (operation < 6) {
+                Entry entry = randomEntry();
+                boolean added = expected.add(entry);
+                check(tree.insert(entry.key, entry.value) == added, "insert of " + describe(entry) + " returned " + !added);
+                if (added) {
+                    entries.add(entry);
+                }
+            } else if (operation < 9) {
+                // Half of the deletes hit an entry in the tree
+                Entry entry = !entries.isEmpty() && random.nextBoolean()
+                        ? entries.get(random.nextInt(entries.size()))
+                        : randomEntry();
+                boolean removed = expected.remove(entry);
+                check(tree.delete(entry.key, entry.value) == removed, "delete of " + describe(entry) + " returned " + !removed);
+            } else {
+                checkRandomRange(tree);
+            }
+            check(tree.size() == expected.size(), "size " + tree.size() + " after " + i + " changes, expected " + expected.size());
+            if (entries.size() > 2 * expected.size()) {
+                entries = new ArrayList<>(expected);
+            }
+        }
+    }
+
+    // A prefix search, an exact key, or any range of keys
+    private void checkRandomRange(BPlusTree tree) {
+        byte[] low;
+        byte[] high;
+        int kind = random.nextInt(3);
+        if (kind == 0) {
+            String prefix = keyString(random.nextInt(KEYS)).substring(0, 2 + random.nextInt(4));
+            low = key(prefix, (byte) 0);
+            high = key(prefix, (byte) 0xFF);
+        } else if (kind == 1) {
+            low = key(keyString(random.nextInt(KEYS)), (byte) 0);
+            high = low;
+        } else {
+            low = key(keyString(random.nextInt(KEYS)), (byte) 0);
+            high = key(keyString(random.nextInt(KEYS)), (byte) 0);
+            if (Arrays.compareUnsigned(low, high) > 0) {
+                byte[] swap = low;
+                low = high;
+                high = swap;
+            }
+        }
+        checkRange(tree, low, high, "range " + printable(low) + " to " + printable(high));
+    }
+
+    private void checkAll(BPlusTree tree, String when) {
+        check(tree.size() == expected.size(), when + ": size " + tree.size() + ", expected " + expected.size());
+        byte[] low = new byte[KEY_SIZE];
+        byte[] high = new byte[KEY_SIZE];
+        Arrays.fill(high, (byte) 0xFF);
+        checkRange(tree, low, high, when + ": every entry");
+    }
+
+    private void checkRange(BPlusTree tree, byte[] low, byte[] high, String what) {
+        NavigableSet<Entry> range = expected.subSet(new Entry(low, Integer.MIN_VALUE), true, new Entry(high, Integer.MAX_VALUE), true);
+        List<Integer> want = new ArrayList<>(range.size());
+        for (Entry entry : range) {
+            want.add(entry.value);
+        }
+        List<Integer> got = new ArrayList<>(want.size());
+        int found = tree.range(low, high, got::add);
+        check(found == got.size() && got.equals(want), what + ": got " + got.size() + " values, expected " + want.size()
+                + (got.size() == want.size() ? ", in another order" : ""));
+    }
+
+    private void bulkLoad(BPlusTree tree) {
+        List<Entry> entries = new ArrayList<>(expected);
+        // Any order is accepted
+        for (int i = entries.size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Entry swap = entries.get(i);
+            entries.set(i, entries.get(j));
+            entries.set(j, swap);
+        }
+        byte[] keys = new byte[entries.size() * KEY_SIZE];
+        int[] values = new int[entries.size()];
+        for (int i = 0; i < values.length; i++) {
+            System.arraycopy(entries.get(i).key, 0, keys, i * KEY_SIZE, KEY_SIZE);
+            values[i] = entries.get(i).value;
+        }
+        tree.bulkLoad(keys, values);
+    }
+
+    // Keys are few and values repeat, so a key has several values and entries are inserted more than once
+    private Entry randomEntry() {
+        return new Entry(key(keyString(random.nextInt(KEYS)), (byte) 0), random.nextInt(VALUES) - VALUES / 2);
+    }
+
+    private static String keyString(int key) {
+        return String.format("k%05d", key);
+    }
+
+    private static byte[] key(String prefix, byte padding) {
+        byte[] key = new byte[KEY_SIZE];
+        Arrays.fill(key, padding);
+        byte[] bytes = prefix.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, key, 0, bytes.length);
+        return key;
+    }
+
+    private static String describe(Entry entry) {
+        return printable(entry.key) + "=" + entry.value;
+    }
+
+    private static String printable(byte[] key) {
+        StringBuilder text = new StringBuilder();
+        for (byte b : key) {
+            if (b >= ' ' && b < 0x7F) {
+                text.append((char) b);
+            }
+        }
+        return text.toString();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
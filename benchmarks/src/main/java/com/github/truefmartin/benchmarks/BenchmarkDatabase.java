@@ -0,0 +1,84 @@
+package com.github.truefmartin.benchmarks;
+
+import com.github.truefmartin.generator.DataGenerator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.stream.IntStream;
+
+/**
+ * An in-process H2 database for the benchmarks. The schema is created by Hibernate from the entity mappings,
+ * then seeded here with the {@link DataGenerator}.
+ */
+public class BenchmarkDatabase {
+    private static final String URL =
+            "jdbc:h2:mem:bench;MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=DATE,TIME,TYPE;" +
+                    // The pool passes on the MySQL prepared statement cache settings from hibernate.cfg.xml
+                    "IGNORE_UNKNOWN_SETTINGS=TRUE;" +
+                    // Native queries leave some tables unqualified, as MySQL resolves them against the default database
+                    "INIT=CREATE SCHEMA IF NOT EXISTS fcmartin\\;SET SCHEMA fcmartin";
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Hibernate properties that point the Model at the in-process database instead of MySQL.
+     * @return the overrides to pass to the Model
+     */
+    public static Properties hibernateProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        properties.setProperty("hibernate.connection.url", URL);
+        properties.setProperty("hibernate.connection.username", "sa");
+        properties.setProperty("hibernate.connection.password", "");
+        properties.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        properties.setProperty("hibernate.hbm2ddl.auto", "create");
+        properties.setProperty("hibernate.stats.dump_interval", "0");
+        return properties;
+    }
+
+    public static Connection connect() throws SQLException {
+        return DriverManager.getConnection(URL, "sa", "");
+    }
+
+    /**
+     * Fills the empty schema with generated restaurants, dishes, menu items and orders. Ids start at 1,
+     * the generator also moves the id_generator rows past them.
+     * @param settings sizes of the generated data
+     * @throws Exception if the load fails
+     */
+    public static void seed(DataGenerator.Settings settings) throws Exception {
+        new DataGenerator(settings, BenchmarkDatabase::connect).generate();
+    }
+
+    /**
+     * Ids returned by a query of a single int column, e.g. the dishes that are on at least one menu.
+     * @param sql the query
+     * @return the ids
+     * @throws SQLException if the query fails
+     */
+    public static int[] ids(String sql) throws SQLException {
+        try (Connection connection = connect();
+             var statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(sql)) {
+            IntStream.Builder ids = IntStream.builder();
+            while (result.next()) {
+                ids.add(result.getInt(1));
+            }
+            return ids.build().toArray();
+        }
+    }
+
+    /**
+     * Removes the four relations and the order journal checkpoints, so the next trial starts from an empty database.
+     * @throws SQLException if the drop fails
+     */
+    public static void drop() throws SQLException {
+        try (Connection connection = connect(); var statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS food_order, food_order_archive, menu_item, dish, restaurant, order_journal CASCADE");
+        }
+    }
+}
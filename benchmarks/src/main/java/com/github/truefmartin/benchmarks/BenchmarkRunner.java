@@ -0,0 +1,28 @@
+package com.github.truefmartin.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with throughput, sampled latency (p50/p99) and the gc profiler for allocation rate.
+ * Any JMH command line option can be passed on top, e.g. {@code java -jar target/benchmarks.jar -p orders=10000000}.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        var commandLine = new CommandLineOptions(args);
+        var options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        // Benchmark names on the command line select a subset, otherwise run them all
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(ModelBenchmark.class.getSimpleName());
+            options.include(FixedLengthDatabaseBenchmark.class.getSimpleName());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.truefmartin.benchmarks;
+
+import com.github.truefmartin.Model;
+import com.github.truefmartin.OrderFilter;
+import com.github.truefmartin.exceptions.EmptyResultsException;
+import com.github.truefmartin.generator.DataGenerator;
+import com.github.truefmartin.models.MenuItemEntity;
+import com.github.truefmartin.models.RestaurantEntity;
+import com.github.truefmartin.storage.FixedLengthDatabase;
+import com.github.truefmartin.views.DisplayDishMenu;
+import com.github.truefmartin.views.DisplayDishMenuOrder;
+import com.github.truefmartin.views.DisplayRestaurantDishOrder;
+import com.github.truefmartin.views.DisplayRestaurantMenu;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The operations of {@link ModelBenchmark} against a {@link FixedLengthDatabase} copied from the same synthetic data,
+ * to compare the embedded store with the database behind the Model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FixedLengthDatabaseBenchmark {
+    private static final int ORDER_PAGE_SIZE = 20;
+
+    @Param({"1000"})
+    public int restaurants;
+
+    @Param({"500"})
+    public int dishes;
+
+    @Param({"100000"})
+    public long orders;
+
+    private Path directory;
+    private FixedLengthDatabase database;
+    private int[] dishesOnMenus;
+    private int[] restaurantsWithOrders;
+    private int menuItems;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkDatabase.drop();
+        DataGenerator.Settings settings = new DataGenerator.Settings();
+        settings.restaurants = restaurants;
+        settings.dishes = dishes;
+        settings.orders = orders;
+        try (Model model = new Model(BenchmarkDatabase.hibernateProperties())) {
+            BenchmarkDatabase.seed(settings);
+            dishesOnMenus = BenchmarkDatabase.ids("SELECT DISTINCT dish_no FROM menu_item");
+            restaurantsWithOrders = BenchmarkDatabase.ids(
+                    "SELECT DISTINCT mi.restaurant_no FROM food_order o JOIN menu_item mi ON o.item_no = mi.item_no");
+            menuItems = BenchmarkDatabase.ids("SELECT max(item_no) FROM menu_item")[0];
+            directory = Files.createTempDirectory("fixed-length-db");
+            database = new FixedLengthDatabase(directory);
+            database.copyFrom(model);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public RestaurantEntity getRestaurant() throws EmptyResultsException {
+        int id = ThreadLocalRandom.current().nextInt(1, restaurants + 1);
+        return database.getRestaurant(DataGenerator.restaurantName(id), DataGenerator.cityName(id));
+    }
+
+    @Benchmark
+    public List<RestaurantEntity> findRestaurants() {
+        int id = ThreadLocalRandom.current().nextInt(1, restaurants + 1);
+        return database.findRestaurants(DataGenerator.restaurantName(id).substring(0, 3));
+    }
+
+    @Benchmark
+    public List<DisplayDishMenu> getMenusOfRestaurant() throws EmptyResultsException {
+        int id = ThreadLocalRandom.current().nextInt(1, restaurants + 1);
+        return database.getMenusOfRestaurant(DataGenerator.restaurantName(id), DataGenerator.cityName(id));
+    }
+
+    @Benchmark
+    public List<DisplayRestaurantMenu> getMenusOfDish() throws EmptyResultsException {
+        return database.getMenusOfDish(DataGenerator.dishName(randomOf(dishesOnMenus)));
+    }
+
+    @Benchmark
+    public List<DisplayDishMenuOrder> getOrdersOfRestaurant() throws EmptyResultsException {
+        int id = randomOf(restaurantsWithOrders);
+        return database.getOrdersOfRestaurant(DataGenerator.restaurantName(id), DataGenerator.cityName(id));
+    }
+
+    @Benchmark
+    public List<DisplayRestaurantDishOrder> getOrdersPage() {
+        return database.getOrdersPage(OrderFilter.all(), ThreadLocalRandom.current().nextInt((int) orders), ORDER_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public void addOrder() {
+        MenuItemEntity menu = new MenuItemEntity();
+        menu.setItemNo(ThreadLocalRandom.current().nextInt(1, menuItems + 1));
+        database.addOrder(menu);
+    }
+
+    private static int randomOf(int[] ids) {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+}
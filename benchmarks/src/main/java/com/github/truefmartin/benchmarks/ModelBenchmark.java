@@ -0,0 +1,321 @@
+package com.github.truefmartin.benchmarks;
+
+import com.github.truefmartin.AsyncModel;
+import com.github.truefmartin.Model;
+import com.github.truefmartin.OrderFilter;
+import com.github.truefmartin.analytics.SalesGrouping;
+import com.github.truefmartin.analytics.SalesReport;
+import com.github.truefmartin.catalog.CatalogReplica;
+import com.github.truefmartin.catalog.MenuVisitor;
+import com.github.truefmartin.exceptions.EmptyResultsException;
+import com.github.truefmartin.generator.DataGenerator;
+import com.github.truefmartin.models.DishEntity;
+import com.github.truefmartin.models.FoodOrderEntity;
+import com.github.truefmartin.models.MenuItemEntity;
+import com.github.truefmartin.models.RestaurantEntity;
+import com.github.truefmartin.models.Type;
+import com.github.truefmartin.views.DisplayDishMenu;
+import com.github.truefmartin.views.DisplayDishMenuOrder;
+import com.github.truefmartin.views.DisplayRestaurantDishOrder;
+import com.github.truefmartin.views.DisplayRestaurantMenu;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH harness for every public Model operation, run against the in-process database from {@link BenchmarkDatabase}.
+ * Data sizes are JMH parameters, e.g. {@code -p restaurants=10000 -p orders=10000000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+    private static final int ORDERS_PER_BULK_ADD = 1000;
+    private static final int ORDER_PAGE_SIZE = 20;
+    private static final int RESTAURANTS_PER_LOOKUP = 8;
+    // The last month of the year of orders the generator makes by default
+    private static final LocalDate RECENT_ORDERS_FROM = LocalDate.of(2024, 12, 1);
+
+    @Param({"1000"})
+    public int restaurants;
+
+    @Param({"500"})
+    public int dishes;
+
+    @Param({"10"})
+    public int menuItemsPerRestaurant;
+
+    @Param({"100000"})
+    public long orders;
+
+    @Param({"1.0"})
+    public double skew;
+
+    // addOrder only queues the order for a background writer, e.g. -p orderQueue=true -t 8 addOrder
+    @Param({"false"})
+    public boolean orderQueue;
+
+    // addOrder only appends the order to a journal file for a background replayer, e.g. -p orderJournal=true -t 8 addOrder
+    @Param({"false"})
+    public boolean orderJournal;
+
+    private Model model;
+    private Path journalFile;
+    private AsyncModel asyncModel;
+    private CatalogReplica catalog;
+    // Names by id, built up front so the catalog benchmarks measure only the lookup's allocations
+    private String[] restaurantNames;
+    private String[] cityNames;
+    private String[] dishNames;
+    // With skewed data not every dish is on a menu and not every restaurant has orders
+    private int[] dishesOnMenus;
+    private int[] restaurantsWithOrders;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Start clean even if a previous trial in the same JVM failed before its tear down
+        BenchmarkDatabase.drop();
+        Properties properties = BenchmarkDatabase.hibernateProperties();
+        properties.setProperty("hibernate.order_queue.enabled", Boolean.toString(orderQueue));
+        if (orderJournal) {
+            journalFile = Files.createTempFile("orders", ".journal");
+            properties.setProperty("hibernate.order_journal.enabled", "true");
+            properties.setProperty("hibernate.order_journal.file", journalFile.toString());
+        }
+        model = new Model(properties);
+        DataGenerator.Settings settings = new DataGenerator.Settings();
+        settings.restaurants = restaurants;
+        settings.dishes = dishes;
+        settings.menuItemsPerRestaurant = menuItemsPerRestaurant;
+        settings.orders = orders;
+        settings.skew = skew;
+        BenchmarkDatabase.seed(settings);
+        dishesOnMenus = BenchmarkDatabase.ids("SELECT DISTINCT dish_no FROM menu_item");
+        restaurantsWithOrders = BenchmarkDatabase.ids(
+                "SELECT DISTINCT mi.restaurant_no FROM food_order o JOIN menu_item mi ON o.item_no = mi.item_no");
+        asyncModel = new AsyncModel(model);
+        catalog = new CatalogReplica(model);
+        restaurantNames = new String[restaurants + 1];
+        cityNames = new String[restaurants + 1];
+        for (int id = 1; id <= restaurants; id++) {
+            restaurantNames[id] = DataGenerator.restaurantName(id);
+            cityNames[id] = DataGenerator.cityName(id);
+        }
+        dishNames = new String[dishes + 1];
+        for (int dishNo = 1; dishNo <= dishes; dishNo++) {
+            dishNames[dishNo] = DataGenerator.dishName(dishNo);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        asyncModel.close();
+        model.close();
+        if (journalFile != null) {
+            Files.delete(journalFile);
+        }
+    }
+
+    /**
+     * Sums the prices of the menu items visited, one visitor per thread so catalog lookups allocate nothing.
+     */
+    @State(Scope.Thread)
+    public static class PriceSum implements MenuVisitor {
+        long cents;
+
+        @Override
+        public void visit(int itemNo, String restaurantName, String city, String dishName, long priceCents) {
+            cents += priceCents;
+        }
+    }
+
+    /**
+     * Holds an order that exists in the database before each deleteOrder invocation.
+     */
+    @State(Scope.Thread)
+    public static class PendingOrder {
+        FoodOrderEntity order;
+
+        @Setup(Level.Invocation)
+        public void insertOrder(ModelBenchmark benchmark) {
+            MenuItemEntity menu = new MenuItemEntity();
+            menu.setItemNo(benchmark.randomMenuItem());
+            order = new FoodOrderEntity();
+            order.setMenu(menu);
+            benchmark.model.addOrders(List.of(order));
+        }
+    }
+
+    @Benchmark
+    public List<DisplayDishMenu> getMenusOfRestaurant() throws EmptyResultsException {
+        int id = randomRestaurant();
+        return model.getMenusOfRestaurant(DataGenerator.restaurantName(id), DataGenerator.cityName(id));
+    }
+
+    @Benchmark
+    public List<DisplayRestaurantMenu> getMenusOfDish() throws EmptyResultsException {
+        return model.getMenusOfDish(DataGenerator.dishName(randomOf(dishesOnMenus)));
+    }
+
+    // A dish name with its third letter dropped, as a typo would
+    @Benchmark
+    public List<String> suggestDishNames() {
+        String name = DataGenerator.dishName(randomOf(dishesOnMenus));
+        return model.suggestDishNames(name.substring(0, 2) + name.substring(3), 5);
+    }
+
+    @Benchmark
+    public long catalogMenusOfRestaurant(PriceSum sum) {
+        int id = randomRestaurant();
+        catalog.forEachMenuOfRestaurant(restaurantNames[id], cityNames[id], sum);
+        return sum.cents;
+    }
+
+    @Benchmark
+    public long catalogMenusOfDish(PriceSum sum) {
+        catalog.forEachMenuOfDish(dishNames[randomOf(dishesOnMenus)], sum);
+        return sum.cents;
+    }
+
+    @Benchmark
+    public List<DisplayDishMenuOrder> getOrdersOfRestaurant() throws EmptyResultsException {
+        int id = randomOf(restaurantsWithOrders);
+        return model.getOrdersOfRestaurant(DataGenerator.restaurantName(id), DataGenerator.cityName(id));
+    }
+
+    // Only reads the last month of orders, a restaurant may have none
+    @Benchmark
+    public List<DisplayDishMenuOrder> getRecentOrdersOfRestaurant() {
+        int id = randomOf(restaurantsWithOrders);
+        try {
+            return model.getOrdersOfRestaurant(DataGenerator.restaurantName(id), DataGenerator.cityName(id), RECENT_ORDERS_FROM, null);
+        } catch (EmptyResultsException e) {
+            return List.of();
+        }
+    }
+
+    @Benchmark
+    public long forEachOrderOfRestaurant(Blackhole blackhole) throws EmptyResultsException {
+        int id = randomOf(restaurantsWithOrders);
+        return model.forEachOrderOfRestaurant(DataGenerator.restaurantName(id), DataGenerator.cityName(id), blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RESTAURANTS_PER_LOOKUP)
+    public void getOrdersOfRestaurants(Blackhole blackhole) throws EmptyResultsException {
+        for (int i = 0; i < RESTAURANTS_PER_LOOKUP; i++) {
+            int id = randomOf(restaurantsWithOrders);
+            blackhole.consume(model.getOrdersOfRestaurant(DataGenerator.restaurantName(id), DataGenerator.cityName(id)));
+        }
+    }
+
+    // The same lookups as getOrdersOfRestaurants, run at the same time
+    @Benchmark
+    @OperationsPerInvocation(RESTAURANTS_PER_LOOKUP)
+    public List<List<DisplayDishMenuOrder>> getOrdersOfRestaurantsAsync() {
+        List<CompletableFuture<List<DisplayDishMenuOrder>>> futures = new ArrayList<>(RESTAURANTS_PER_LOOKUP);
+        for (int i = 0; i < RESTAURANTS_PER_LOOKUP; i++) {
+            int id = randomOf(restaurantsWithOrders);
+            futures.add(asyncModel.getOrdersOfRestaurant(DataGenerator.restaurantName(id), DataGenerator.cityName(id)));
+        }
+        return AsyncModel.allOf(futures).join();
+    }
+
+    @Benchmark
+    public RestaurantEntity getRestaurant() throws EmptyResultsException {
+        int id = randomRestaurant();
+        return model.getRestaurant(DataGenerator.restaurantName(id), DataGenerator.cityName(id));
+    }
+
+    @Benchmark
+    public List<DisplayRestaurantDishOrder> getAllOrders() throws EmptyResultsException {
+        return model.getAllOrders();
+    }
+
+    @Benchmark
+    public List<DisplayRestaurantDishOrder> getOrdersPage() {
+        // A page from a random position, keyset pagination should not slow down deeper into the table
+        return model.getOrdersPage(OrderFilter.all(), ThreadLocalRandom.current().nextInt((int) orders), ORDER_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public SalesReport getSales() throws EmptyResultsException {
+        // The same orders as forEachOrder, totalled by the database instead of read
+        return model.getSales(SalesGrouping.RESTAURANT, null, null, 3);
+    }
+
+    @Benchmark
+    public long forEachOrder(Blackhole blackhole) {
+        return model.forEachOrder(OrderFilter.all(), blackhole::consume);
+    }
+
+    @Benchmark
+    public void addOrder() {
+        MenuItemEntity menu = new MenuItemEntity();
+        menu.setItemNo(randomMenuItem());
+        model.addOrder(menu);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS_PER_BULK_ADD)
+    public void addOrders() {
+        List<FoodOrderEntity> newOrders = new ArrayList<>(ORDERS_PER_BULK_ADD);
+        for (int i = 0; i < ORDERS_PER_BULK_ADD; i++) {
+            MenuItemEntity menu = new MenuItemEntity();
+            menu.setItemNo(randomMenuItem());
+            FoodOrderEntity order = new FoodOrderEntity();
+            order.setMenu(menu);
+            newOrders.add(order);
+        }
+        model.addOrders(newOrders);
+    }
+
+    @Benchmark
+    public void deleteOrder(PendingOrder pending) {
+        model.deleteOrder(pending.order);
+    }
+
+    @Benchmark
+    public DishEntity addDish() {
+        RestaurantEntity restaurant = new RestaurantEntity();
+        restaurant.setRestaurantId(randomRestaurant());
+        DishEntity dish = new DishEntity();
+        dish.setDishName("Bench" + ThreadLocalRandom.current().nextInt(1_000_000));
+        dish.setType(Type.en);
+        MenuItemEntity menu = new MenuItemEntity();
+        menu.setPrice(BigDecimal.valueOf(1250, 2));
+        menu.setRestaurant(restaurant);
+        menu.setDish(dish);
+        HashSet<MenuItemEntity> menus = new HashSet<>();
+        menus.add(menu);
+        dish.setMenuItems(menus);
+        model.addDish(dish);
+        return dish;
+    }
+
+    private int randomRestaurant() {
+        return ThreadLocalRandom.current().nextInt(restaurants) + 1;
+    }
+
+    private static int randomOf(int[] ids) {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    private int randomMenuItem() {
+        return ThreadLocalRandom.current().nextInt(restaurants * menuItemsPerRestaurant) + 1;
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.truefmartin.benchmarks;
+
+import com.github.truefmartin.catalog.NameSearch;
+import com.github.truefmartin.generator.DataGenerator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Compares the ranking of {@link NameSearch} with the same ranking worked out by comparing the input with every
+ * name, for exact names, names in other case and punctuation, prefixes and misspellings, and fails on the first
+ * search whose results differ. The index is built at once with addAll, and name by name with add, which must agree.
+ * Run with {@code java -cp target/benchmarks.jar com.github.truefmartin.benchmarks.NameSearchCheck [seed]}.
+ */
+public class NameSearchCheck {
+    private static final int NAMES = 3_000;
+    private static final int SEARCHES = 5_000;
+    private static final int LIMIT = 5;
+
+    private static final class Match {
+        final String name;
+        final String key;
+        final int rank;
+        final double similarity;
+
+        Match(String name, String key, int rank, double similarity) {
+            this.name = name;
+            this.key = key;
+            this.rank = rank;
+            this.similarity = similarity;
+        }
+    }
+
+    // Best first: exact, then prefix, then similar, each by similarity, then the shorter and alphabetically first name
+    private static final Comparator<Match> BEST_FIRST = Comparator.<Match>comparingInt(match -> -match.rank)
+            .thenComparingDouble(match -> -match.similarity)
+            .thenComparingInt(match -> match.key.length())
+            .thenComparing(match -> match.key);
+
+    private final SplittableRandom random;
+    // The first spelling of each normalized name
+    private final Map<String, String> names = new LinkedHashMap<>();
+
+    private NameSearchCheck(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        try {
+            new NameSearchCheck(seed).run();
+        } catch (AssertionError e) {
+            System.err.println("seed " + seed + ": " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("The name search ranked every search as a scan of every name does.");
+    }
+
+    private void run() {
+        List<String> spellings = new ArrayList<>();
+        for (int id = 1; id <= NAMES; id++) {
+            spellings.add(id % 2 == 0 ? DataGenerator.dishName(id) : DataGenerator.restaurantName(id));
+        }
+        // Other spellings of names already in, which are kept out, and names of punctuation only, which are skipped
+        spellings.addAll(List.of("Pad Thai", "pad-thai", "PAD  THAI", "Pad Thai Noodles", "Shakshuka", "Crème brûlée",
+                "Fish & Chips", "Mac 'n' Cheese", "---", ""));
+        for (String spelling : spellings) {
+            String key = normalize(spelling);
+            if (!key.isEmpty()) {
+                names.putIfAbsent(key, spelling);
+            }
+        }
+        NameSearch atOnce = new NameSearch();
+        atOnce.addAll(spellings);
+        NameSearch oneByOne = new NameSearch();
+        oneByOne.addAll(spellings.subList(0, spellings.size() / 2));
+        for (String spelling : spellings.subList(spellings.size() / 2, spellings.size())) {
+            oneByOne.add(spelling);
+        }
+        check(atOnce.size() == names.size(), "addAll kept " + atOnce.size() + " names, expected " + names.size());
+        check(oneByOne.size() == names.size(), "add kept " + oneByOne.size() + " names, expected " + names.size());
+
+        check(atOnce.search("pad thai", LIMIT).get(0).equals("Pad Thai"), "the exact name is not first");
+        check(atOnce.search("PAD-THAI!", LIMIT).get(0).equals("Pad Thai"), "case and punctuation are not ignored");
+        check(atOnce.search("pad th", LIMIT).subList(0, 2).equals(List.of("Pad Thai", "Pad Thai Noodles")),
+                "prefix matches are not first, shortest first");
+        check(atOnce.search("shaksuka", LIMIT).get(0).equals("Shakshuka"), "a misspelling is not found");
+        check(atOnce.search("", LIMIT).isEmpty() && atOnce.search("!?", LIMIT).isEmpty(), "an empty input matched");
+        check(atOnce.search("pad", 0).isEmpty(), "a limit of 0 returned names");
+
+        List<String> keys = new ArrayList<>(names.keySet());
+        for (int i = 0; i < SEARCHES; i++) {
+            String input = randomInput(names.get(keys.get(random.nextInt(keys.size()))));
+            int limit = 1 + random.nextInt(2 * LIMIT);
+            List<String> expected = scan(input, limit);
+            List<String> found = atOnce.search(input, limit);
+            check(found.equals(expected), "'" + input + "' found " + found + ", expected " + expected);
+            found = oneByOne.search(input, limit);
+            check(found.equals(expected), "'" + input + "' found " + found + " when added one by one, expected " + expected);
+        }
+    }
+
+    // A name as typed: exactly, shouting with punctuation, the start of it, or with a letter dropped, doubled or swapped
+    private String randomInput(String name) {
+        int at = random.nextInt(name.length());
+        switch (random.nextInt(6)) {
+            case 0:
+                return name;
+            case 1:
+                return "  " + name.toUpperCase(Locale.ROOT).replace(' ', '-') + "!";
+            case 2:
+                return name.substring(0, 1 + at);
+            case 3:
+                return name.substring(0, at) + name.substring(at + 1);
+            case 4:
+                return name.substring(0, at + 1) + name.substring(at);
+            default:
+                return at + 1 < name.length()
+                        ? name.substring(0, at) + name.charAt(at + 1) + name.charAt(at) + name.substring(at + 2)
+                        : name + "x";
+        }
+    }
+
+    // The ranking of NameSearch, by comparing the input with every name
+    private List<String> scan(String input, int limit) {
+        String key = normalize(input);
+        if (key.isEmpty()) {
+            return List.of();
+        }
+        Set<String> inputTrigrams = trigrams(key);
+        List<Match> matches = new ArrayList<>();
+        for (Map.Entry<String, String> name : names.entrySet()) {
+            String nameKey = name.getKey();
+            if (nameKey.startsWith(key)) {
+                matches.add(new Match(name.getValue(), nameKey, nameKey.equals(key) ? 2 : 1, (double) key.length() / nameKey.length()));
+                continue;
+            }
+            Set<String> nameTrigrams = trigrams(nameKey);
+            int shared = 0;
+            for (String trigram : nameTrigrams) {
+                if (inputTrigrams.contains(trigram)) {
+                    shared++;
+                }
+            }
+            double similarity = (double) shared / (inputTrigrams.size() + nameTrigrams.size() - shared);
+            if (shared > 0 && similarity >= NameSearch.MIN_SIMILARITY) {
+                matches.add(new Match(name.getValue(), nameKey, 0, similarity));
+            }
+        }
+        matches.sort(BEST_FIRST);
+        List<String> best = new ArrayList<>();
+        for (Match match : matches.subList(0, Math.min(limit, matches.size()))) {
+            best.add(match.name);
+        }
+        return best;
+    }
+
+    // Lowercase letters and digits, with each run of anything else between them as one space
+    private static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT).replaceAll("[^\\p{IsAlphabetic}\\p{IsDigit}]+", " ").trim();
+    }
+
+    private static Set<String> trigrams(String key) {
+        String padded = "  " + key + " ";
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
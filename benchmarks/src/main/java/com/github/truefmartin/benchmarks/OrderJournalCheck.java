@@ -0,0 +1,244 @@
+package com.github.truefmartin.benchmarks;
+
+import com.github.truefmartin.queue.OrderJournal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Appends orders to an {@link OrderJournal} with a sink standing in for the database, and fails unless every order
+ * reaches the sink once, in sequence order and unchanged: from several appending threads, while the sink fails and
+ * recovers, after a close and reopen with orders left over, past a torn last record, and across the compactions
+ * that reuse the file from the start.
+ * Run with {@code java -cp target/benchmarks.jar com.github.truefmartin.benchmarks.OrderJournalCheck [seed]}.
+ */
+public class OrderJournalCheck {
+    private static final int MAX_BATCH = 100;
+    private static final long RETRY_MILLIS = 5;
+    private static final int THREADS = 4;
+    private static final int ORDERS_PER_THREAD = 3_000;
+    // Enough orders for several compactions, which happen once 4096 replayed records are in the file
+    private static final int COMPACTION_ORDERS = 40_000;
+    // The most records the file needs room for when it is reused from the start, with room to spare
+    private static final int COMPACTED_RECORDS = 16_384;
+    // The journal's file layout, for tearing a record
+    private static final int HEADER_SIZE = 64;
+    private static final int FIRST_SEQUENCE_OFFSET = 24;
+    private static final int RECORD_SIZE = 32;
+    private static final int CHECKSUM = 24;
+
+    /**
+     * Keeps the orders written, skipping sequence numbers already written as the Model does. Can be set to fail,
+     * and to fail after writing, as when the commit succeeds but its reply is lost.
+     */
+    private static final class Sink implements OrderJournal.Sink {
+        final List<OrderJournal.Entry> written = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger failuresAfterWrite = new AtomicInteger();
+        final AtomicInteger redelivered = new AtomicInteger();
+        volatile boolean down;
+        long lastSequence;
+        String journalId;
+
+        @Override
+        public synchronized void write(String journalId, List<OrderJournal.Entry> entries) {
+            if (down || failures.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                throw new IllegalStateException("the database is down");
+            }
+            check(this.journalId == null || this.journalId.equals(journalId), "the journal id changed to " + journalId);
+            this.journalId = journalId;
+            for (OrderJournal.Entry entry : entries) {
+                if (entry.getSequence() <= lastSequence) {
+                    redelivered.incrementAndGet();
+                    continue;
+                }
+                check(entry.getSequence() == lastSequence + 1, "sequence " + entry.getSequence() + " after " + lastSequence);
+                lastSequence = entry.getSequence();
+                written.add(entry);
+            }
+            if (failuresAfterWrite.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                throw new IllegalStateException("the commit's reply was lost");
+            }
+        }
+    }
+
+    private static final class Order {
+        final int itemNo;
+        final LocalDate date;
+        final LocalTime time;
+
+        Order(int itemNo, LocalDate date, LocalTime time) {
+            this.itemNo = itemNo;
+            this.date = date;
+            this.time = time;
+        }
+    }
+
+    private final SplittableRandom random;
+    private final Sink sink = new Sink();
+    // Every order appended, by sequence number from 1
+    private final List<Order> appended = Collections.synchronizedList(new ArrayList<>());
+
+    private OrderJournalCheck(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        Path directory = Files.createTempDirectory("order-journal-check");
+        try {
+            new OrderJournalCheck(seed).run(directory.resolve("orders.journal"));
+        } catch (AssertionError e) {
+            System.err.println("seed " + seed + ": " + e.getMessage());
+            System.exit(1);
+        } finally {
+            BPlusTreeCheck.deleteDirectory(directory);
+        }
+        System.out.println("Every journaled order reached the sink once, in order.");
+    }
+
+    // Closing waits for the replayer thread, an interrupt there fails the check as any other exception does
+    @SuppressWarnings("try")
+    private void run(Path file) throws Exception {
+        String journalId;
+        try (OrderJournal journal = open(file)) {
+            journalId = journal.getJournalId();
+            appendConcurrently(journal);
+            journal.flush();
+            checkWritten("after appending from " + THREADS + " threads");
+
+            // Failed writes are retried until they succeed, and a batch written twice is skipped by sequence number
+            sink.failures.set(5);
+            sink.failuresAfterWrite.set(3);
+            append(journal, 1_000);
+            journal.flush();
+            checkWritten("after failed writes");
+            check(sink.redelivered.get() > 0, "no batch was written again after its reply was lost");
+
+            // The database goes down, closing leaves the orders in the file
+            sink.down = true;
+            append(journal, 500);
+        }
+        sink.down = false;
+        try (OrderJournal journal = open(file)) {
+            check(journal.getJournalId().equals(journalId), "the journal id changed on reopening");
+            journal.flush();
+            checkWritten("after reopening with orders left over");
+            sink.down = true;
+            append(journal, 10);
+        }
+        // The last record is torn, as if the process died while appending it
+        tearRecord(file, appended.size());
+        appended.remove(appended.size() - 1);
+        sink.down = false;
+        try (OrderJournal journal = open(file)) {
+            journal.flush();
+            checkWritten("after a torn record");
+            // The torn record's sequence number is taken by the next order
+            long fileSize = Files.size(file);
+            for (int i = 0; i < COMPACTION_ORDERS; i += MAX_BATCH) {
+                append(journal, MAX_BATCH);
+                journal.flush();
+            }
+            checkWritten("after compactions");
+            check(Files.size(file) <= Math.max(fileSize, HEADER_SIZE + (long) COMPACTED_RECORDS * RECORD_SIZE),
+                    "the file grew from " + fileSize + " to " + Files.size(file) + " bytes, it is not reused from the start");
+            check(journal.getPending() == 0, journal.getPending() + " orders still pending");
+        }
+        try (OrderJournal journal = open(file)) {
+            check(journal.getPending() == 0, "replayed records were replayed again after reopening: " + journal.getPending());
+            append(journal, 10);
+            journal.flush();
+            checkWritten("after reopening a compacted file");
+        }
+    }
+
+    private OrderJournal open(Path file) throws IOException {
+        return new OrderJournal(file, sink, MAX_BATCH, RETRY_MILLIS);
+    }
+
+    // Appends from several threads at once, so appends wait on each other's force and are forced together
+    private void appendConcurrently(OrderJournal journal) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        Order[] bySequence = new Order[THREADS * ORDERS_PER_THREAD];
+        for (int t = 0; t < THREADS; t++) {
+            SplittableRandom threadRandom = random.split();
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < ORDERS_PER_THREAD; i++) {
+                        Order order = randomOrder(threadRandom);
+                        long sequence = journal.append(order.itemNo, order.date, order.time);
+                        bySequence[(int) sequence - 1 - appended.size()] = order;
+                    }
+                } catch (RuntimeException e) {
+                    failures.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        check(failures.isEmpty(), "appending failed: " + failures);
+        Collections.addAll(appended, bySequence);
+    }
+
+    private void append(OrderJournal journal, int orders) {
+        for (int i = 0; i < orders; i++) {
+            Order order = randomOrder(random);
+            long sequence = journal.append(order.itemNo, order.date, order.time);
+            appended.add(order);
+            check(sequence == appended.size(), "append returned sequence " + sequence + ", expected " + appended.size());
+        }
+    }
+
+    private static Order randomOrder(SplittableRandom random) {
+        // The journal keeps the time to the second, as the time column does
+        return new Order(1 + random.nextInt(100_000), LocalDate.of(2024, 1, 1).plusDays(random.nextInt(730)),
+                LocalTime.ofSecondOfDay(random.nextInt(24 * 60 * 60)));
+    }
+
+    private void checkWritten(String when) {
+        synchronized (sink) {
+            check(sink.written.size() == appended.size(), when + ": " + sink.written.size() + " orders written, expected " + appended.size());
+            for (int i = 0; i < appended.size(); i++) {
+                OrderJournal.Entry entry = sink.written.get(i);
+                Order order = appended.get(i);
+                check(entry.getSequence() == i + 1 && entry.getItemNo() == order.itemNo && entry.getDate().equals(order.date)
+                        && entry.getTime().equals(order.time), when + ": order " + (i + 1) + " was written as " + entry);
+            }
+        }
+    }
+
+    // Breaks the checksum of the record with a sequence number
+    private static void tearRecord(Path file, long sequence) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES);
+            channel.read(bytes, FIRST_SEQUENCE_OFFSET);
+            long at = HEADER_SIZE + (sequence - bytes.getLong(0)) * RECORD_SIZE + CHECKSUM;
+            bytes.clear().limit(Integer.BYTES);
+            channel.read(bytes, at);
+            bytes.putInt(0, ~bytes.getInt(0));
+            channel.write(bytes.flip(), at);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
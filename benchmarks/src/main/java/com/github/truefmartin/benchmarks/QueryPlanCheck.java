@@ -0,0 +1,34 @@
+package com.github.truefmartin.benchmarks;
+
+import com.github.truefmartin.Model;
+import com.github.truefmartin.generator.DataGenerator;
+
+import java.util.List;
+
+/**
+ * Seeds the in-process database and fails if any Model lookup is planned as a full table or index scan.
+ * Run with {@code java -cp target/benchmarks.jar com.github.truefmartin.benchmarks.QueryPlanCheck [key=value...]},
+ * the optional settings are those of the {@link DataGenerator}, with 100000 orders unless given.
+ */
+public class QueryPlanCheck {
+    private static final String DEFAULT_ORDERS = "orders=100000";
+
+    public static void main(String[] args) throws Exception {
+        // Later settings win, so the default is put first
+        String[] settingArgs = new String[args.length + 1];
+        settingArgs[0] = DEFAULT_ORDERS;
+        System.arraycopy(args, 0, settingArgs, 1, args.length);
+        DataGenerator.Settings settings = DataGenerator.Settings.fromArgs(settingArgs);
+        BenchmarkDatabase.drop();
+        List<String> fullScans;
+        try (Model model = new Model(BenchmarkDatabase.hibernateProperties())) {
+            BenchmarkDatabase.seed(settings);
+            fullScans = model.checkQueryPlans();
+        }
+        if (!fullScans.isEmpty()) {
+            fullScans.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("Every lookup uses an index.");
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.truefmartin.benchmarks;
+
+import com.github.truefmartin.storage.RecordFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Runs random allocations, frees and allocations of given slots against a {@link RecordFile} and the same against
+ * a map of the records and a list of the free slots, and fails on the first slot, record or count that differs.
+ * The free list must hand out the most recently freed slot first, also after the file is closed and reopened.
+ * Run with {@code java -cp target/benchmarks.jar com.github.truefmartin.benchmarks.RecordFileCheck [seed]}.
+ */
+public class RecordFileCheck {
+    private static final int RECORD_SIZE = 8;
+    private static final int OPERATIONS = 200_000;
+    // Records are checked slot by slot this often
+    private static final int VERIFY_EVERY = 10_000;
+    // Changes alternate between mostly allocating and mostly freeing this often, so the free list grows long too
+    private static final int PHASE = 20_000;
+
+    private final SplittableRandom random;
+    // The record of each used slot, and the free slots, most recently freed first
+    private final Map<Integer, Integer> records = new HashMap<>();
+    private final List<Integer> free = new ArrayList<>();
+    private int slotCount;
+
+    private RecordFileCheck(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        Path directory = Files.createTempDirectory("record-file-check");
+        try {
+            new RecordFileCheck(seed).run(directory.resolve("records.dat"));
+        } catch (AssertionError e) {
+            System.err.println("seed " + seed + ": " + e.getMessage());
+            System.exit(1);
+        } finally {
+            BPlusTreeCheck.deleteDirectory(directory);
+        }
+        System.out.println("The record file matched the map and free list throughout.");
+    }
+
+    private void run(Path file) throws IOException {
+        try (RecordFile records = new RecordFile(file, RECORD_SIZE)) {
+            randomChanges(records, OPERATIONS);
+            System.out.println("after " + OPERATIONS + " changes: " + records.size() + " records in " + records.getSlotCount() + " slots");
+        }
+        try (RecordFile records = new RecordFile(file, RECORD_SIZE)) {
+            verify(records, "after reopening");
+            // The free list was kept, so allocations continue with the same slots
+            randomChanges(records, OPERATIONS / 10);
+        }
+        try {
+            new RecordFile(file, RECORD_SIZE + 1).close();
+            throw new AssertionError("opened a file of " + RECORD_SIZE + " byte records with another size");
+        } catch (IllegalStateException expected) {
+            // Refused, as it should be
+        }
+    }
+
+    private void randomChanges(RecordFile file, int operations) {
+        for (int i = 1; i <= operations; i++) {
+            int operation = random.nextInt(20);
+            boolean freeing = (i / PHASE) % 2 == 1;
+            if (operation < (freeing ? 5 : 11)) {
+                int expected = free.isEmpty() ? slotCount++ : free.remove(0);
+                int slot = file.allocate();
+                check(slot == expected, "allocate returned slot " + slot + ", expected " + expected);
+                write(file, slot);
+            } else if (operation < 16) {
+                if (records.isEmpty()) {
+                    continue;
+                }
+                int slot = usedSlot();
+                file.free(slot);
+                records.remove(slot);
+                free.add(0, slot);
+            } else if (operation < 18) {
+                allocateSlot(file);
+            } else {
+                checkRefused(file);
+            }
+            check(file.size() == records.size(), "size " + file.size() + " after " + i + " changes, expected " + records.size());
+            check(file.getSlotCount() == slotCount, "slot count " + file.getSlotCount() + ", expected " + slotCount);
+            if (i % VERIFY_EVERY == 0) {
+                verify(file, "after " + i + " changes");
+            }
+        }
+    }
+
+    // Takes a free slot from the middle of the list, or one past the end, which frees the slots skipped over
+    private void allocateSlot(RecordFile file) {
+        int slot;
+        if (!free.isEmpty() && random.nextBoolean()) {
+            slot = free.remove(random.nextInt(free.size()));
+        } else {
+            slot = slotCount + random.nextInt(4);
+            for (int skipped = slotCount; skipped < slot; skipped++) {
+                free.add(0, skipped);
+            }
+            slotCount = slot + 1;
+        }
+        file.allocate(slot);
+        write(file, slot);
+    }
+
+    // Taking a used slot or freeing a free one is refused and changes nothing
+    private void checkRefused(RecordFile file) {
+        if (!records.isEmpty()) {
+            int slot = usedSlot();
+            try {
+                file.allocate(slot);
+                throw new AssertionError("allocated slot " + slot + ", which is in use");
+            } catch (IllegalStateException expected) {
+                // Refused
+            }
+        }
+        if (!free.isEmpty()) {
+            int slot = free.get(random.nextInt(free.size()));
+            try {
+                file.free(slot);
+                throw new AssertionError("freed slot " + slot + ", which is free");
+            } catch (IllegalStateException expected) {
+                // Refused
+            }
+        }
+    }
+
+    private void write(RecordFile file, int slot) {
+        check(file.isUsed(slot), "slot " + slot + " is not in use after allocating it");
+        check(file.getInt(slot, 0) == 0 && file.getInt(slot, 4) == 0, "slot " + slot + " was not zeroed");
+        int value = random.nextInt();
+        file.putInt(slot, 0, value);
+        file.putInt(slot, 4, ~value);
+        records.put(slot, value);
+    }
+
+    private int usedSlot() {
+        // Slots are dense enough that a few tries find a used one
+        while (true) {
+            int slot = random.nextInt(slotCount);
+            if (records.containsKey(slot)) {
+                return slot;
+            }
+        }
+    }
+
+    private void verify(RecordFile file, String when) {
+        check(file.size() == records.size(), when + ": size " + file.size() + ", expected " + records.size());
+        check(file.getSlotCount() == slotCount, when + ": slot count " + file.getSlotCount() + ", expected " + slotCount);
+        for (int slot = 0; slot < slotCount; slot++) {
+            Integer value = records.get(slot);
+            check(file.isUsed(slot) == (value != null), when + ": slot " + slot + " used is " + file.isUsed(slot));
+            if (value != null) {
+                check(file.getInt(slot, 0) == value && file.getInt(slot, 4) == ~value, when + ": slot " + slot + " holds another record");
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
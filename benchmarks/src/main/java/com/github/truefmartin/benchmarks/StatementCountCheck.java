@@ -0,0 +1,161 @@
+package com.github.truefmartin.benchmarks;
+
+import com.github.truefmartin.Model;
+import com.github.truefmartin.OrderFilter;
+import com.github.truefmartin.generator.DataGenerator;
+import com.github.truefmartin.models.DishEntity;
+import com.github.truefmartin.models.FoodOrderEntity;
+import com.github.truefmartin.models.MenuItemEntity;
+import com.github.truefmartin.models.RestaurantEntity;
+import com.github.truefmartin.models.Type;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Catches N+1 queries: runs every Model operation against the in-process database at several data sizes and fails
+ * if an operation issues more SQL statements than its fixed bound, or a different number at a larger size.
+ * Run with {@code java -cp target/benchmarks.jar com.github.truefmartin.benchmarks.StatementCountCheck}.
+ * <p>
+ * Each size starts with a new Model, so the menu and second-level caches are empty and every lookup reaches the database.
+ */
+public class StatementCountCheck {
+    private static final int[] SCALES = {1, 5, 25};
+    private static final int ORDERS_PER_BULK_ADD = 100;
+    private static final int ORDER_PAGE_SIZE = 20;
+    // The most statements each operation may issue, whatever the size of its result
+    private static final Map<String, Long> BOUNDS = new LinkedHashMap<>();
+
+    static {
+        BOUNDS.put("getMenusOfRestaurant", 1L);
+        BOUNDS.put("getMenusOfDish", 1L);
+        BOUNDS.put("getOrdersOfRestaurant", 1L);
+        BOUNDS.put("forEachOrderOfRestaurant", 1L);
+        BOUNDS.put("getRestaurant", 1L);
+        BOUNDS.put("getAllOrders", 1L);
+        BOUNDS.put("getOrdersPage", 1L);
+        BOUNDS.put("forEachOrder", 1L);
+        BOUNDS.put("addOrder", 1L);
+        BOUNDS.put("addOrders", 1L);
+        BOUNDS.put("deleteOrder", 1L);
+        BOUNDS.put("addDish", 2L);
+        BOUNDS.put("listRelation dish", 1L);
+        BOUNDS.put("listRelation food_order", 1L);
+        BOUNDS.put("listRelation menu_item", 1L);
+        BOUNDS.put("listRelation restaurant", 1L);
+    }
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> failures = new ArrayList<>();
+        Map<String, Long> firstCounts = new LinkedHashMap<>();
+        for (int scale : SCALES) {
+            DataGenerator.Settings settings = new DataGenerator.Settings();
+            settings.restaurants = 20 * scale;
+            settings.dishes = 10 * scale;
+            settings.orders = 2000L * scale;
+            Map<String, Long> counts = countStatements(settings);
+            System.out.printf("%,d restaurants, %,d orders:%n", settings.restaurants, settings.orders);
+            counts.forEach((operation, count) -> {
+                System.out.printf("\t%-26s %d%n", operation, count);
+                long bound = BOUNDS.get(operation);
+                if (count > bound) {
+                    failures.add(String.format("%s issued %d statements at %,d orders, at most %d are allowed",
+                            operation, count, settings.orders, bound));
+                }
+                Long first = firstCounts.putIfAbsent(operation, count);
+                if (first != null && first.longValue() != count) {
+                    failures.add(String.format("%s issued %d statements at %,d orders but %d at %,d orders",
+                            operation, count, settings.orders, first, 2000L * SCALES[0]));
+                }
+            });
+        }
+        if (!failures.isEmpty()) {
+            failures.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("No operation issues more statements as the data grows.");
+    }
+
+    private static Map<String, Long> countStatements(DataGenerator.Settings settings) throws Exception {
+        BenchmarkDatabase.drop();
+        Properties properties = BenchmarkDatabase.hibernateProperties();
+        properties.setProperty("hibernate.menu_cache.warm_restaurants", "0");
+        Map<String, Long> counts = new LinkedHashMap<>();
+        try (Model model = new Model(properties)) {
+            BenchmarkDatabase.seed(settings);
+            // The busiest restaurant and the most common dish have the largest results
+            int restaurantId = BenchmarkDatabase.ids(
+                    "SELECT mi.restaurant_no FROM food_order o JOIN menu_item mi ON o.item_no = mi.item_no " +
+                            "GROUP BY mi.restaurant_no ORDER BY COUNT(*) DESC LIMIT 1")[0];
+            int dishNo = BenchmarkDatabase.ids(
+                    "SELECT dish_no FROM menu_item GROUP BY dish_no ORDER BY COUNT(*) DESC LIMIT 1")[0];
+            String rName = DataGenerator.restaurantName(restaurantId);
+            String rCity = DataGenerator.cityName(restaurantId);
+
+            counts.put("getMenusOfRestaurant", count(model, () -> model.getMenusOfRestaurant(rName, rCity)));
+            counts.put("getMenusOfDish", count(model, () -> model.getMenusOfDish(DataGenerator.dishName(dishNo))));
+            counts.put("getOrdersOfRestaurant", count(model, () -> model.getOrdersOfRestaurant(rName, rCity)));
+            counts.put("forEachOrderOfRestaurant", count(model, () -> model.forEachOrderOfRestaurant(rName, rCity, row -> {
+            })));
+            counts.put("getRestaurant", count(model, () -> model.getRestaurant(rName, rCity)));
+            counts.put("getAllOrders", count(model, model::getAllOrders));
+            counts.put("getOrdersPage", count(model, () -> model.getOrdersPage(OrderFilter.all(), 0, ORDER_PAGE_SIZE)));
+            counts.put("forEachOrder", count(model, () -> model.forEachOrder(OrderFilter.all(), order -> {
+            })));
+            counts.put("addOrder", count(model, () -> model.addOrder(menuItem(1))));
+            counts.put("addOrders", count(model, () -> {
+                List<FoodOrderEntity> orders = new ArrayList<>(ORDERS_PER_BULK_ADD);
+                for (int i = 0; i < ORDERS_PER_BULK_ADD; i++) {
+                    FoodOrderEntity order = new FoodOrderEntity();
+                    order.setMenu(menuItem(i % settings.restaurants + 1));
+                    orders.add(order);
+                }
+                model.addOrders(orders);
+            }));
+            FoodOrderEntity toDelete = model.getOrdersPage(OrderFilter.all(), 0, 1).get(0).getOrder();
+            counts.put("deleteOrder", count(model, () -> model.deleteOrder(toDelete)));
+            counts.put("addDish", count(model, () -> model.addDish(newDish(restaurantId))));
+            for (String relation : new String[]{"dish", "food_order", "menu_item", "restaurant"}) {
+                counts.put("listRelation " + relation, count(model, () -> model.listRelation(relation, Object.class)));
+            }
+        }
+        return counts;
+    }
+
+    private static long count(Model model, Operation operation) throws Exception {
+        long before = model.getStatementCount();
+        operation.run();
+        return model.getStatementCount() - before;
+    }
+
+    private static MenuItemEntity menuItem(int itemNo) {
+        MenuItemEntity menu = new MenuItemEntity();
+        menu.setItemNo(itemNo);
+        return menu;
+    }
+
+    private static DishEntity newDish(int restaurantId) {
+        RestaurantEntity restaurant = new RestaurantEntity();
+        restaurant.setRestaurantId(restaurantId);
+        DishEntity dish = new DishEntity();
+        dish.setDishName("Counted");
+        dish.setType(Type.en);
+        MenuItemEntity menu = new MenuItemEntity();
+        menu.setPrice(BigDecimal.valueOf(1250, 2));
+        menu.setRestaurant(restaurant);
+        menu.setDish(dish);
+        HashSet<MenuItemEntity> menus = new HashSet<>();
+        menus.add(menu);
+        dish.setMenuItems(menus);
+        return dish;
+    }
+}
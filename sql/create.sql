@@ -4,7 +4,8 @@ CREATE TABLE restaurant
             PRIMARY KEY AUTO_INCREMENT,
         restaurant_name varchar(15) NOT NULL,
         type varchar(15) NOT NULL,
-        city varchar(15) NOT NULL
+        city varchar(15) NOT NULL,
+        INDEX restaurant_name_city_idx (restaurant_name, city)
     );
 
 CREATE TABLE dish
@@ -12,7 +13,8 @@ CREATE TABLE dish
         dish_no int
             PRIMARY KEY AUTO_INCREMENT,
         dish_name varchar(25) NOT NULL,
-        type ENUM ('ap', 'en', 'ds')
+        type ENUM ('ap', 'en', 'ds'),
+        INDEX dish_name_idx (dish_name)
     );
 
 CREATE TABLE menu_item
@@ -24,16 +26,70 @@ CREATE TABLE menu_item
         price dec(4, 2)
             CHECK ( price BETWEEN 5 AND 50 ),
         FOREIGN KEY (restaurant_no) REFERENCES restaurant (restaurant_id) ON DELETE NO ACTION,
-        FOREIGN KEY (dish_no) REFERENCES dish (dish_no) ON DELETE SET NULL
+        FOREIGN KEY (dish_no) REFERENCES dish (dish_no) ON DELETE SET NULL,
+        -- Each holds every column, so menus by restaurant or by dish are read from the index alone
+        INDEX menu_item_restaurant_idx (restaurant_no, dish_no, price),
+        INDEX menu_item_dish_idx (dish_no, restaurant_no, price)
     );
 
+-- Range partitioned by month, so a query with date bounds reads only the months it covers, and the archive job
+-- moves whole months to food_order_archive. MySQL wants the partitioning column in every unique key and no foreign
+-- keys on a partitioned table, so the primary key holds the date and the orders of a removed menu item are removed
+-- through its mapping. Model.archiveOrders adds the partitions of coming months out of p_future.
 CREATE TABLE food_order
     (
-        order_no int
-            PRIMARY KEY NOT NULL AUTO_INCREMENT,
+        order_no int NOT NULL AUTO_INCREMENT,
         item_no int,
-        date date
+        date date NOT NULL
             CHECK ( date >= '2024-01-01'),
         time time,
-        FOREIGN KEY (item_no) REFERENCES menu_item (item_no) ON DELETE CASCADE
+        PRIMARY KEY (order_no, date),
+        -- The restaurant reports join on item_no and read only the date and time
+        INDEX food_order_item_idx (item_no, date, time),
+        INDEX food_order_date_idx (date)
+    )
+    PARTITION BY RANGE COLUMNS (date)
+    (
+        PARTITION p202401 VALUES LESS THAN ('2024-02-01'),
+        PARTITION p202402 VALUES LESS THAN ('2024-03-01'),
+        PARTITION p202403 VALUES LESS THAN ('2024-04-01'),
+        PARTITION p202404 VALUES LESS THAN ('2024-05-01'),
+        PARTITION p202405 VALUES LESS THAN ('2024-06-01'),
+        PARTITION p202406 VALUES LESS THAN ('2024-07-01'),
+        PARTITION p202407 VALUES LESS THAN ('2024-08-01'),
+        PARTITION p202408 VALUES LESS THAN ('2024-09-01'),
+        PARTITION p202409 VALUES LESS THAN ('2024-10-01'),
+        PARTITION p202410 VALUES LESS THAN ('2024-11-01'),
+        PARTITION p202411 VALUES LESS THAN ('2024-12-01'),
+        PARTITION p202412 VALUES LESS THAN ('2025-01-01'),
+        PARTITION p_future VALUES LESS THAN (MAXVALUE)
+    );
+
+-- Orders of the months archived out of food_order, read only by queries that reach back that far
+CREATE TABLE food_order_archive
+    (
+        order_no int
+            PRIMARY KEY NOT NULL,
+        item_no int,
+        date date NOT NULL,
+        time time,
+        INDEX food_order_archive_item_idx (item_no, date, time),
+        INDEX food_order_archive_date_idx (date)
+    )
+    ROW_FORMAT = COMPRESSED;
+
+-- Last id handed out of each relation, used by Hibernate to reserve blocks of ids so inserts can be batched
+CREATE TABLE id_generator
+    (
+        sequence_name varchar(255)
+            PRIMARY KEY NOT NULL,
+        next_val bigint
+    );
+
+-- Last order of each order journal written to food_order, so a replay after a crash skips the orders already in
+CREATE TABLE order_journal
+    (
+        journal_id varchar(36)
+            PRIMARY KEY NOT NULL,
+        replayed_sequence bigint NOT NULL
     );
\ No newline at end of file
@@ -1,9 +1,13 @@
 DROP TABLE food_order;
 
+DROP TABLE food_order_archive;
+
 DROP TABLE menu_item;
 
 DROP TABLE restaurant;
 
 DROP TABLE dish;
 
+DROP TABLE id_generator;
 
+DROP TABLE order_journal;
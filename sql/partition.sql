@@ -0,0 +1,30 @@
+-- Partitions the food_order of a database created before food_order was partitioned, see create.sql.
+-- Copies the table once, so run it while the application is stopped. The foreign key is the one MySQL named when
+-- create.sql made the table, check SHOW CREATE TABLE food_order if the table was made by Hibernate instead.
+ALTER TABLE food_order
+    DROP FOREIGN KEY food_order_ibfk_1;
+
+UPDATE food_order
+SET date = '2024-01-01'
+WHERE date IS NULL;
+
+ALTER TABLE food_order
+    MODIFY date date NOT NULL,
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (order_no, date)
+    PARTITION BY RANGE COLUMNS (date)
+    (
+        PARTITION p202401 VALUES LESS THAN ('2024-02-01'),
+        PARTITION p202402 VALUES LESS THAN ('2024-03-01'),
+        PARTITION p202403 VALUES LESS THAN ('2024-04-01'),
+        PARTITION p202404 VALUES LESS THAN ('2024-05-01'),
+        PARTITION p202405 VALUES LESS THAN ('2024-06-01'),
+        PARTITION p202406 VALUES LESS THAN ('2024-07-01'),
+        PARTITION p202407 VALUES LESS THAN ('2024-08-01'),
+        PARTITION p202408 VALUES LESS THAN ('2024-09-01'),
+        PARTITION p202409 VALUES LESS THAN ('2024-10-01'),
+        PARTITION p202410 VALUES LESS THAN ('2024-11-01'),
+        PARTITION p202411 VALUES LESS THAN ('2024-12-01'),
+        PARTITION p202412 VALUES LESS THAN ('2025-01-01'),
+        PARTITION p_future VALUES LESS THAN (MAXVALUE)
+    );
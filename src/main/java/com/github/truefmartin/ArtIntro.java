@@ -7,6 +7,8 @@ import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 
 /**
+ * Renders text as ASCII art. The banner in src/main/resources/banner.txt comes from {@link #main(String[])}.
+ * <p>
  * This class is sourced from Baeldung under an MIT license. The license can be found here:
  * <a href="https://github.com/eugenp/tutorials/blob/master/LICENSE">Baeldung License</a>
  */
@@ -15,6 +17,15 @@ public class ArtIntro {
     public ArtIntro() {
     }
 
+    /**
+     * Prints the banner, regenerate it with
+     * {@code java -Djava.awt.headless=true -cp target/classes com.github.truefmartin.ArtIntro > src/main/resources/banner.txt}
+     */
+    public static void main(String[] args) {
+        Settings settings = new Settings(new Font(Font.SANS_SERIF, Font.PLAIN, 17), 140, 16);
+        new ArtIntro().drawString("F O O D", "*", settings);
+    }
+
     public void drawString(String text, String artChar, Settings settings) {
         BufferedImage image = getImageIntegerMode(settings.width, settings.height);
 
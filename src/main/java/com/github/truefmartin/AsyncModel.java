@@ -0,0 +1,207 @@
+package com.github.truefmartin;
+
+import com.github.truefmartin.models.DishEntity;
+import com.github.truefmartin.models.FoodOrderEntity;
+import com.github.truefmartin.models.MenuItemEntity;
+import com.github.truefmartin.models.RestaurantEntity;
+import com.github.truefmartin.views.DisplayDishMenu;
+import com.github.truefmartin.views.DisplayDishMenuOrder;
+import com.github.truefmartin.views.DisplayRestaurantDishOrder;
+import com.github.truefmartin.views.DisplayRestaurantMenu;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs Model operations on a thread pool of its own and returns their results as {@link CompletableFuture}s,
+ * so independent lookups can run at the same time instead of one after another:
+ * <pre>{@code
+ * try (AsyncModel async = new AsyncModel(model)) {
+ *     CompletableFuture<List<DisplayDishMenu>> menus = async.getMenusOfRestaurant("Pizza Hut", "Tulsa");
+ *     CompletableFuture<List<DisplayDishMenuOrder>> orders = async.getOrdersOfRestaurant("Pizza Hut", "Tulsa");
+ *     show(menus.join(), orders.join());
+ * }
+ * }</pre>
+ * The pool has one thread per pooled connection, more threads would only wait for a connection.
+ * A failed operation completes its future exceptionally with the Model's exception, e.g. EmptyResultsException.
+ * <p>
+ * {@link #withTimeout(Duration)} gives a view whose futures fail with a TimeoutException when the result takes longer.
+ * An operation still waiting for a thread when it times out is skipped, one that already started runs to its end.
+ */
+// close() waits for the submitted operations, so it can be interrupted
+@SuppressWarnings("try")
+public class AsyncModel implements AutoCloseable {
+    private final Model model;
+    private final ExecutorService executor;
+    private final Duration timeout;
+
+    /**
+     * Creates a pool with as many threads as the Model's connection pool has connections.
+     * @param model the Model to run the operations on, not closed with this
+     */
+    public AsyncModel(Model model) {
+        this(model, model.getMaximumPoolSize());
+    }
+
+    /**
+     * @param model the Model to run the operations on, not closed with this
+     * @param threads the number of operations run at the same time
+     */
+    public AsyncModel(Model model, int threads) {
+        this(model, newExecutor(threads), null);
+    }
+
+    private AsyncModel(Model model, ExecutorService executor, Duration timeout) {
+        this.model = model;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param timeout how long each operation of the returned view may take, null for no limit
+     * @return a view sharing this pool whose operations fail with a TimeoutException after the timeout
+     */
+    public AsyncModel withTimeout(Duration timeout) {
+        return new AsyncModel(model, executor, timeout);
+    }
+
+    /**
+     * Waits for all the futures, in order.
+     * @param futures the futures to wait for
+     * @return a future of their results, or of the first failure
+     */
+    public static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> {
+                    List<T> results = new ArrayList<>(futures.size());
+                    for (CompletableFuture<T> future : futures) {
+                        results.add(future.join());
+                    }
+                    return results;
+                });
+    }
+
+    public CompletableFuture<List<DisplayDishMenu>> getMenusOfRestaurant(String restaurantName, String cityName) {
+        return submit(() -> model.getMenusOfRestaurant(restaurantName, cityName));
+    }
+
+    public CompletableFuture<List<DisplayRestaurantMenu>> getMenusOfDish(String dishName) {
+        return submit(() -> model.getMenusOfDish(dishName));
+    }
+
+    /**
+     * Looks up the menus of several dishes at the same time.
+     * @param dishNames the dishes
+     * @return a future of the menus of each dish, in the order of the names, or of the first failure
+     */
+    public CompletableFuture<Map<String, List<DisplayRestaurantMenu>>> getMenusOfDishes(Collection<String> dishNames) {
+        List<CompletableFuture<List<DisplayRestaurantMenu>>> futures = new ArrayList<>(dishNames.size());
+        for (String dishName : dishNames) {
+            futures.add(getMenusOfDish(dishName));
+        }
+        return allOf(futures).thenApply(menus -> {
+            Map<String, List<DisplayRestaurantMenu>> byDish = new LinkedHashMap<>();
+            int i = 0;
+            for (String dishName : dishNames) {
+                byDish.put(dishName, menus.get(i++));
+            }
+            return byDish;
+        });
+    }
+
+    public CompletableFuture<List<DisplayDishMenuOrder>> getOrdersOfRestaurant(String restaurantName, String cityName) {
+        return submit(() -> model.getOrdersOfRestaurant(restaurantName, cityName));
+    }
+
+    public CompletableFuture<List<DisplayRestaurantDishOrder>> getOrdersPage(OrderFilter filter, int afterOrderNo, int pageSize) {
+        return submit(() -> model.getOrdersPage(filter, afterOrderNo, pageSize));
+    }
+
+    public CompletableFuture<RestaurantEntity> getRestaurant(String restaurantName, String cityName) {
+        return submit(() -> model.getRestaurant(restaurantName, cityName));
+    }
+
+    public CompletableFuture<Void> addOrder(MenuItemEntity menu) {
+        return submit(() -> {
+            model.addOrder(menu);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> addOrders(Collection<FoodOrderEntity> orders) {
+        return submit(() -> {
+            model.addOrders(orders);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> deleteOrder(int orderNo) {
+        return submit(() -> model.deleteOrder(orderNo));
+    }
+
+    public CompletableFuture<Void> addDish(DishEntity dish) {
+        return submit(() -> {
+            model.addDish(dish);
+            return null;
+        });
+    }
+
+    /**
+     * Stops the pool after the operations already submitted, of this and every view of it, have run.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    // Model operations throw the checked EmptyResultsException, which a Supplier cannot
+    private interface Operation<T> {
+        T run() throws Exception;
+    }
+
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (timeout != null) {
+            future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        try {
+            executor.execute(() -> {
+                // Timed out or cancelled while waiting for a thread
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(operation.run());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Closed
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "model-async-" + count.incrementAndGet());
+            // An AsyncModel that is never closed does not keep the JVM running
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(threads, factory);
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.truefmartin;
+
+import com.github.truefmartin.analytics.SalesGrouping;
+import com.github.truefmartin.exceptions.EmptyResultsException;
+import com.github.truefmartin.models.DishEntity;
+import com.github.truefmartin.models.FoodOrderEntity;
+import com.github.truefmartin.models.MenuItemEntity;
+import com.github.truefmartin.models.RestaurantEntity;
+import com.github.truefmartin.models.Type;
+import com.github.truefmartin.views.DisplayDishMenu;
+import com.github.truefmartin.views.DisplayRestaurantMenu;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.InputMismatchException;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Runs menu operations read from a script instead of prompting for them, e.g. to replay recorded operations.
+ * Each line is a {@link Menu.Selection} name followed by its inputs, separated by '|':
+ * <pre>
+ * GET_MENUS|restaurant name|city
+ * ADD_ORDER|dish name|itemNo
+ * GET_ORDERS|restaurant name|city[|first date|last date]
+ * DELETE_ORDER|orderNo
+ * DELETE_ORDERS|restaurant name|city|first date|last date
+ * ADD_DISH|restaurant name|city|dish name|type|price
+ * LIST_RELATION|relation name
+ * SALES|grouping[|first date|last date]
+ * STATS
+ * QUIT
+ * </pre>
+ * SALES groups by restaurant, city, type or day, the dates are yyyy-mm-dd and either may be blank for no bound.
+ * GET_ORDERS only reads the months of orders within its dates, which are optional as well.
+ * DELETE_ORDERS deletes the orders of a restaurant within the dates, any of which may be blank, but not all of them.
+ * Blank lines and lines starting with '#' are skipped. A failed operation is reported in the output with its line
+ * number and the script goes on. All output is buffered and written in large blocks.
+ */
+public class BatchControl {
+    private static final Pattern FIELD_SEPARATOR = Pattern.compile("\\|");
+    private static final String SEPARATOR = "-".repeat(20);
+    private static final HashMap<String, Class<?>> relationMap = new HashMap<>();
+    private final Model model;
+    private final StringBuilder out = new StringBuilder(1 << 16);
+    private Writer writer;
+    private long operations;
+    private long failures;
+
+    static {
+        relationMap.put("dish", DishEntity.class);
+        relationMap.put("food_order", FoodOrderEntity.class);
+        relationMap.put("menu_item", MenuItemEntity.class);
+        relationMap.put("restaurant", RestaurantEntity.class);
+    }
+
+    public BatchControl(Model model) {
+        this.model = model;
+    }
+
+    /**
+     * Runs every operation of the script until its end or a QUIT line.
+     * @param script the operations, one per line
+     * @param writer receives the output of the operations
+     * @return a summary of the run: operations, failures and operations per second
+     * @throws IOException if the script cannot be read or the output cannot be written
+     */
+    public String run(BufferedReader script, Writer writer) throws IOException {
+        this.writer = writer;
+        long start = System.nanoTime();
+        int lineNo = 0;
+        String line;
+        while ((line = script.readLine()) != null) {
+            lineNo++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = FIELD_SEPARATOR.split(line, -1);
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = fields[i].trim();
+            }
+            Menu.Selection selection;
+            try {
+                selection = Menu.Selection.valueOf(fields[0].toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                operations++;
+                fail(lineNo, "unknown operation " + fields[0]);
+                continue;
+            }
+            if (selection == Menu.Selection.QUIT) {
+                break;
+            }
+            operations++;
+            try {
+                run(selection, fields);
+            } catch (EmptyResultsException | InputMismatchException | IllegalArgumentException e) {
+                // A bad number or dish type is an IllegalArgumentException
+                fail(lineNo, e.getMessage());
+            }
+            flushIfFull();
+        }
+        writer.append(out);
+        writer.flush();
+        out.setLength(0);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return String.format("%,d operations, %,d failed, in %.3f s (%,.0f operations/s)",
+                operations, failures, seconds, operations / Math.max(seconds, 1e-9));
+    }
+
+    private void run(Menu.Selection selection, String[] fields) throws EmptyResultsException {
+        switch (selection) {
+            case GET_MENUS: {
+                expectFields(fields, "restaurant name", "city");
+                List<DisplayDishMenu> menus = model.getMenusOfRestaurant(fields[1], fields[2]);
+                out.append("Restaurant: ").append(fields[1]).append(", City: ").append(fields[2]).append('\n');
+                for (DisplayDishMenu menu : menus) {
+                    out.append(SEPARATOR).append('\n').append(menu).append('\n');
+                }
+                out.append(SEPARATOR).append('\n');
+                break;
+            }
+            case ADD_ORDER: {
+                expectFields(fields, "dish name", "itemNo");
+                int itemNo = Integer.parseInt(fields[2]);
+                // The same check as the menu: the item must be one of the dish's menu items
+                List<DisplayRestaurantMenu> menus;
+                try {
+                    menus = model.getMenusOfDish(fields[1]);
+                } catch (EmptyResultsException e) {
+                    // Only named in the failure, a script does not order a dish other than the one it names
+                    throw new EmptyResultsException(e.getMessage()
+                            + Control.didYouMean(model.suggestDishNames(fields[1], Control.SUGGESTED_NAMES)), e);
+                }
+                DisplayRestaurantMenu match = null;
+                for (DisplayRestaurantMenu menu : menus) {
+                    if (menu.getItemNo() == itemNo) {
+                        match = menu;
+                        break;
+                    }
+                }
+                if (match == null) {
+                    throw new EmptyResultsException("input of " + itemNo + " did not match a menuItem of " + fields[1]);
+                }
+                model.addOrder(match.getMenu());
+                out.append("Added order of itemNo ").append(itemNo).append('\n');
+                break;
+            }
+            case GET_ORDERS: {
+                if (fields.length == 3) {
+                    expectFields(fields, "restaurant name", "city");
+                } else if (fields.length != 5 || fields[1].isEmpty() || fields[2].isEmpty()) {
+                    throw new InputMismatchException(fields[0] + " takes restaurant name|city[|first date|last date]");
+                }
+                LocalDate from = fields.length == 5 ? Control.parseDate(fields[3]) : null;
+                LocalDate to = fields.length == 5 ? Control.parseDate(fields[4]) : null;
+                model.forEachOrderOfRestaurant(fields[1], fields[2], from, to, order -> {
+                    out.append(SEPARATOR).append('\n');
+                    order.appendTo(out).append('\n');
+                    flushIfFull();
+                });
+                out.append(SEPARATOR).append('\n');
+                break;
+            }
+            case DELETE_ORDER: {
+                expectFields(fields, "orderNo");
+                int orderNo = Integer.parseInt(fields[1]);
+                if (!model.deleteOrder(orderNo)) {
+                    throw new EmptyResultsException("no order with number(" + orderNo + "), unable to remove order.");
+                }
+                out.append("Removed order ").append(orderNo).append('\n');
+                break;
+            }
+            case DELETE_ORDERS: {
+                if (fields.length != 5) {
+                    throw new InputMismatchException(fields[0] + " takes restaurant name|city|first date|last date");
+                }
+                long deleted = model.deleteOrders(Control.parseOrderFilter(Arrays.copyOfRange(fields, 1, 5)));
+                out.append("Removed ").append(deleted).append(" orders\n");
+                break;
+            }
+            case ADD_DISH: {
+                expectFields(fields, "restaurant name", "city", "dish name", "type", "price");
+                RestaurantEntity restaurant = model.getRestaurant(fields[1], fields[2]);
+                Type type = Type.valueOf(fields[4]);
+                float price = Float.parseFloat(fields[5]);
+                model.addDish(Control.newDish(restaurant, fields[3], type, price));
+                out.append("Added dish ").append(fields[3]).append(" to ").append(fields[1]).append('\n');
+                break;
+            }
+            case LIST_RELATION: {
+                expectFields(fields, "relation name");
+                Class<?> relationClass = relationMap.get(fields[1]);
+                if (relationClass == null) {
+                    throw new InputMismatchException("Invalid input of " + fields[1] + ", please enter a valid relation name.");
+                }
+                for (String row : model.listRelation(fields[1], relationClass)) {
+                    out.append(row).append('\n');
+                    flushIfFull();
+                }
+                break;
+            }
+            case SALES: {
+                if (fields.length == 2) {
+                    expectFields(fields, "grouping");
+                } else if (fields.length != 4 || fields[1].isEmpty()) {
+                    throw new InputMismatchException(fields[0] + " takes grouping[|first date|last date]");
+                }
+                out.append(model.getSales(SalesGrouping.fromName(fields[1]),
+                        fields.length == 4 ? Control.parseDate(fields[2]) : null,
+                        fields.length == 4 ? Control.parseDate(fields[3]) : null,
+                        Control.SALES_TOP_DISHES)).append('\n');
+                break;
+            }
+            case STATS: {
+                model.getOperationStatistics().forEach(stat -> out.append(stat).append('\n'));
+                model.getCacheStatistics().forEach(stat -> out.append(stat).append('\n'));
+                out.append("pool: ").append(model.getPoolMetrics()).append('\n');
+                out.append("startup: ").append(model.getStartupTimings()).append('\n');
+                break;
+            }
+            default:
+                throw new InputMismatchException("Invalid input, please enter a valid menu option.");
+        }
+    }
+
+    private static void expectFields(String[] fields, String... names) {
+        if (fields.length != names.length + 1) {
+            throw new InputMismatchException(fields[0] + " takes " + String.join("|", names));
+        }
+        for (int i = 1; i < fields.length; i++) {
+            if (fields[i].isEmpty()) {
+                throw new InputMismatchException(fields[0] + " is missing the " + names[i - 1]);
+            }
+        }
+    }
+
+    private void fail(int lineNo, String message) {
+        failures++;
+        out.append("line ").append(lineNo).append(": ").append(message).append('\n');
+    }
+
+    private void flushIfFull() {
+        if (out.length() < 1 << 16) {
+            return;
+        }
+        try {
+            writer.append(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out.setLength(0);
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.truefmartin;
 
+import com.github.truefmartin.analytics.SalesGrouping;
 import com.github.truefmartin.exceptions.EmptyResultsException;
 import com.github.truefmartin.models.*;
 import com.github.truefmartin.views.*;
@@ -7,17 +8,38 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class Control {
 
     private static final Logger logger = LogManager.getLogger(Control.class);
     private static HashMap<String, Class<?>> relationMap = null;
     private static final Menu menuUI = new Menu();
-    private final Model model;
+    private static final int ORDER_PAGE_SIZE = 20;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    static final int SALES_TOP_DISHES = 3;
+    static final int SUGGESTED_NAMES = 5;
+    // Resolved from startingModel when the first operation needs it
+    private Model model;
+    private final CompletableFuture<Model> startingModel;
+    // One scanner for the whole session, a scanner per prompt would drop input it had buffered, e.g. when piped
+    private final Scanner scanner = new Scanner(System.in);
 
     public Control(Model model) {
-        this.model = model;
+        this(CompletableFuture.completedFuture(model));
+    }
+
+    /**
+     * Starts the menu while the Model is still being built, e.g. on a background thread.
+     * The first operation waits for it.
+     * @param startingModel completes with the Model, or with the exception that building it threw
+     */
+    public Control(CompletableFuture<Model> startingModel) {
+        this.startingModel = startingModel;
         if (relationMap == null) {
             relationMap = new HashMap<>();
             relationMap.put("dish", DishEntity.class);
@@ -34,7 +56,7 @@ public class Control {
         Menu.MenuOption menuOption;
         do {
             menuUI.displayMenu();
-            menuOption = menuUI.getMenuOption();
+            menuOption = menuUI.getMenuOption(scanner);
             try {
                 menuResponse(menuOption);
             } catch (InputMismatchException | EmptyResultsException e) {
@@ -43,6 +65,25 @@ public class Control {
         } while (menuOption.selection != Menu.Selection.QUIT);
     }
 
+    /*
+     * Waits for the Model and throws what building it threw, as new Model() would have, rather than the
+     * CompletionException wrapping it.
+     */
+    private Model awaitModel() {
+        try {
+            return startingModel.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
     /*
      * Calls database methods depending on passed in menu selection. Throws exceptions from the database.
      * Reads input from user to pass to database.
@@ -51,7 +92,6 @@ public class Control {
         if (menuOption.selection == Menu.Selection.QUIT) {
             return;
         }
-        Scanner scanner = new Scanner(System.in);
         String[] lines = new String[menuOption.instructions.length];
         System.out.println();
         for (int i = 0; i < menuOption.instructions.length; i++) {
@@ -59,6 +99,9 @@ public class Control {
             lines[i] = scanner.nextLine();
         }
         System.out.println();
+        if (model == null) {
+            model = awaitModel();
+        }
         switch (menuOption.selection) {
             /*
            Prompt the user for a restaurant name and city.
@@ -78,7 +121,7 @@ public class Control {
              */
             case ADD_ORDER: {
                 // Get and display the results of the dish search
-                var results = getAndDisplayDishResults(lines);
+                var results = getAndDisplayDishResults(scanner, lines);
                 // Get user selection and save the order
                 saveDishOrder(scanner, results);
                 break;
@@ -95,15 +138,22 @@ public class Control {
                 break;
             }
             /*
-             Display all food orders (orderNo, dishName, restaurantName, date, time).
+             Display all food orders (orderNo, dishName, restaurantName, date, time), one page at a time.
              Prompt the user for the orderNo of the order that they wish to cancel.
              Remove that order from the FoodOrder table.
              */
             case DELETE_ORDER: {
-                // Get and display all orders, form a map between order numbers and orders
-                HashMap<Integer, FoodOrderEntity> orderMap = getAndDisplayOrderMap();
-                // Get user selection and delete the order
-                deleteOrder(scanner, orderMap);
+                // Page through the orders until the user picks one, only the current page is held in memory
+                pageAndDeleteOrder(scanner);
+                break;
+            }
+
+            /*
+            Prompt the user for a restaurant and city, a first and a last date, each of which may be blank.
+            Remove every order of the restaurant within the dates from the FoodOrder table.
+             */
+            case DELETE_ORDERS: {
+                System.out.println("Deleted " + model.deleteOrders(parseOrderFilter(lines)) + " orders");
                 break;
             }
 
@@ -124,6 +174,21 @@ public class Control {
                 printRelation(lines);
                 break;
             }
+            /*
+            Prompt the user for the grouping and the first and last date.
+            Display the order count and revenue of each group with its top dishes, totalled by the database.
+             */
+            case SALES: {
+                printSales(lines);
+                break;
+            }
+            /*
+            Display the latency percentiles and SQL counts of each operation, then the cache, pool and startup statistics.
+             */
+            case STATS: {
+                printStatistics();
+                break;
+            }
             default:
                 throw new InputMismatchException("Invalid input, please enter a valid menu option.");
         }
@@ -135,7 +200,12 @@ public class Control {
         }
         var restaurantName = lines[0];
         var cityName = lines[1];
-        var displays = model.getMenusOfRestaurant(restaurantName, cityName);
+        List<DisplayDishMenu> displays;
+        try {
+            displays = model.getMenusOfRestaurant(restaurantName, cityName);
+        } catch (EmptyResultsException e) {
+            throw new EmptyResultsException(e.getMessage() + didYouMean(model.suggestRestaurantNames(restaurantName, SUGGESTED_NAMES)), e);
+        }
         System.out.println("Restaurant: " + restaurantName + ", City: " + cityName);
         for (DisplayDishMenu display :
                 displays
@@ -146,12 +216,19 @@ public class Control {
         System.out.println("-".repeat(20));
     }
 
-    private List<DisplayRestaurantMenu> getAndDisplayDishResults(String[] lines) throws EmptyResultsException {
+    private List<DisplayRestaurantMenu> getAndDisplayDishResults(Scanner scanner, String[] lines) throws EmptyResultsException {
         if (lines.length != 1 || Objects.equals(lines[0], "")) {
             throw new InputMismatchException("Invalid input, please enter a dish name.");
         }
         var dishName = lines[0];
-        var results = model.getMenusOfDish(dishName);
+        List<DisplayRestaurantMenu> results;
+        try {
+            results = model.getMenusOfDish(dishName);
+        } catch (EmptyResultsException e) {
+            // A misspelled dish gets a pick of the closest names rather than starting over
+            dishName = pickSuggestion(scanner, dishName, model.suggestDishNames(dishName, SUGGESTED_NAMES), e);
+            results = model.getMenusOfDish(dishName);
+        }
         System.out.println("Dish: " + dishName);
         for (DisplayRestaurantMenu display :
                 results
@@ -163,6 +240,38 @@ public class Control {
         return results;
     }
 
+    /*
+     * Lists the suggested names and returns the one the user picks by number.
+     * Throws the original exception if there are no suggestions or the user picks none.
+     */
+    private static String pickSuggestion(Scanner scanner, String input, List<String> suggestions, EmptyResultsException notFound)
+            throws EmptyResultsException {
+        if (suggestions.isEmpty()) {
+            throw notFound;
+        }
+        System.out.println("Found no '" + input + "', did you mean:");
+        for (int i = 0; i < suggestions.size(); i++) {
+            System.out.println("\t" + (i + 1) + ") " + suggestions.get(i));
+        }
+        System.out.print("Enter a number to pick one, or nothing to cancel: ");
+        var choice = scanner.nextLine().trim();
+        if (choice.isEmpty()) {
+            throw notFound;
+        }
+        try {
+            return suggestions.get(Integer.parseInt(choice) - 1);
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new InputMismatchException("input of " + choice + " is not one of the numbers listed");
+        }
+    }
+
+    /*
+     * The end of a not found message naming the closest names, empty if there are none.
+     */
+    static String didYouMean(List<String> suggestions) {
+        return suggestions.isEmpty() ? "" : ", did you mean " + String.join(", ", suggestions) + "?";
+    }
+
     private void saveDishOrder(Scanner scanner, List<DisplayRestaurantMenu> results) throws EmptyResultsException {
         System.out.print("Enter itemNo to add to orders: ");
         var itemNoStr = scanner.nextLine();
@@ -183,22 +292,53 @@ public class Control {
     }
 
     private void displayRestaurantOrders(String[] lines) throws EmptyResultsException {
-        if (invalidRestaurantCity(lines)) {
+        if (lines.length != 4 || invalidRestaurantCity(Arrays.copyOf(lines, 2))) {
             throw new InputMismatchException("Invalid input, please enter a restaurant name and city.");
         }
         var restaurantName = lines[0];
         var cityName = lines[1];
-        List<DisplayDishMenuOrder> results = model.getOrdersOfRestaurant(restaurantName, cityName);
-        for (DisplayDishMenuOrder result :
-                results) {
-            System.out.println("-".repeat(20));
-            System.out.println(result);
+        // Blank dates read every month, the archived ones included
+        LocalDate from = parseDate(lines[2]);
+        LocalDate to = parseDate(lines[3]);
+        // Each order is formatted straight into the buffer, which is written out whenever it fills up
+        StringBuilder out = new StringBuilder(OUTPUT_BUFFER_SIZE);
+        String separator = "-".repeat(20);
+        model.forEachOrderOfRestaurant(restaurantName, cityName, from, to, (DisplayDishMenuOrder result) -> {
+            out.append(separator).append('\n');
+            result.appendTo(out).append('\n');
+            if (out.length() >= OUTPUT_BUFFER_SIZE) {
+                System.out.print(out);
+                out.setLength(0);
+            }
+        });
+        out.append(separator).append('\n');
+        System.out.print(out);
+        System.out.flush();
+    }
+
+    private void pageAndDeleteOrder(Scanner scanner) throws EmptyResultsException {
+        int afterOrderNo = 0;
+        while (true) {
+            List<DisplayRestaurantDishOrder> page = model.getOrdersPage(OrderFilter.all(), afterOrderNo, ORDER_PAGE_SIZE);
+            if (page.isEmpty()) {
+                if (afterOrderNo == 0) {
+                    throw new EmptyResultsException("found no orders in food_order");
+                }
+                System.out.println("No more orders.");
+                return;
+            }
+            HashMap<Integer, FoodOrderEntity> orderMap = displayOrderMap(page);
+            System.out.print("Enter orderNo to remove, or nothing for the next page: ");
+            var orderNoStr = scanner.nextLine();
+            if (!orderNoStr.isBlank()) {
+                deleteOrder(orderNoStr, orderMap);
+                return;
+            }
+            afterOrderNo = page.get(page.size() - 1).getOrder().getOrderNo();
         }
-        System.out.println("-".repeat(20));
     }
 
-    private HashMap<Integer, FoodOrderEntity> getAndDisplayOrderMap() throws EmptyResultsException {
-        List<DisplayRestaurantDishOrder> result = model.getAllOrders();
+    private HashMap<Integer, FoodOrderEntity> displayOrderMap(List<DisplayRestaurantDishOrder> result) {
         HashMap<Integer, FoodOrderEntity> orderMap = new HashMap<>();
         for (DisplayRestaurantDishOrder display :
                 result
@@ -211,10 +351,7 @@ public class Control {
         return orderMap;
     }
 
-    private void deleteOrder(Scanner scanner, HashMap<Integer, FoodOrderEntity> orderMap) throws EmptyResultsException {
-        // Get itemNo to add a new order to food_order relation
-        System.out.print("Enter orderNo to remove: ");
-        var orderNoStr = scanner.nextLine();
+    private void deleteOrder(String orderNoStr, HashMap<Integer, FoodOrderEntity> orderMap) throws EmptyResultsException {
         int orderNo;
         try {
             orderNo = Integer.parseInt(orderNoStr);
@@ -267,6 +404,14 @@ public class Control {
         } catch (NumberFormatException e) {
             throw new InputMismatchException("input of " + dishPriceStr + " did not convert to a price for a menu item");
         }
+        // Persist both dish and menu
+        model.addDish(newDish(restaurant, dishName, dishType, dishPrice));
+    }
+
+    /*
+     * A new dish with a single menu item at the given restaurant, ready for Model.addDish.
+     */
+    static DishEntity newDish(RestaurantEntity restaurant, String dishName, Type dishType, float dishPrice) {
         DishEntity dish = new DishEntity();
         dish.setDishName(dishName);
         dish.setType(dishType);
@@ -279,8 +424,7 @@ public class Control {
         HashSet<MenuItemEntity> menus = new HashSet<>();
         menus.add(menu);
         dish.setMenuItems(menus);
-        // Persist both dish and menu
-        model.addDish(dish);
+        return dish;
     }
 
     private void printRelation(String[] lines) {
@@ -301,6 +445,59 @@ public class Control {
         }
     }
 
+    private void printSales(String[] lines) throws EmptyResultsException {
+        if (lines.length != 3) {
+            throw new InputMismatchException("Invalid input, please enter a grouping and two dates.");
+        }
+        var report = model.getSales(SalesGrouping.fromName(lines[0]), parseDate(lines[1]), parseDate(lines[2]),
+                SALES_TOP_DISHES);
+        System.out.println(report);
+    }
+
+    /*
+     * The orders of a restaurant and city, a first date and a last date, of which the restaurant and city or one date
+     * must be given, so a mistyped blank line does not delete every order.
+     */
+    static OrderFilter parseOrderFilter(String[] lines) {
+        if (lines.length != 4) {
+            throw new InputMismatchException("Invalid input, please enter a restaurant name, city and two dates.");
+        }
+        if (lines[0].isBlank() != lines[1].isBlank()) {
+            throw new InputMismatchException("Invalid input, please enter both a restaurant name and city, or neither.");
+        }
+        LocalDate from = parseDate(lines[2]);
+        LocalDate to = parseDate(lines[3]);
+        if (lines[0].isBlank() && from == null && to == null) {
+            throw new InputMismatchException("Invalid input, please enter a restaurant or a date to delete orders of.");
+        }
+        return lines[0].isBlank() ? new OrderFilter(null, null, from, to) : new OrderFilter(lines[0], lines[1], from, to);
+    }
+
+    /*
+     * A yyyy-mm-dd date, or null if the input is blank.
+     */
+    static LocalDate parseDate(String input) {
+        if (input.isBlank()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(input.trim());
+        } catch (DateTimeParseException e) {
+            throw new InputMismatchException("input of " + input + " is not a date of the form yyyy-mm-dd");
+        }
+    }
+
+    private void printStatistics() {
+        System.out.println("Operations:");
+        model.getOperationStatistics().forEach(line -> System.out.println("\t" + line));
+        System.out.println("Caches:");
+        model.getCacheStatistics().forEach(line -> System.out.println("\t" + line));
+        System.out.println("Connection pool:");
+        System.out.println("\t" + model.getPoolMetrics());
+        System.out.println("Startup:");
+        System.out.println("\t" + model.getStartupTimings());
+    }
+
     private boolean invalidRestaurantCity(String[] lines) {
         return lines.length != 2 ||
                 Objects.equals(lines[0], "") ||
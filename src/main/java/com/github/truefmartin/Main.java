@@ -1,6 +1,24 @@
 package com.github.truefmartin;
 
-import java.awt.*;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import com.github.truefmartin.generator.DataGenerator;
+import com.github.truefmartin.stats.StartupPhases;
+import com.github.truefmartin.storage.FixedLengthDatabase;
 // Import log4j classes.
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -12,6 +30,41 @@ public class Main {
     private static final Logger logger = LogManager.getLogger(Main.class);
 
     public static void main(String[] args) {
+        // 'generate key=value ...' loads synthetic data instead of starting the menu
+        if (args.length > 0 && args[0].equals("generate")) {
+            try {
+                DataGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (Exception e) {
+                logger.error(e);
+                throw new RuntimeException(e);
+            }
+            return;
+        }
+        // 'batch [file]' runs the operations of a script, or of stdin, instead of the interactive menu
+        if (args.length > 0 && args[0].equals("batch")) {
+            runBatch(args.length > 1 ? args[1] : "-");
+            return;
+        }
+        // 'fast [validate|none]' opens the menu while the database connects, and checks the schema instead of updating it
+        if (args.length > 0 && args[0].equals("fast")) {
+            fastStart(args.length > 1 ? args[1] : "validate");
+            return;
+        }
+        // 'serve key=value ...' serves the operations over HTTP on localhost until the process is stopped
+        if (args.length > 0 && args[0].equals("serve")) {
+            serve(ModelServer.Settings.fromArgs(Arrays.copyOfRange(args, 1, args.length)));
+            return;
+        }
+        // 'copy [directory]' copies the database into a fixed-length database that runs without a server
+        if (args.length > 0 && args[0].equals("copy")) {
+            copy(Path.of(args.length > 1 ? args[1] : "fixed-length-db"));
+            return;
+        }
+        // 'archive [hot months]' moves the orders older than the current month and the months before it to the archive
+        if (args.length > 0 && args[0].equals("archive")) {
+            archive(args.length > 1 ? Integer.parseInt(args[1]) : 12);
+            return;
+        }
         // Create the model which creates a new SessionFactory object.
         // Autoclose the model (and the SessionFactory) when done or on exception.
         try (Model model = new Model()) {
@@ -29,9 +82,118 @@ public class Main {
     }
 
 
+    private static void fastStart(String schemaAction) {
+        if (!schemaAction.equals("validate") && !schemaAction.equals("none")) {
+            throw new IllegalArgumentException("fast takes validate or none, got " + schemaAction);
+        }
+        StartupPhases phases = new StartupPhases();
+        Properties overrides = new Properties();
+        overrides.setProperty("hibernate.hbm2ddl.auto", schemaAction);
+        // Warming the menu cache counts every order, the cache fills as menus are looked up instead
+        overrides.setProperty("hibernate.menu_cache.warm_restaurants", "0");
+        CompletableFuture<Model> startingModel = CompletableFuture.supplyAsync(() -> new Model(overrides),
+                runnable -> new Thread(runnable, "model-startup").start());
+        try {
+            artIntro();
+            System.out.println("\n\nWelcome, please choose an option from the following menu.");
+            phases.mark("banner");
+            System.err.println("menu ready: " + phases + ", the database connects in the background, 'st' shows its timings");
+            new Control(startingModel).start();
+            System.out.println("Thank you, goodbye.");
+        } catch (HibernateException e) {
+            logger.error(e);
+            throw new RuntimeException(e);
+        } finally {
+            // Also closes a Model that finished starting after the user quit. A failed start was thrown by Control.
+            startingModel.handle((model, failure) -> {
+                if (model != null) {
+                    closeQuietly(model);
+                }
+                return null;
+            }).join();
+        }
+    }
+
+    private static void runBatch(String scriptName) {
+        try (Model model = new Model();
+             BufferedReader script = scriptName.equals("-")
+                     ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+                     : Files.newBufferedReader(Path.of(scriptName), StandardCharsets.UTF_8)) {
+            Writer out = new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8);
+            String summary = new BatchControl(model).run(script, out);
+            System.err.println(summary);
+        } catch (HibernateException e) {
+            logger.error(e);
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void copy(Path directory) {
+        try (Model model = new Model();
+             FixedLengthDatabase database = new FixedLengthDatabase(directory)) {
+            long start = System.nanoTime();
+            long rows = database.copyFrom(model);
+            System.err.printf("copied %,d rows (%s) to %s in %.1f s%n",
+                    rows, database, directory.toAbsolutePath(), (System.nanoTime() - start) / 1e9);
+        } catch (HibernateException e) {
+            logger.error(e);
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void archive(int hotMonths) {
+        if (hotMonths < 0) {
+            throw new IllegalArgumentException("archive takes the number of months to keep, got " + hotMonths);
+        }
+        try (Model model = new Model()) {
+            long start = System.nanoTime();
+            long orders = model.archiveOrders(LocalDate.now().withDayOfMonth(1).minusMonths(hotMonths));
+            System.err.printf("archived %,d orders in %.1f s%n", orders, (System.nanoTime() - start) / 1e9);
+        } catch (HibernateException e) {
+            logger.error(e);
+            throw new RuntimeException(e);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void serve(ModelServer.Settings settings) {
+        Model model = new Model();
+        ModelServer server = new ModelServer(model, settings);
+        try {
+            server.start();
+        } catch (Exception e) {
+            closeQuietly(model);
+            throw new RuntimeException(e);
+        }
+        // The server's thread keeps the JVM running, on Ctrl-C let the running requests finish first
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            closeQuietly(model);
+        }, "model-server-shutdown"));
+        System.err.println("Serving on http://localhost:" + server.getPort() + "/, stop with Ctrl-C");
+    }
+
+    private static void closeQuietly(Model model) {
+        try {
+            model.close();
+        } catch (Exception e) {
+            logger.error(e);
+        }
+    }
+
+    // Prints the banner rendered by ArtIntro.main, so the desktop toolkit is not loaded on every start
     private static void artIntro() {
-        ArtIntro artIntro = new ArtIntro();
-        ArtIntro.Settings settings = new ArtIntro.Settings(new Font(Font.SANS_SERIF, Font.PLAIN, 17), 140, 16);
-        artIntro.drawString("F O O D", "*", settings);
+        try (InputStream banner = Main.class.getResourceAsStream("/banner.txt")) {
+            if (banner != null) {
+                System.out.print(new String(banner.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            logger.error(e);
+        }
     }
 }
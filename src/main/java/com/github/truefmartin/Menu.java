@@ -24,11 +24,22 @@ public class Menu {
                         "3) GET orders by restaurant name and city",
                         Selection.GET_ORDERS,
                         "Enter restaurant name: ",
-                        "Enter city name: "));
+                        "Enter city name: ",
+                        "Enter first date (yyyy-mm-dd, blank for the first order): ",
+                        "Enter last date (yyyy-mm-dd, blank for the last order): "));
         menuMap.put("4",
                 new MenuOption(
                         "4) DELETE order by order number",
                 Selection.DELETE_ORDER));
+        menuMap.put("4r",
+                new MenuOption(
+                        "4r) DELETE all orders of a restaurant and/or date range",
+                Selection.DELETE_ORDERS,
+                        "Enter restaurant name (blank for every restaurant): ",
+                        "Enter city name: ",
+                        "Enter first date (yyyy-mm-dd, blank for the first order): ",
+                        "Enter last date (yyyy-mm-dd, blank for the last order): "
+                ));
         menuMap.put("5",
                 new MenuOption(
                         "5) ADD new dish to restaurant",
@@ -42,6 +53,19 @@ public class Menu {
                 Selection.LIST_RELATION,
                         "Enter relation name ('dish', 'food_order', 'menu_item', 'restaurant'): "
                 ));
+        menuMap.put("sa",
+                new MenuOption(
+                        "sa) SALES totals and top dishes by restaurant, city, dish type or day",
+                Selection.SALES,
+                        "Group by ('restaurant', 'city', 'type', 'day'): ",
+                        "Enter first date (yyyy-mm-dd, blank for the first order): ",
+                        "Enter last date (yyyy-mm-dd, blank for the last order): "
+                ));
+        menuMap.put("st",
+                new MenuOption(
+                        "st) STATS of each operation, the caches and the connection pool",
+                Selection.STATS
+                ));
         menuMap.put("0", new MenuOption(
                 "0) Quit",
                 Selection.QUIT
@@ -53,19 +77,23 @@ public class Menu {
     }
 
 
-    protected MenuOption getMenuOption() {
-        System.out.print("\tInput: ");
-        Scanner scan = new Scanner(System.in);
-        String in = scan.next();
-        MenuOption selected = menuMap.get(in);
-        if (selected == null) {
+    protected MenuOption getMenuOption(Scanner scan) {
+        while (true) {
+            System.out.print("\tInput: ");
+            // Input ends as if the user quit
+            if (!scan.hasNextLine()) {
+                return menuMap.get("0");
+            }
+            String in = scan.nextLine().trim();
+            MenuOption selected = menuMap.get(in);
+            if (selected != null) {
+                return selected;
+            }
             System.out.format("\nInvalid input of '%s', please try again.\n", in);
-            return getMenuOption();
         }
-        return selected;
     }
 
-    public enum Selection{GET_MENUS, ADD_ORDER, GET_ORDERS, DELETE_ORDER, ADD_DISH, LIST_RELATION, QUIT}
+    public enum Selection{GET_MENUS, ADD_ORDER, GET_ORDERS, DELETE_ORDER, DELETE_ORDERS, ADD_DISH, LIST_RELATION, SALES, STATS, QUIT}
 
     protected static class MenuOption {
         String display;
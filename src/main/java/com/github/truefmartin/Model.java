@@ -1,21 +1,82 @@
 package com.github.truefmartin;
 
+import com.github.truefmartin.analytics.SalesGrouping;
+import com.github.truefmartin.analytics.SalesReport;
+import com.github.truefmartin.cache.LruCache;
+import com.github.truefmartin.catalog.CatalogIds;
+import com.github.truefmartin.catalog.CatalogSink;
+import com.github.truefmartin.catalog.NameSearch;
 import com.github.truefmartin.exceptions.EmptyResultsException;
+import com.github.truefmartin.models.ArchivedOrderEntity;
 import com.github.truefmartin.models.DishEntity;
 import com.github.truefmartin.models.FoodOrderEntity;
+import com.github.truefmartin.models.IdGenerators;
 import com.github.truefmartin.models.MenuItemEntity;
+import com.github.truefmartin.models.OrderJournalEntity;
+import com.github.truefmartin.models.OrderPartitions;
+import com.github.truefmartin.models.QueryPlans;
 import com.github.truefmartin.models.RestaurantEntity;
+import com.github.truefmartin.models.Type;
+import com.github.truefmartin.pool.PoolMetrics;
+import com.github.truefmartin.queue.OrderJournal;
+import com.github.truefmartin.queue.OrderQueue;
+import com.github.truefmartin.stats.OperationStats;
+import com.github.truefmartin.stats.StartupPhases;
+import com.github.truefmartin.stats.StatementCounter;
 import com.github.truefmartin.views.DisplayDishMenu;
 import com.github.truefmartin.views.DisplayDishMenuOrder;
 import com.github.truefmartin.views.DisplayRestaurantDishOrder;
 import com.github.truefmartin.views.DisplayRestaurantMenu;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.LockModeType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jpa.SpecHints;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.query.SelectionQuery;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -23,34 +84,525 @@ import java.util.stream.Collectors;
  * It uses Hibernate to interact with the database.
  */
 public class Model implements AutoCloseable{
-    private static SessionFactory sessionFactory;
+    private static final Logger logger = LogManager.getLogger(Model.class);
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final String JDBC_BATCH_SIZE = "jdbc.batch_size";
+    private static final int ORDER_FETCH_SIZE = 1000;
+    private static final int CATALOG_CHUNK_SIZE = 1000;
+    private static final String MENU_CACHE_SIZE = "menu_cache.max_size";
+    private static final String MENU_CACHE_WARM_RESTAURANTS = "menu_cache.warm_restaurants";
+    private static final String QUERY_PLAN_CHECK = "query_plan.check";
+    private static final String HIKARI_MAXIMUM_POOL_SIZE = "hikari.maximumPoolSize";
+    private static final int DEFAULT_MENU_CACHE_SIZE = 1000;
+    // Built by the first Model, under the Model.class lock so that concurrent constructors build it once
+    private static volatile SessionFactory sessionFactory;
+    // Results of getMenusOfRestaurant and getMenusOfDish, keyed by the normalized input
+    private static LruCache<String, List<DisplayDishMenu>> restaurantMenuCache;
+    private static LruCache<String, List<DisplayRestaurantMenu>> dishMenuCache;
+    private static PoolMetrics poolMetrics;
+    // Latency and SQL counts of every public operation, dumped to stats.dump_file every stats.dump_interval seconds
+    private static final StatementCounter statementCounter = new StatementCounter();
+    private static final String STATS_DUMP_FILE = "stats.dump_file";
+    private static final String STATS_DUMP_INTERVAL = "stats.dump_interval";
+    private static OperationStats operationStats;
+    private static ScheduledExecutorService statsDumper;
+    // Write-behind queue of addOrder, null unless order_queue.enabled
+    private static final String ORDER_QUEUE_ENABLED = "order_queue.enabled";
+    private static final String ORDER_QUEUE_CAPACITY = "order_queue.capacity";
+    private static final String ORDER_QUEUE_MAX_BATCH = "order_queue.max_batch";
+    private static final String ORDER_QUEUE_MAX_DELAY = "order_queue.max_delay_ms";
+    private static final String ORDER_QUEUE_PUT_TIMEOUT = "order_queue.put_timeout_ms";
+    private static final String ORDER_QUEUE_RETRY = "order_queue.retry_ms";
+    private static final String ORDER_QUEUE_DEAD_LETTER_FILE = "order_queue.dead_letter_file";
+    private static OrderQueue orderQueue;
+    private static Thread orderQueueShutdownHook;
+    // Journal of addOrder on local disk, null unless order_journal.enabled
+    private static final String ORDER_JOURNAL_ENABLED = "order_journal.enabled";
+    private static final String ORDER_JOURNAL_FILE = "order_journal.file";
+    private static final String ORDER_JOURNAL_MAX_BATCH = "order_journal.max_batch";
+    private static final String ORDER_JOURNAL_RETRY = "order_journal.retry_ms";
+    private static OrderJournal orderJournal;
+    private static StartupPhases startupPhases;
+
+    private static final String ANALYTICS_PARTITION_DAYS = "analytics.partition_days";
+    private static final String ANALYTICS_THREADS = "analytics.threads";
+    // Orders removed per transaction by deleteOrders, so no transaction holds its row locks for long
+    private static final String ORDER_DELETE_CHUNK_SIZE = "order_delete.chunk_size";
+    private static ExecutorService analyticsExecutor;
+    // Moves the months of orders older than order_archive.hot_months to food_order_archive every interval_hours, if set
+    private static final String ORDER_ARCHIVE_INTERVAL = "order_archive.interval_hours";
+    private static final String ORDER_ARCHIVE_HOT_MONTHS = "order_archive.hot_months";
+    // Monthly partitions of food_order kept ready past the current month
+    private static final int PARTITION_MONTHS_AHEAD = 3;
+    private static final Object archiveLock = new Object();
+    private static ScheduledExecutorService orderArchiver;
+    // The day after the last archived order, null while the archive is empty. Only queries whose dates reach back
+    // before it read the archive.
+    private static volatile LocalDate archiveEnd;
+    // Searches of the dish and restaurant names for close matches, each loaded on its first search
+    private static final Object nameSearchLock = new Object();
+    private static volatile NameSearch dishNameSearch;
+    private static volatile NameSearch restaurantNameSearch;
 
     /**
-     * Builds a new Hibernate SessionFactory.
+     * Builds a new Hibernate SessionFactory, applying the given properties on top of hibernate.cfg.xml.
+     * @param overrides properties that replace the values from hibernate.cfg.xml
      * @return a new SessionFactory
      * @throws HibernateException if there is a problem creating the SessionFactory
      */
-    private static SessionFactory buildSession() throws HibernateException {
-        return new Configuration().configure().buildSessionFactory();
+    private static SessionFactory buildSession(Properties overrides) throws HibernateException {
+        Configuration configuration = new Configuration().configure();
+        configuration.addProperties(overrides);
+        configuration.setStatementInspector(statementCounter);
+        return configuration.buildSessionFactory();
     }
 
     /**
      * Constructs a new Model object.
-     * If the sessionFactory is null, it builds a new one.
+     * If the sessionFactory is null, it builds a new one. Safe to call from several threads at once.
      */
     public Model() {
-        if (sessionFactory == null) {
-            sessionFactory = buildSession();
+        this(new Properties());
+    }
+
+    /**
+     * Constructs a new Model object against a database other than the one in hibernate.cfg.xml,
+     * such as an in-process database for benchmarks.
+     * If the sessionFactory is null, it builds a new one with the given overrides. Safe to call from several threads at once.
+     * If starting up fails, everything started so far is stopped again, so the next Model starts from scratch.
+     * @param overrides hibernate properties that replace the values from hibernate.cfg.xml
+     */
+    public Model(Properties overrides) {
+        synchronized (Model.class) {
+            if (sessionFactory == null) {
+                startupPhases = new StartupPhases();
+                SessionFactory factory = buildSession(overrides);
+                startupPhases.mark("session factory");
+                // The startup steps use the Model's own operations, which read the shared field. Other Models wait
+                // on the class lock until it is started, or cleared again.
+                sessionFactory = factory;
+                try {
+                    startUp();
+                } catch (RuntimeException | Error e) {
+                    try {
+                        shutDown();
+                    } catch (RuntimeException closeFailure) {
+                        e.addSuppressed(closeFailure);
+                    }
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /*
+     * Prepares a newly built sessionFactory: starts the operation stats, fills the connection pool, syncs the id generators,
+     * starts the order queue or journal and the order archive job if configured, checks the query plans if configured, and creates the menu caches,
+     * warming them with the restaurants that have the most orders.
+     */
+    private void startUp() {
+        startOperationStats();
+        warmUpConnectionPool();
+        startupPhases.mark("connection pool");
+        syncIdGenerators();
+        startupPhases.mark("id generators");
+        startOrderQueue();
+        startOrderJournal();
+        startAnalytics();
+        startOrderArchive();
+        if (Boolean.parseBoolean(stringProperty(QUERY_PLAN_CHECK, "false"))) {
+            List<String> fullScans = checkQueryPlans();
+            if (!fullScans.isEmpty()) {
+                throw new IllegalStateException("lookups fall back to a full table scan: " + fullScans);
+            }
+            startupPhases.mark("query plans");
+        }
+        int cacheSize = intProperty(MENU_CACHE_SIZE, DEFAULT_MENU_CACHE_SIZE);
+        restaurantMenuCache = new LruCache<>(cacheSize);
+        dishMenuCache = new LruCache<>(cacheSize);
+        warmMenuCache(Math.min(cacheSize, intProperty(MENU_CACHE_WARM_RESTAURANTS, 0)));
+        startupPhases.mark("menu cache");
+    }
+
+    /*
+     * Installs the pool metrics and opens the pool's minimum number of idle connections up front,
+     * so the first operations do not pay for connecting. Does nothing unless the pool is HikariCP.
+     */
+    private static void warmUpConnectionPool() {
+        poolMetrics = new PoolMetrics();
+        ConnectionProvider provider = sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(ConnectionProvider.class);
+        if (provider == null || !provider.isUnwrappableAs(HikariDataSource.class)) {
+            return;
+        }
+        HikariDataSource dataSource = provider.unwrap(HikariDataSource.class);
+        dataSource.setMetricsTrackerFactory(poolMetrics);
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < dataSource.getMinimumIdle(); i++) {
+                connections.add(dataSource.getConnection());
+            }
+        } catch (SQLException e) {
+            throw new HibernateException("could not open the connection pool", e);
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException ignored) {
+                    // Returning a connection to the pool only fails if the pool is closed
+                }
+            }
+        }
+    }
+
+    /*
+     * Creates the operation stats and, if a dump interval is configured, a daemon thread that writes them to the dump file.
+     */
+    private static void startOperationStats() {
+        operationStats = new OperationStats(statementCounter, sessionFactory.getStatistics());
+        int interval = intProperty(STATS_DUMP_INTERVAL, 0);
+        if (interval < 1) {
+            return;
+        }
+        Path file = Path.of(stringProperty(STATS_DUMP_FILE, "model-stats.txt"));
+        statsDumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "model-stats-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        statsDumper.scheduleAtFixedRate(() -> dumpOperationStats(file), interval, interval, TimeUnit.SECONDS);
+    }
+
+    /*
+     * Starts the write-behind queue of addOrder if order_queue.enabled is set. Its orders are written with addOrders,
+     * and also on Ctrl-C, by a shutdown hook, if the Model is not closed first. Orders it cannot write are appended
+     * to order_queue.dead_letter_file.
+     */
+    private void startOrderQueue() {
+        if (!Boolean.parseBoolean(stringProperty(ORDER_QUEUE_ENABLED, "false"))) {
+            return;
+        }
+        Path deadLetterFile = Path.of(stringProperty(ORDER_QUEUE_DEAD_LETTER_FILE, "orders.dead"));
+        orderQueue = new OrderQueue(this::addOrders,
+                orders -> deadLetterOrders(deadLetterFile, orders),
+                intProperty(ORDER_QUEUE_CAPACITY, 10000),
+                intProperty(ORDER_QUEUE_MAX_BATCH, DEFAULT_BATCH_SIZE),
+                intProperty(ORDER_QUEUE_MAX_DELAY, 20),
+                intProperty(ORDER_QUEUE_PUT_TIMEOUT, 10000),
+                intProperty(ORDER_QUEUE_RETRY, 500));
+        orderQueueShutdownHook = new Thread(Model::closeOrderQueue, "order-queue-shutdown");
+        Runtime.getRuntime().addShutdownHook(orderQueueShutdownHook);
+    }
+
+    /*
+     * Opens the journal of addOrder if order_journal.enabled is set. Its replayer starts with the orders left in the file
+     * from before and writes them with replayJournal.
+     */
+    private void startOrderJournal() {
+        if (!Boolean.parseBoolean(stringProperty(ORDER_JOURNAL_ENABLED, "false"))) {
+            return;
+        }
+        if (orderQueue != null) {
+            throw new IllegalStateException(ORDER_JOURNAL_ENABLED + " and " + ORDER_QUEUE_ENABLED + " cannot both be set");
+        }
+        Path file = Path.of(stringProperty(ORDER_JOURNAL_FILE, "orders.journal"));
+        try {
+            orderJournal = new OrderJournal(file, this::replayJournal,
+                    intProperty(ORDER_JOURNAL_MAX_BATCH, DEFAULT_BATCH_SIZE),
+                    intProperty(ORDER_JOURNAL_RETRY, 1000));
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not open the order journal " + file, e);
+        }
+    }
+
+    /*
+     * Creates the daemon threads that run the date partitions of getSales, each with its own session.
+     */
+    private static void startAnalytics() {
+        AtomicInteger threads = new AtomicInteger();
+        analyticsExecutor = Executors.newFixedThreadPool(Math.max(1, intProperty(ANALYTICS_THREADS, 4)), runnable -> {
+            Thread thread = new Thread(runnable, "model-analytics-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+     * Reads how far the archive goes and, if order_archive.interval_hours is set, starts a daemon thread that archives
+     * the orders older than order_archive.hot_months months right away and then on that interval.
+     */
+    private void startOrderArchive() {
+        try (var tx = sessionFactory.openSession()) {
+            readArchiveEnd(tx);
+        }
+        int interval = intProperty(ORDER_ARCHIVE_INTERVAL, 0);
+        if (interval < 1) {
+            return;
+        }
+        int hotMonths = intProperty(ORDER_ARCHIVE_HOT_MONTHS, 12);
+        orderArchiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        orderArchiver.scheduleWithFixedDelay(() -> archiveOldOrders(hotMonths), 0, interval, TimeUnit.HOURS);
+    }
+
+    // Keeps the current month and the hotMonths before it in food_order
+    private void archiveOldOrders(int hotMonths) {
+        try {
+            long archived = archiveOrders(LocalDate.now().withDayOfMonth(1).minusMonths(hotMonths));
+            if (archived > 0) {
+                logger.info("archived {} orders", archived);
+            }
+        } catch (RuntimeException e) {
+            // The next run archives what this one left
+            logger.error("could not archive orders: {}", e.getMessage());
+        }
+    }
+
+    /*
+     * Appends orders the order queue could not write to the dead letter file, one "item_no,date,time" line each,
+     * and returns once they are on disk.
+     */
+    private static void deadLetterOrders(Path file, List<FoodOrderEntity> orders) {
+        List<String> lines = new ArrayList<>(orders.size());
+        for (FoodOrderEntity order : orders) {
+            lines.add(order.getMenu().getItemNo() + "," + order.getDate() + "," + order.getTime());
+        }
+        try {
+            Files.write(file, lines, StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not write " + orders.size() + " orders to " + file, e);
+        }
+        logger.error("set aside {} orders that could not be written in {}", orders.size(), file);
+    }
+
+    private static void closeOrderQueue() {
+        OrderQueue queue;
+        synchronized (Model.class) {
+            queue = orderQueue;
+            orderQueue = null;
+        }
+        if (queue == null) {
+            return;
+        }
+        try {
+            queue.close();
+        } catch (IllegalStateException e) {
+            logger.error("closed the order queue: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            logger.error("interrupted while writing the queued orders");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeOrderJournal() {
+        OrderJournal journal;
+        synchronized (Model.class) {
+            journal = orderJournal;
+            orderJournal = null;
+        }
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.error("could not close the order journal: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            logger.error("interrupted while replaying the journaled orders");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void dumpOperationStats(Path file) {
+        try {
+            operationStats.dump(file);
+        } catch (IOException e) {
+            logger.error("could not write the operation stats to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the menus of the restaurants with the most orders into the menu cache.
+     * @param restaurants the number of restaurants to load
+     */
+    public void warmMenuCache(int restaurants) {
+        if (restaurants < 1) {
+            return;
+        }
+        List<Object[]> busiest;
+        try(var tx = sessionFactory.openSession()) {
+            busiest = tx.createQuery(
+                            "select r.restaurantName, r.city " +
+                                    "from FoodOrderEntity o " +
+                                    "join o.menu m " +
+                                    "join m.restaurant r " +
+                                    "group by r.restaurantId, r.restaurantName, r.city " +
+                                    "order by count(o) desc",
+                            Object[].class
+                    )
+                    .setMaxResults(restaurants)
+                    .getResultList();
+        }
+        for (Object[] restaurant : busiest) {
+            try {
+                getMenusOfRestaurant((String) restaurant[0], (String) restaurant[1]);
+            } catch (EmptyResultsException ignored) {
+                // A restaurant with orders always has menu items, unless they were removed since
+            }
+        }
+    }
+
+    // Reads a setting from hibernate.cfg.xml or the overrides, which may or may not carry the hibernate. prefix
+    private static int intProperty(String name, int defaultValue) {
+        return Integer.parseInt(stringProperty(name, Integer.toString(defaultValue)));
+    }
+
+    private static String stringProperty(String name, String defaultValue) {
+        var properties = sessionFactory.getProperties();
+        Object value = properties.getOrDefault("hibernate." + name, properties.get(name));
+        return value == null ? defaultValue : value.toString().trim();
+    }
+
+    // MySQL compares names case-insensitively and ignores trailing spaces, so the cache keys do as well
+    private static String normalize(String name) {
+        return name.stripTrailing().toLowerCase(Locale.ROOT);
+    }
+
+    private static String restaurantKey(String restaurantName, String cityName) {
+        return normalize(restaurantName) + '\n' + normalize(cityName);
+    }
+
+    /**
+     * Moves the id generators past the ids already in use. Runs on startup, call it again after
+     * rows were inserted outside of Hibernate, e.g. by the DataGenerator.
+     */
+    @SuppressWarnings("try")
+    public void syncIdGenerators() {
+        try(var timer = operationStats.start("syncIdGenerators");
+            var tx = sessionFactory.openSession()) {
+            tx.doWork(IdGenerators::sync);
+        }
+    }
+
+    /**
+     * Runs EXPLAIN on the statement behind every lookup by a non-key column, with the name of an existing
+     * restaurant and dish as the arguments, and reports the tables read with a full table scan.
+     * Listings of every order or relation scan by design and are not checked. Only MySQL and H2 plans are understood.
+     * Runs on startup when query_plan.check is true in hibernate.cfg.xml.
+     * @return one entry per lookup and table read with a full scan, empty if every lookup uses an index
+     */
+    public List<String> checkQueryPlans() {
+        List<String> statements = new ArrayList<>();
+        try(var tx = sessionFactory.withOptions()
+                .statementInspector(sql -> {
+                    statements.add(sql);
+                    return sql;
+                })
+                .openSession()) {
+            Object[] restaurant = tx.createQuery("select r.restaurantName, r.city from RestaurantEntity r", Object[].class)
+                    .setMaxResults(1)
+                    .uniqueResultOptional()
+                    .orElse(new Object[]{"", ""});
+            String dishName = tx.createQuery("select d.dishName from DishEntity d", String.class)
+                    .setMaxResults(1)
+                    .uniqueResultOptional()
+                    .orElse("");
+            String rName = (String) restaurant[0];
+            String rCity = (String) restaurant[1];
+            OrderFilter byRestaurant = new OrderFilter(rName, rCity, null, null);
+
+            List<String> fullScans = new ArrayList<>();
+            checkQueryPlan(tx, statements, fullScans, "getRestaurant",
+                    () -> getRestaurant(tx, rName, rCity), rName, rCity);
+            checkQueryPlan(tx, statements, fullScans, "getMenusOfRestaurant",
+                    () -> getMenusOfRestaurant(tx, rName, rCity), rName, rCity);
+            checkQueryPlan(tx, statements, fullScans, "getMenusOfDish",
+                    () -> getMenusOfDish(tx, dishName), dishName);
+            checkQueryPlan(tx, statements, fullScans, "getOrdersOfRestaurant",
+                    () -> getOrdersOfRestaurant(tx, rName, rCity, null, null), rName, rCity);
+            checkQueryPlan(tx, statements, fullScans, "getOrdersPage",
+                    () -> getOrdersPage(tx, byRestaurant, 0, 1), rName, rCity, 0, 1);
+            return fullScans;
+        }
+    }
+
+    // A lookup run only so that its statement can be captured
+    private interface Lookup {
+        void run() throws EmptyResultsException;
+    }
+
+    private static void checkQueryPlan(Session tx, List<String> statements, List<String> fullScans,
+                                       String operation, Lookup lookup, Object... parameters) {
+        statements.clear();
+        try {
+            lookup.run();
+        } catch (EmptyResultsException ignored) {
+            // The statement was still issued, which is all the plan needs
+        }
+        // Later statements only load associations by id
+        String sql = statements.get(0);
+        for (String table : tx.doReturningWork(connection -> QueryPlans.fullScans(connection, sql, List.of(parameters)))) {
+            fullScans.add(operation + " reads " + table);
         }
     }
 
     /**
      * Closes the sessionFactory when the Model object is closed.
-     * @throws Exception if there is a problem closing the sessionFactory
+     * @throws HibernateException if there is a problem closing the sessionFactory
      */
     @Override
-    public void close() throws Exception {
-        sessionFactory.close();
+    public void close() {
+        synchronized (Model.class) {
+            // Several Models share the sessionFactory, the first to close it wins
+            if (sessionFactory != null) {
+                shutDown();
+            }
+        }
+    }
+
+    /*
+     * Stops whatever startUp started, which may be only part of it, and closes the sessionFactory. Callers hold the
+     * Model class lock.
+     */
+    private static void shutDown() {
+        try {
+            // Write the queued orders before the stats are dumped and the connections closed
+            if (orderQueueShutdownHook != null) {
+                closeOrderQueue();
+                try {
+                    Runtime.getRuntime().removeShutdownHook(orderQueueShutdownHook);
+                } catch (IllegalStateException ignored) {
+                    // Closed by another shutdown hook, the JVM is already shutting down
+                }
+                orderQueueShutdownHook = null;
+            }
+            // Replays what it can while the connections are open, the rest stays in the journal for the next start
+            closeOrderJournal();
+            if (statsDumper != null) {
+                statsDumper.shutdownNow();
+                statsDumper = null;
+                dumpOperationStats(Path.of(stringProperty(STATS_DUMP_FILE, "model-stats.txt")));
+            }
+            if (analyticsExecutor != null) {
+                analyticsExecutor.shutdownNow();
+                analyticsExecutor = null;
+            }
+            dishNameSearch = null;
+            restaurantNameSearch = null;
+            archiveEnd = null;
+            // An archive run cut short resumes on the next start
+            if (orderArchiver != null) {
+                orderArchiver.shutdownNow();
+                orderArchiver = null;
+            }
+        } finally {
+            sessionFactory.close();
+            sessionFactory = null;
+        }
     }
 
     /*
@@ -59,27 +611,47 @@ public class Model implements AutoCloseable{
      */
 
     /**
-     * Retrieves the menus of a specific restaurant.
+     * Retrieves the menus of a specific restaurant. Results are cached until a dish is added to the restaurant.
      * @param restaurantName the name of the restaurant
      * @param cityName the city where the restaurant is located
      * @return a list of menus
      * @throws EmptyResultsException if no menus are found
      */
     public List<DisplayDishMenu> getMenusOfRestaurant(String restaurantName, String cityName) throws EmptyResultsException {
-        try(var tx = sessionFactory.openSession()) {
-            return getMenusOfRestaurant(tx, restaurantName, cityName);
+        try(var timer = operationStats.start("getMenusOfRestaurant")) {
+            String key = restaurantKey(restaurantName, cityName);
+            List<DisplayDishMenu> menus = restaurantMenuCache.get(key);
+            if (menus == null) {
+                long stamp = restaurantMenuCache.stamp();
+                try(var tx = sessionFactory.openSession()) {
+                    menus = Collections.unmodifiableList(getMenusOfRestaurant(tx, restaurantName, cityName));
+                }
+                restaurantMenuCache.putIfUnchanged(key, menus, stamp);
+            }
+            timer.rows(menus.size());
+            return menus;
         }
     }
 
     /**
-     * Retrieves the menus that contain a specific dish.
+     * Retrieves the menus that contain a specific dish. Results are cached until a dish of that name is added.
      * @param dishName the name of the dish
      * @return a list of menus
      * @throws EmptyResultsException if no menus are found
      */
     public List<DisplayRestaurantMenu> getMenusOfDish(String dishName) throws EmptyResultsException {
-        try(var tx = sessionFactory.openSession()) {
-            return getMenusOfDish(tx, dishName);
+        try(var timer = operationStats.start("getMenusOfDish")) {
+            String key = normalize(dishName);
+            List<DisplayRestaurantMenu> menus = dishMenuCache.get(key);
+            if (menus == null) {
+                long stamp = dishMenuCache.stamp();
+                try(var tx = sessionFactory.openSession()) {
+                    menus = Collections.unmodifiableList(getMenusOfDish(tx, dishName));
+                }
+                dishMenuCache.putIfUnchanged(key, menus, stamp);
+            }
+            timer.rows(menus.size());
+            return menus;
         }
     }
 
@@ -91,18 +663,141 @@ public class Model implements AutoCloseable{
      * @throws EmptyResultsException if no orders are found
      */
     public List<DisplayDishMenuOrder> getOrdersOfRestaurant(String restaurantName, String cityName) throws EmptyResultsException {
-        try(var tx = sessionFactory.openSession()) {
-            return getOrdersOfRestaurant(tx, restaurantName, cityName);
+        return getOrdersOfRestaurant(restaurantName, cityName, null, null);
+    }
+
+    /**
+     * Retrieves the orders of a specific restaurant between two dates. Only the monthly partitions of food_order
+     * within the dates are read, and the archive only if the first date is before the end of it.
+     * @param restaurantName the name of the restaurant
+     * @param cityName the city where the restaurant is located
+     * @param from the first order date included, null for the first order
+     * @param to the last order date included, null for the last order
+     * @return a list of orders
+     * @throws EmptyResultsException if no orders are found
+     */
+    public List<DisplayDishMenuOrder> getOrdersOfRestaurant(String restaurantName, String cityName, LocalDate from, LocalDate to)
+            throws EmptyResultsException {
+        try(var timer = operationStats.start("getOrdersOfRestaurant");
+            var tx = sessionFactory.openSession()) {
+            List<DisplayDishMenuOrder> result = getOrdersOfRestaurant(tx, restaurantName, cityName, from, to);
+            timer.rows(result.size());
+            return result;
+        }
+    }
+
+    /**
+     * Streams the orders of a specific restaurant to a consumer through a forward only cursor,
+     * so no list of the orders is built. Rows are only formatted if the consumer prints them.
+     * For MySQL add useCursorFetch=true to the connection url, otherwise the driver reads the whole result first.
+     * @param restaurantName the name of the restaurant
+     * @param cityName the city where the restaurant is located
+     * @param consumer called once per order
+     * @return the number of orders visited
+     * @throws EmptyResultsException if no orders are found
+     */
+    public long forEachOrderOfRestaurant(String restaurantName, String cityName, Consumer<DisplayDishMenuOrder> consumer)
+            throws EmptyResultsException {
+        return forEachOrderOfRestaurant(restaurantName, cityName, null, null, consumer);
+    }
+
+    /**
+     * Streams the orders of a specific restaurant between two dates to a consumer through a forward only cursor,
+     * reading only the monthly partitions of food_order within the dates, and the archive only if they reach back to it.
+     * @param restaurantName the name of the restaurant
+     * @param cityName the city where the restaurant is located
+     * @param from the first order date included, null for the first order
+     * @param to the last order date included, null for the last order
+     * @param consumer called once per order
+     * @return the number of orders visited
+     * @throws EmptyResultsException if no orders are found
+     */
+    public long forEachOrderOfRestaurant(String restaurantName, String cityName, LocalDate from, LocalDate to,
+                                         Consumer<DisplayDishMenuOrder> consumer) throws EmptyResultsException {
+        try(var timer = operationStats.start("forEachOrderOfRestaurant");
+            var tx = sessionFactory.openSession()) {
+            long count = forEachOrderOfRestaurant(tx, restaurantName, cityName, from, to, consumer);
+            timer.rows(count);
+            return count;
         }
     }
 
     /**
      * Adds a new order to the database.
+     * With order_queue.enabled the order is only queued, stamped with the current date and time, and written
+     * with other queued orders shortly after. With order_journal.enabled the order is only appended to the journal on
+     * local disk, and written from there even if the database is down right now. Use {@link #flushOrders()} to wait
+     * until it is written.
      * @param menu the menu item to be ordered
+     * @throws IllegalStateException if the order queue stays full for longer than order_queue.put_timeout_ms
      */
     public void addOrder(MenuItemEntity menu) {
-        try(var tx = sessionFactory.openSession()) {
+        OrderJournal journal = orderJournal;
+        if (journal != null) {
+            try (var timer = operationStats.start("addOrder")) {
+                LocalDateTime now = LocalDateTime.now();
+                journal.append(menu.getItemNo(), now.toLocalDate(), now.toLocalTime());
+                timer.rows(1);
+            }
+            return;
+        }
+        OrderQueue queue = orderQueue;
+        if (queue != null) {
+            try (var timer = operationStats.start("addOrder")) {
+                queueOrder(queue, menu);
+                timer.rows(1);
+            }
+            return;
+        }
+        try(var timer = operationStats.start("addOrder");
+            var tx = sessionFactory.openSession()) {
             addOrder(tx, menu);
+            timer.rows(1);
+        }
+    }
+
+    /**
+     * Waits until every order queued or journaled by addOrder so far is written. Returns right away unless
+     * order_queue.enabled or order_journal.enabled. A journaled order waits for as long as the database is down.
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if queued orders could not be written since the last flush and were appended to
+     * order_queue.dead_letter_file instead
+     */
+    public void flushOrders() throws InterruptedException {
+        OrderQueue queue = orderQueue;
+        if (queue != null) {
+            queue.flush();
+        }
+        OrderJournal journal = orderJournal;
+        if (journal != null) {
+            journal.flush();
+        }
+    }
+
+    /**
+     * Adds many orders in one transaction, sent to the database as JDBC batches of the configured
+     * hibernate.jdbc.batch_size. The menu item of each order only needs its itemNo set, it is not loaded.
+     * Orders without a date are stamped with the current date and time.
+     * @param orders the orders to be added, their orderNo is set once added
+     */
+    public void addOrders(Collection<FoodOrderEntity> orders) {
+        int batchSize = intProperty(JDBC_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+        addOrders(orders, batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Adds many orders in one transaction, sent to the database as JDBC batches of the given size.
+     * @param orders the orders to be added, their orderNo is set once added
+     * @param batchSize the number of orders per JDBC batch
+     */
+    public void addOrders(Collection<FoodOrderEntity> orders, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size must be positive, got " + batchSize);
+        }
+        try(var timer = operationStats.start("addOrders");
+            var tx = sessionFactory.openSession()) {
+            addOrders(tx, orders, batchSize);
+            timer.rows(orders.size());
         }
     }
 
@@ -112,18 +807,200 @@ public class Model implements AutoCloseable{
      * @throws EmptyResultsException if no orders are found
      */
     public List<DisplayRestaurantDishOrder> getAllOrders() throws EmptyResultsException {
-        try(var tx = sessionFactory.openSession()) {
-            return getAllOrders(tx);
+        return getAllOrders(null, null);
+    }
+
+    /**
+     * Retrieves the orders between two dates, ordered by orderNo. Only the monthly partitions of food_order within
+     * the dates are read, and the archive only if the first date is before the end of it.
+     * @param from the first order date included, null for the first order
+     * @param to the last order date included, null for the last order
+     * @return a list of the orders
+     * @throws EmptyResultsException if no orders are found
+     */
+    public List<DisplayRestaurantDishOrder> getAllOrders(LocalDate from, LocalDate to) throws EmptyResultsException {
+        try(var timer = operationStats.start("getAllOrders");
+            var tx = sessionFactory.openSession()) {
+            List<DisplayRestaurantDishOrder> result = getAllOrders(tx, from, to);
+            timer.rows(result.size());
+            return result;
+        }
+    }
+
+    /**
+     * Retrieves one page of orders, ordered by orderNo. Pass the orderNo of the last order of a page to get the next,
+     * so each page is an index range scan no matter how deep into the table it is.
+     * @param filter the orders to include
+     * @param afterOrderNo only orders with a greater orderNo are returned, 0 for the first page
+     * @param pageSize the maximum number of orders to return
+     * @return the page, empty once there are no more orders
+     */
+    public List<DisplayRestaurantDishOrder> getOrdersPage(OrderFilter filter, int afterOrderNo, int pageSize) {
+        try(var timer = operationStats.start("getOrdersPage");
+            var tx = sessionFactory.openSession()) {
+            List<DisplayRestaurantDishOrder> result = getOrdersPage(tx, filter, afterOrderNo, pageSize);
+            timer.rows(result.size());
+            return result;
+        }
+    }
+
+    /**
+     * Streams orders to a consumer through a forward only cursor, ordered by orderNo. If the filter's first date
+     * reaches back to the archive, a second cursor reads the archived orders and the two are merged.
+     * Orders are not kept in memory after the consumer returns, so any number of orders can be visited.
+     * For MySQL add useCursorFetch=true to the connection url, otherwise the driver reads the whole result first.
+     * @param filter the orders to include
+     * @param consumer called once per order
+     * @return the number of orders visited
+     */
+    public long forEachOrder(OrderFilter filter, Consumer<DisplayRestaurantDishOrder> consumer) {
+        try(var timer = operationStats.start("forEachOrder");
+            var tx = sessionFactory.openSession()) {
+            long count = forEachOrder(tx, filter, consumer);
+            timer.rows(count);
+            return count;
+        }
+    }
+
+    /**
+     * Totals the orders between two dates per restaurant, city, dish type or day, with the dishes that brought in
+     * the most in each group. The range is split into date partitions of analytics.partition_days days that the database
+     * aggregates in parallel, so only the per dish totals of each partition are read rather than the orders.
+     * Revenue is at the menu items' current prices.
+     * @param grouping what to total the orders by
+     * @param from the first order date included, null for the first order
+     * @param to the last order date included, null for the last order
+     * @param topDishes the number of dishes to list per group
+     * @return the totals, groups without orders left out
+     * @throws EmptyResultsException if there are no orders between the dates
+     */
+    public SalesReport getSales(SalesGrouping grouping, LocalDate from, LocalDate to, int topDishes) throws EmptyResultsException {
+        try(var timer = operationStats.start("getSales");
+            var tx = sessionFactory.openSession()) {
+            if (from == null || to == null) {
+                LocalDate[] orderDates = getOrderDates(tx);
+                from = from == null ? orderDates[0] : from;
+                to = to == null ? orderDates[1] : to;
+            }
+            if (from.isAfter(to)) {
+                throw new IllegalArgumentException("the first date " + from + " is after the last date " + to);
+            }
+            SalesReport report = totalSales(grouping, from, to, topDishes);
+            if (report.isEmpty()) {
+                throw new EmptyResultsException(String.format("found no orders from %s to %s", from, to));
+            }
+            timer.rows(report.getGroups().size());
+            return report;
         }
     }
 
     /**
-     * Deletes an order from the database.
-     * @param order the order to be deleted
+     * Deletes an order from the database, without loading it first.
+     * @param order the order to be deleted, only its orderNo is read
      */
     public void deleteOrder(FoodOrderEntity order) {
-        try(var tx = sessionFactory.openSession()) {
-            deleteOrder(tx, order);
+        try(var timer = operationStats.start("deleteOrder");
+            var tx = sessionFactory.openSession()) {
+            timer.rows(deleteOrder(tx, order.getOrderNo()));
+        }
+    }
+
+    /**
+     * Deletes an order by its number, without loading it first.
+     * @param orderNo the number of the order to be deleted
+     * @return true if the order existed
+     */
+    public boolean deleteOrder(int orderNo) {
+        try(var timer = operationStats.start("deleteOrder");
+            var tx = sessionFactory.openSession()) {
+            int deleted = deleteOrder(tx, orderNo);
+            timer.rows(deleted);
+            return deleted > 0;
+        }
+    }
+
+    /**
+     * Deletes orders by their numbers with DELETE statements of up to order_delete.chunk_size numbers each,
+     * each in its own transaction, without loading the orders.
+     * If one chunk fails, the chunks before it stay deleted.
+     * @param orderNos the numbers of the orders to be deleted, numbers without an order are skipped
+     * @return the number of orders deleted
+     */
+    public int deleteOrders(Collection<Integer> orderNos) {
+        try(var timer = operationStats.start("deleteOrders");
+            var tx = sessionFactory.openSession()) {
+            int deleted = deleteOrders(tx, orderNos, intProperty(ORDER_DELETE_CHUNK_SIZE, DEFAULT_BATCH_SIZE));
+            timer.rows(deleted);
+            return deleted;
+        }
+    }
+
+    /**
+     * Deletes the orders of a restaurant, of a date range, or both, up to order_delete.chunk_size orders per
+     * transaction, so a large purge does not hold locks on the table for its whole run. Each chunk selects the
+     * numbers of matching orders through the restaurant or date index and deletes them by primary key.
+     * Unlike the order listings, orders of menu items without a dish are deleted as well.
+     * If one chunk fails, the chunks before it stay deleted.
+     * @param filter the orders to delete, {@link OrderFilter#all()} deletes every order
+     * @return the number of orders deleted, 0 if the restaurant does not exist
+     */
+    public long deleteOrders(OrderFilter filter) {
+        try(var timer = operationStats.start("deleteOrders");
+            var tx = sessionFactory.openSession()) {
+            long deleted = deleteOrders(tx, filter, intProperty(ORDER_DELETE_CHUNK_SIZE, DEFAULT_BATCH_SIZE));
+            timer.rows(deleted);
+            return deleted;
+        }
+    }
+
+    /**
+     * Finds the dish names closest to a possibly misspelled or partial one, e.g. to ask "did you mean" when
+     * {@link #getMenusOfDish(String)} finds nothing, see {@link NameSearch}. The names are searched in memory,
+     * loaded on the first search and kept up to date by {@link #addDish(DishEntity)}.
+     * @param input the dish name as entered
+     * @param limit the most names to return
+     * @return the closest dish names, best first, empty if none is close
+     */
+    public List<String> suggestDishNames(String input, int limit) {
+        try(var timer = operationStats.start("suggestDishNames")) {
+            List<String> names = dishNameSearch().search(input, limit);
+            timer.rows(names.size());
+            return names;
+        }
+    }
+
+    /**
+     * Finds the restaurant names closest to a possibly misspelled or partial one, see {@link #suggestDishNames}.
+     * Restaurants added outside of this application are not found until it restarts.
+     * @param input the restaurant name as entered
+     * @param limit the most names to return
+     * @return the closest restaurant names, best first, empty if none is close
+     */
+    public List<String> suggestRestaurantNames(String input, int limit) {
+        try(var timer = operationStats.start("suggestRestaurantNames")) {
+            List<String> names = restaurantNameSearch().search(input, limit);
+            timer.rows(names.size());
+            return names;
+        }
+    }
+
+    /**
+     * Moves the orders of the months before the month of a date from food_order to food_order_archive, see
+     * {@link OrderPartitions}. A partitioned food_order first gets the monthly partitions of the next
+     * PARTITION_MONTHS_AHEAD months. Queries whose dates reach back to archived orders read them from the archive,
+     * the others only read food_order. Runs every order_archive.interval_hours if set, keeping the current month and
+     * the order_archive.hot_months before it.
+     * @param before a date in the first month to keep in food_order
+     * @return the number of orders archived
+     */
+    public long archiveOrders(LocalDate before) {
+        synchronized (archiveLock) {
+            try(var timer = operationStats.start("archiveOrders");
+                var tx = sessionFactory.openSession()) {
+                long archived = archiveOrders(tx, before.withDayOfMonth(1), intProperty(ORDER_DELETE_CHUNK_SIZE, DEFAULT_BATCH_SIZE));
+                timer.rows(archived);
+                return archived;
+            }
         }
     }
 
@@ -135,8 +1012,11 @@ public class Model implements AutoCloseable{
      * @throws EmptyResultsException if the restaurant is not found
      */
     public RestaurantEntity getRestaurant(String restaurantName, String cityName) throws EmptyResultsException {
-        try(var tx = sessionFactory.openSession()) {
-            return getRestaurant(tx, restaurantName, cityName);
+        try(var timer = operationStats.start("getRestaurant");
+            var tx = sessionFactory.openSession()) {
+            RestaurantEntity restaurant = getRestaurant(tx, restaurantName, cityName);
+            timer.rows(1);
+            return restaurant;
         }
     }
 
@@ -145,8 +1025,38 @@ public class Model implements AutoCloseable{
      * @param dish the dish to be added
      */
     public void addDish(DishEntity dish) {
-        try(var tx = sessionFactory.openSession()) {
+        try(var timer = operationStats.start("addDish");
+            var tx = sessionFactory.openSession()) {
             addDish(tx, dish);
+            timer.rows(1);
+        }
+    }
+
+    /**
+     * Reads the ids of every restaurant, dish and menu item in one transaction, so they agree with each other.
+     * @return the ids, each array sorted
+     */
+    public CatalogIds readCatalogIds() {
+        try(var timer = operationStats.start("readCatalogIds");
+            var tx = sessionFactory.openSession()) {
+            CatalogIds ids = readCatalogIds(tx);
+            timer.rows(ids.restaurantIds.length + ids.dishNos.length + ids.itemNos.length);
+            return ids;
+        }
+    }
+
+    /**
+     * Reads catalog rows as plain columns, without building entities, e.g. to fill a
+     * {@link com.github.truefmartin.catalog.CatalogReplica}.
+     * @param restaurantIds the restaurants to read, null for all of them
+     * @param dishNos the dishes to read, null for all of them
+     * @param itemNos the menu items to read, null for all of them
+     * @param sink receives the restaurants, then the dishes, then the menu items
+     */
+    public void readCatalog(int[] restaurantIds, int[] dishNos, int[] itemNos, CatalogSink sink) {
+        try(var timer = operationStats.start("readCatalog");
+            var tx = sessionFactory.openSession()) {
+            timer.rows(readCatalog(tx, restaurantIds, dishNos, itemNos, sink));
         }
     }
 
@@ -156,12 +1066,13 @@ public class Model implements AutoCloseable{
 
     private List<DisplayRestaurantMenu> getMenusOfDish(Session tx, String dishName) throws EmptyResultsException {
         List<MenuItemEntity> menus = tx.createQuery(
-                        "select d.menuItems " +
-                                "from DishEntity d " +
-                                "where d.dishName = :dishName ",
+                        "select m " +
+                                "from MenuItemEntity m " +
+                                "where m.dish.dishName = :dishName ",
                         MenuItemEntity.class
                 )
                 .setParameter("dishName", dishName)
+                .setHint(SpecHints.HINT_SPEC_FETCH_GRAPH, tx.getEntityGraph(MenuItemEntity.WITH_RESTAURANT))
                 .getResultList();
         if (menus.isEmpty()) {
             throw EmptyResultsException.fromInput(dishName, " or no 'menu_items' with that dishNo");
@@ -177,15 +1088,19 @@ public class Model implements AutoCloseable{
 
     private static List<DisplayDishMenu> getMenusOfRestaurant(Session tx, String restaurantName, String cityName) throws EmptyResultsException {
 
+        // From the restaurant side, so the restaurant index is read first. H2 keeps outer joins in the order written,
+        // starting from the menu items it would read all of them to outer join their dishes.
         List<MenuItemEntity> menus = tx.createQuery(
-                        "select elements(r.menuItems) " +
+                        "select m " +
                                 "from RestaurantEntity r " +
+                                "join r.menuItems m " +
                                 "where r.restaurantName = :rName " +
                                 "and r.city = :rCity",
                         MenuItemEntity.class
                 )
                 .setParameter("rName", restaurantName)
                 .setParameter("rCity", cityName)
+                .setHint(SpecHints.HINT_SPEC_FETCH_GRAPH, tx.getEntityGraph(MenuItemEntity.WITH_DISH))
                 .getResultList();
 
         if (menus.isEmpty()) {
@@ -206,69 +1121,614 @@ public class Model implements AutoCloseable{
     }
 
 
+    private static CatalogIds readCatalogIds(Session tx) {
+        tx.beginTransaction();
+        try {
+            return new CatalogIds(
+                    readIds(tx, "select r.restaurantId from RestaurantEntity r order by r.restaurantId"),
+                    readIds(tx, "select d.dishNo from DishEntity d order by d.dishNo"),
+                    readIds(tx, "select m.itemNo from MenuItemEntity m order by m.itemNo"));
+        } finally {
+            // Only read, the transaction is there so the three reads see the same data
+            tx.getTransaction().rollback();
+        }
+    }
+
+    private static int[] readIds(Session tx, String hql) {
+        return tx.createSelectionQuery(hql, Integer.class).getResultList().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static long readCatalog(Session tx, int[] restaurantIds, int[] dishNos, int[] itemNos, CatalogSink sink) {
+        long rows = 0;
+        for (Object[] row : readRows(tx,
+                "select r.restaurantId, r.restaurantName, r.type, r.city from RestaurantEntity r", "r.restaurantId", restaurantIds)) {
+            sink.restaurant((Integer) row[0], (String) row[1], (String) row[2], (String) row[3]);
+            rows++;
+        }
+        for (Object[] row : readRows(tx,
+                "select d.dishNo, d.dishName, d.type from DishEntity d", "d.dishNo", dishNos)) {
+            sink.dish((Integer) row[0], (String) row[1], (Type) row[2]);
+            rows++;
+        }
+        // A left join keeps the menu items without a dish, their dishNo comes back null
+        for (Object[] row : readRows(tx,
+                "select m.itemNo, m.restaurant.restaurantId, d.dishNo, m.price from MenuItemEntity m left join m.dish d",
+                "m.itemNo", itemNos)) {
+            BigDecimal price = (BigDecimal) row[3];
+            sink.menuItem((Integer) row[0], (Integer) row[1], row[2] == null ? 0 : (Integer) row[2],
+                    price == null ? 0 : price.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact());
+            rows++;
+        }
+        return rows;
+    }
+
+    // All rows of the query, or only those with the given ids, read CATALOG_CHUNK_SIZE ids per statement
+    private static List<Object[]> readRows(Session tx, String hql, String idPath, int[] ids) {
+        if (ids == null) {
+            return tx.createSelectionQuery(hql, Object[].class).getResultList();
+        }
+        List<Object[]> rows = new ArrayList<>(ids.length);
+        for (int from = 0; from < ids.length; from += CATALOG_CHUNK_SIZE) {
+            List<Integer> chunk = new ArrayList<>(CATALOG_CHUNK_SIZE);
+            for (int i = from; i < Math.min(ids.length, from + CATALOG_CHUNK_SIZE); i++) {
+                chunk.add(ids[i]);
+            }
+            rows.addAll(tx.createSelectionQuery(hql + " where " + idPath + " in :ids", Object[].class)
+                    .setParameterList("ids", chunk)
+                    .getResultList());
+        }
+        return rows;
+    }
+
     // Add the itemNo, current time, and current date to the FoodOrder table.
     private void addOrder(Session tx, MenuItemEntity menu) {
         tx.beginTransaction();
-        // Get menu from cache to avoid LazyInitializationException
-        menu = tx.get(MenuItemEntity.class, menu.getItemNo());
+        // Only the item_no is needed for the insert. The inverse foodOrders collection is left alone,
+        // adding to it would load every order of the menu item.
         FoodOrderEntity newOrder = new FoodOrderEntity();
-        newOrder.setMenu(menu);
+        newOrder.setMenu(tx.getReference(MenuItemEntity.class, menu.getItemNo()));
         newOrder.setDateTimeNow();
         tx.persist(newOrder);
-        menu.getFoodOrders().add(newOrder);
         tx.getTransaction().commit();
     }
 
-    private List<DisplayDishMenuOrder> getOrdersOfRestaurant(Session tx, String restaurantName, String cityName) throws EmptyResultsException {
-        // The number of queries gets out of hand if we let the EAGER associations do their own thing,
-        // so we will instead do a single query with raw sql instead. Trading readability and persistence for less DB strain.
-        List<Object[]> results = tx.createNativeQuery(
-                        "SELECT dish_name, price, date, time " +
-                                "FROM food_order o " +
-                                "JOIN menu_item mi on o.item_no = mi.item_no " +
-                                "JOIN dish d on mi.dish_no = d.dish_no " +
-                                "WHERE mi.restaurant_no in " +
-                                "( " +
-                                "SELECT restaurant.restaurant_id " +
-                                "FROM fcmartin.restaurant " +
-                                "WHERE restaurant_name = :rName " +
-                                "AND city = :rCity" +
-                                ")",
-                        Object[].class
-                )
+    private static void queueOrder(OrderQueue queue, MenuItemEntity menu) {
+        // Only the item_no is kept, the menu item may belong to a session that is closed by the time it is written
+        MenuItemEntity item = new MenuItemEntity();
+        item.setItemNo(menu.getItemNo());
+        FoodOrderEntity newOrder = new FoodOrderEntity();
+        newOrder.setMenu(item);
+        newOrder.setDateTimeNow();
+        queue.put(newOrder);
+    }
+
+    private void addOrders(Session tx, Collection<FoodOrderEntity> orders, int batchSize) {
+        tx.setJdbcBatchSize(batchSize);
+        tx.beginTransaction();
+        int pending = 0;
+        for (FoodOrderEntity order : orders) {
+            // Only the item_no is needed for the insert, a reference avoids selecting the menu item
+            order.setMenu(tx.getReference(MenuItemEntity.class, order.getMenu().getItemNo()));
+            if (order.getDate() == null) {
+                order.setDateTimeNow();
+            }
+            tx.persist(order);
+            // Send the batch and drop the persisted orders from the session so memory stays flat
+            if (++pending == batchSize) {
+                tx.flush();
+                tx.clear();
+                pending = 0;
+            }
+        }
+        tx.getTransaction().commit();
+    }
+
+    /*
+     * Writes journaled orders, the OrderJournal.Sink of the order journal.
+     */
+    private void replayJournal(String journalId, List<OrderJournal.Entry> entries) {
+        try(var timer = operationStats.start("replayJournal");
+            var tx = sessionFactory.openSession()) {
+            timer.rows(replayJournal(tx, journalId, entries));
+        }
+    }
+
+    private int replayJournal(Session tx, String journalId, List<OrderJournal.Entry> entries) {
+        tx.beginTransaction();
+        // Locked until the commit, so the orders and the sequence they reach are written together
+        OrderJournalEntity checkpoint = tx.find(OrderJournalEntity.class, journalId, LockModeType.PESSIMISTIC_WRITE);
+        if (checkpoint == null) {
+            checkpoint = new OrderJournalEntity();
+            checkpoint.setJournalId(journalId);
+            tx.persist(checkpoint);
+        }
+        Set<Integer> itemNos = new HashSet<>();
+        for (OrderJournal.Entry entry : entries) {
+            itemNos.add(entry.getItemNo());
+        }
+        // An order of a menu item that does not exist would fail the whole batch every time it is retried
+        Set<Integer> knownItemNos = new HashSet<>(tx.createSelectionQuery(
+                        "select m.itemNo from MenuItemEntity m where m.itemNo in :itemNos", Integer.class)
+                .setParameter("itemNos", itemNos)
+                .list());
+        int added = 0;
+        for (OrderJournal.Entry entry : entries) {
+            if (entry.getSequence() <= checkpoint.getReplayedSequence()) {
+                continue;
+            }
+            if (!knownItemNos.contains(entry.getItemNo())) {
+                logger.error("dropped journaled order {} of item {}: no menu item with that itemNo", entry.getSequence(), entry.getItemNo());
+                continue;
+            }
+            FoodOrderEntity order = new FoodOrderEntity();
+            order.setMenu(tx.getReference(MenuItemEntity.class, entry.getItemNo()));
+            order.setDate(Date.valueOf(entry.getDate()));
+            order.setTime(Time.valueOf(entry.getTime()));
+            tx.persist(order);
+            added++;
+        }
+        checkpoint.setReplayedSequence(Math.max(checkpoint.getReplayedSequence(), entries.get(entries.size() - 1).getSequence()));
+        tx.getTransaction().commit();
+        return added;
+    }
+
+    private List<DisplayDishMenuOrder> getOrdersOfRestaurant(Session tx, String restaurantName, String cityName,
+                                                             LocalDate from, LocalDate to) throws EmptyResultsException {
+        List<DisplayDishMenuOrder> displayOrders = createRestaurantOrderQuery(tx, restaurantName, cityName, from, to).list();
+        if (displayOrders.isEmpty()) {
+            throw EmptyResultsException.fromInput(restaurantName, cityName, " with possibly no menus for given restaurant");
+        }
+        return displayOrders;
+    }
+
+    private long forEachOrderOfRestaurant(Session tx, String restaurantName, String cityName, LocalDate from, LocalDate to,
+                                          Consumer<DisplayDishMenuOrder> consumer) throws EmptyResultsException {
+        long count = 0;
+        try (ScrollableResults<DisplayDishMenuOrder> orders = createRestaurantOrderQuery(tx, restaurantName, cityName, from, to)
+                .setFetchSize(ORDER_FETCH_SIZE)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (orders.next()) {
+                consumer.accept(orders.get());
+                count++;
+            }
+        }
+        if (count == 0) {
+            throw EmptyResultsException.fromInput(restaurantName, cityName, " with possibly no menus for given restaurant");
+        }
+        return count;
+    }
+
+    private static NativeQuery<DisplayDishMenuOrder> createRestaurantOrderQuery(Session tx, String restaurantName, String cityName,
+                                                                               LocalDate from, LocalDate to) {
+        // Only four columns are displayed, so we do a single query with raw sql instead of loading the entities.
+        // Trading readability and persistence for less DB strain.
+        // The scalars are read straight into the row's primitives, the price in cents as the column is dec(4,2).
+        // The date bounds let MySQL prune the monthly partitions of food_order outside of them.
+        String dates = (from != null ? "AND o.date >= :from " : "") + (to != null ? "AND o.date <= :to " : "");
+        String sql = restaurantOrderSelect("food_order", dates);
+        if (readsArchive(from)) {
+            sql += "UNION ALL " + restaurantOrderSelect("food_order_archive", dates);
+        }
+        NativeQuery<DisplayDishMenuOrder> query = tx.createNativeQuery(sql, Object[].class)
+                .addScalar("dish_name", String.class)
+                .addScalar("price_cents", Integer.class)
+                .addScalar("date", LocalDate.class)
+                .addScalar("time", LocalTime.class)
                 .setParameter("rName", restaurantName)
                 .setParameter("rCity", cityName)
-                .list();
+                .setTupleTransformer((tuple, aliases) -> new DisplayDishMenuOrder(
+                        (String) tuple[0], (Integer) tuple[1], (LocalDate) tuple[2], (LocalTime) tuple[3]));
+        if (from != null) {
+            query.setParameter("from", Date.valueOf(from));
+        }
+        if (to != null) {
+            query.setParameter("to", Date.valueOf(to));
+        }
+        return query;
+    }
 
-        if (results.isEmpty()) {
-            throw EmptyResultsException.fromInput(restaurantName, cityName, " with possibly no menus for given restaurant");
+    private static String restaurantOrderSelect(String orderTable, String dateConditions) {
+        return "SELECT dish_name, price * 100 AS price_cents, date, time " +
+                "FROM " + orderTable + " o " +
+                "JOIN menu_item mi on o.item_no = mi.item_no " +
+                "JOIN dish d on mi.dish_no = d.dish_no " +
+                "WHERE mi.restaurant_no in " +
+                "( " +
+                "SELECT restaurant.restaurant_id " +
+                "FROM fcmartin.restaurant " +
+                "WHERE restaurant_name = :rName " +
+                "AND city = :rCity" +
+                ") " +
+                dateConditions;
+    }
+
+    private List<DisplayRestaurantDishOrder> getAllOrders(Session tx, LocalDate from, LocalDate to) throws EmptyResultsException {
+        OrderFilter filter = new OrderFilter(null, null, from, to);
+        List<DisplayRestaurantDishOrder> restaurantDishOrders = new ArrayList<>();
+        if (readsArchive(from)) {
+            for (ArchivedOrderEntity order :
+                    createArchivedOrderQuery(tx, filter, "").getResultList()
+            ) {
+                restaurantDishOrders.add(displayOrder(order.toFoodOrder()));
+            }
         }
-        List<DisplayDishMenuOrder> displayOrders = new ArrayList<>();
-        for (Object[] result :
-                results
+        for (FoodOrderEntity order :
+                createOrderQuery(tx, filter, "").getResultList()
         ) {
-            displayOrders.add(new DisplayDishMenuOrder(result));
+            restaurantDishOrders.add(displayOrder(order));
         }
-        return displayOrders;
+        if (restaurantDishOrders.isEmpty()) {
+            throw new EmptyResultsException("found no orders in food_order");
+        }
+        restaurantDishOrders.sort(Comparator.comparingInt(order -> order.getOrder().getOrderNo()));
+        return restaurantDishOrders;
     }
 
-    private List<DisplayRestaurantDishOrder> getAllOrders(Session tx) throws EmptyResultsException {
-        List<DisplayRestaurantDishOrder> restaurantDishOrders = tx.createQuery(
-                        "select new com.github.truefmartin.views.DisplayRestaurantDishOrder(o.menu.restaurant, o.menu.dish, o)" +
-                                "from FoodOrderEntity o ",
-                        DisplayRestaurantDishOrder.class
-                )
+    private List<DisplayRestaurantDishOrder> getOrdersPage(Session tx, OrderFilter filter, int afterOrderNo, int pageSize) {
+        List<DisplayRestaurantDishOrder> page = new ArrayList<>();
+        // A page of each, of which the first pageSize orders by orderNo are the page of both
+        if (readsArchive(filter.getFrom())) {
+            for (ArchivedOrderEntity order :
+                    createArchivedOrderQuery(tx, filter, "and o.orderNo > :after ")
+                            .setParameter("after", afterOrderNo)
+                            .setMaxResults(pageSize)
+                            .getResultList()
+            ) {
+                page.add(displayOrder(order.toFoodOrder()));
+            }
+        }
+        List<FoodOrderEntity> orders = createOrderQuery(tx, filter, "and o.orderNo > :after ")
+                .setParameter("after", afterOrderNo)
+                .setMaxResults(pageSize)
                 .getResultList();
-        if (restaurantDishOrders.isEmpty()) {
+        for (FoodOrderEntity order :
+                orders
+        ) {
+            page.add(displayOrder(order));
+        }
+        if (page.size() > orders.size()) {
+            page.sort(Comparator.comparingInt(order -> order.getOrder().getOrderNo()));
+            return new ArrayList<>(page.subList(0, Math.min(pageSize, page.size())));
+        }
+        return page;
+    }
+
+    private long forEachOrder(Session tx, OrderFilter filter, Consumer<DisplayRestaurantDishOrder> consumer) {
+        long count = 0;
+        try (ScrollableResults<FoodOrderEntity> orders = scroll(createOrderQuery(tx, filter, ""));
+             ScrollableResults<ArchivedOrderEntity> archived = readsArchive(filter.getFrom())
+                     ? scroll(createArchivedOrderQuery(tx, filter, "")) : null) {
+            FoodOrderEntity order = orders.next() ? orders.get() : null;
+            ArchivedOrderEntity archivedOrder = archived != null && archived.next() ? archived.get() : null;
+            // Both cursors are ordered by orderNo and an order is in only one of them
+            while (order != null || archivedOrder != null) {
+                if (order == null || (archivedOrder != null && archivedOrder.getOrderNo() < order.getOrderNo())) {
+                    consumer.accept(displayOrder(archivedOrder.toFoodOrder()));
+                    archivedOrder = archived.next() ? archived.get() : null;
+                } else {
+                    consumer.accept(displayOrder(order));
+                    order = orders.next() ? orders.get() : null;
+                }
+                // Drop the visited orders from the session, it would otherwise hold every one of them
+                if (++count % ORDER_FETCH_SIZE == 0) {
+                    tx.clear();
+                }
+            }
+        }
+        return count;
+    }
+
+    private static <T> ScrollableResults<T> scroll(SelectionQuery<T> query) {
+        return query.setFetchSize(ORDER_FETCH_SIZE)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY);
+    }
+
+    private static DisplayRestaurantDishOrder displayOrder(FoodOrderEntity order) {
+        return new DisplayRestaurantDishOrder(order.getMenu().getRestaurant(), order.getMenu().getDish(), order);
+    }
+
+    // Orders with their restaurant and dish, narrowed by the filter and any extra condition, ordered by orderNo
+    private static SelectionQuery<FoodOrderEntity> createOrderQuery(Session tx, OrderFilter filter, String extraCondition) {
+        return createOrderQuery(tx, FoodOrderEntity.class, FoodOrderEntity.WITH_RESTAURANT_AND_DISH, filter, extraCondition);
+    }
+
+    // The same from food_order_archive
+    private static SelectionQuery<ArchivedOrderEntity> createArchivedOrderQuery(Session tx, OrderFilter filter, String extraCondition) {
+        return createOrderQuery(tx, ArchivedOrderEntity.class, ArchivedOrderEntity.WITH_RESTAURANT_AND_DISH, filter, extraCondition);
+    }
+
+    private static <T> SelectionQuery<T> createOrderQuery(Session tx, Class<T> entity, String graph, OrderFilter filter,
+                                                          String extraCondition) {
+        StringBuilder hql = new StringBuilder(
+                "select o " +
+                        "from " + entity.getSimpleName() + " o " +
+                        "where o.menu.dish is not null ");
+        if (filter.hasRestaurant()) {
+            hql.append("and o.menu.restaurant.restaurantName = :rName and o.menu.restaurant.city = :rCity ");
+        }
+        if (filter.getFrom() != null) {
+            hql.append("and o.date >= :from ");
+        }
+        if (filter.getTo() != null) {
+            hql.append("and o.date <= :to ");
+        }
+        hql.append(extraCondition).append("order by o.orderNo");
+        SelectionQuery<T> query = tx.createSelectionQuery(hql.toString(), entity)
+                .setHint(SpecHints.HINT_SPEC_FETCH_GRAPH, tx.getEntityGraph(graph));
+        if (filter.hasRestaurant()) {
+            query.setParameter("rName", filter.getRestaurantName())
+                    .setParameter("rCity", filter.getCityName());
+        }
+        if (filter.getFrom() != null) {
+            query.setParameter("from", Date.valueOf(filter.getFrom()));
+        }
+        if (filter.getTo() != null) {
+            query.setParameter("to", Date.valueOf(filter.getTo()));
+        }
+        return query;
+    }
+
+    // The dates of the first and last order, archived or not
+    private static LocalDate[] getOrderDates(Session tx) throws EmptyResultsException {
+        Object[] dates = tx.createSelectionQuery("select min(o.date), max(o.date) from FoodOrderEntity o", Object[].class)
+                .getSingleResult();
+        if (readsArchive(null)) {
+            Object[] archived = tx.createSelectionQuery("select min(a.date), max(a.date) from ArchivedOrderEntity a", Object[].class)
+                    .getSingleResult();
+            if (dates[0] == null || (archived[0] != null && ((Date) archived[0]).before((Date) dates[0]))) {
+                dates[0] = archived[0];
+            }
+            if (dates[1] == null) {
+                dates[1] = archived[1];
+            }
+        }
+        if (dates[0] == null) {
             throw new EmptyResultsException("found no orders in food_order");
         }
-        return restaurantDishOrders;
+        return new LocalDate[] {((Date) dates[0]).toLocalDate(), ((Date) dates[1]).toLocalDate()};
+    }
+
+    // The day after the last archived order, read on startup and after each archive run
+    private static void readArchiveEnd(Session tx) {
+        Date last = tx.createSelectionQuery("select max(a.date) from ArchivedOrderEntity a", Date.class)
+                .getSingleResult();
+        archiveEnd = last == null ? null : last.toLocalDate().plusDays(1);
     }
 
-    private void deleteOrder(Session tx, FoodOrderEntity order) {
+    // Whether orders from the given date on, or of any date if it is null, may be in the archive
+    private static boolean readsArchive(LocalDate from) {
+        LocalDate end = archiveEnd;
+        return end != null && (from == null || from.isBefore(end));
+    }
+
+    // Runs one query per date partition, all but the last on the analytics threads, and merges their totals
+    private static SalesReport totalSales(SalesGrouping grouping, LocalDate from, LocalDate to, int topDishes) {
+        int partitionDays = Math.max(1, intProperty(ANALYTICS_PARTITION_DAYS, 7));
+        List<Future<List<Object[]>>> partitions = new ArrayList<>();
+        LocalDate start = from;
+        LocalDate end = from.plusDays(partitionDays - 1);
+        while (end.isBefore(to)) {
+            LocalDate partitionFrom = start;
+            LocalDate partitionTo = end;
+            partitions.add(analyticsExecutor.submit(() -> getSalesOfPartition(grouping, partitionFrom, partitionTo)));
+            start = end.plusDays(1);
+            end = start.plusDays(partitionDays - 1);
+        }
+        SalesReport report = new SalesReport(grouping, from, to, topDishes);
+        try {
+            addSales(report, getSalesOfPartition(grouping, start, to));
+            for (Future<List<Object[]>> partition : partitions) {
+                addSales(report, partition.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HibernateException("interrupted while totalling the sales", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new HibernateException("could not total the sales", e.getCause());
+        } finally {
+            for (Future<List<Object[]>> partition : partitions) {
+                partition.cancel(true);
+            }
+        }
+        return report;
+    }
+
+    // Rows of group, dish name, order count and revenue, grouped by the date index range of one partition
+    private static List<Object[]> getSalesOfPartition(SalesGrouping grouping, LocalDate from, LocalDate to) {
+        String group;
+        String groupBy;
+        switch (grouping) {
+            case RESTAURANT:
+                group = "concat(r.restaurantName, ', ', r.city)";
+                groupBy = "r.restaurantId, r.restaurantName, r.city";
+                break;
+            case CITY:
+                group = "r.city";
+                groupBy = group;
+                break;
+            case DISH_TYPE:
+                group = "d.type";
+                groupBy = group;
+                break;
+            default:
+                group = "o.date";
+                groupBy = group;
+                break;
+        }
+        // A partition before the end of the archive is read from both, e.g. the month an archive run stopped at
+        List<String> orderEntities = readsArchive(from)
+                ? List.of("FoodOrderEntity", "ArchivedOrderEntity")
+                : List.of("FoodOrderEntity");
+        List<Object[]> rows = new ArrayList<>();
+        try(var tx = sessionFactory.openSession()) {
+            for (String orderEntity : orderEntities) {
+                rows.addAll(tx.createSelectionQuery(
+                                "select " + group + ", d.dishName, count(o), sum(m.price) " +
+                                        "from " + orderEntity + " o " +
+                                        "join o.menu m " +
+                                        "join m.restaurant r " +
+                                        "left join m.dish d " +
+                                        "where o.date between :from and :to " +
+                                        "group by " + groupBy + ", d.dishNo, d.dishName",
+                                Object[].class
+                        )
+                        .setParameter("from", Date.valueOf(from))
+                        .setParameter("to", Date.valueOf(to))
+                        .getResultList());
+            }
+        }
+        return rows;
+    }
+
+    private static void addSales(SalesReport report, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            // Null when none of the group's menu items has a price
+            BigDecimal revenue = (BigDecimal) row[3];
+            report.add(row[0] == null ? "(none)" : row[0].toString(), (String) row[1], (Long) row[2],
+                    revenue == null ? 0 : revenue.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact());
+        }
+    }
+
+    private int deleteOrder(Session tx, int orderNo) {
         tx.beginTransaction();
-        tx.remove(order);
+        int deleted = tx.createMutationQuery("delete from FoodOrderEntity o where o.orderNo = :orderNo")
+                .setParameter("orderNo", orderNo)
+                .executeUpdate();
+        if (deleted == 0 && readsArchive(null)) {
+            deleted = tx.createMutationQuery("delete from ArchivedOrderEntity o where o.orderNo = :orderNo")
+                    .setParameter("orderNo", orderNo)
+                    .executeUpdate();
+        }
         tx.getTransaction().commit();
+        return deleted;
+    }
+
+    // No cache holds orders, the second-level cache and menu caches are of the catalog, and Hibernate drops cached
+    // queries over food_order after a DML delete, so there is nothing more to evict
+    private int deleteOrders(Session tx, Collection<Integer> orderNos, int chunkSize) {
+        // In order, so concurrent deletes lock rows in the same order
+        List<Integer> sorted = new ArrayList<>(new TreeSet<>(orderNos));
+        int deleted = 0;
+        for (int from = 0; from < sorted.size(); from += chunkSize) {
+            List<Integer> chunk = sorted.subList(from, Math.min(sorted.size(), from + chunkSize));
+            tx.beginTransaction();
+            int chunkDeleted = deleteOrderNos(tx, "FoodOrderEntity", chunk);
+            // The numbers not in food_order may be archived
+            if (chunkDeleted < chunk.size() && readsArchive(null)) {
+                chunkDeleted += deleteOrderNos(tx, "ArchivedOrderEntity", chunk);
+            }
+            tx.getTransaction().commit();
+            deleted += chunkDeleted;
+        }
+        return deleted;
+    }
+
+    private long deleteOrders(Session tx, OrderFilter filter, int chunkSize) {
+        long deleted = deleteOrders(tx, "FoodOrderEntity", filter, chunkSize);
+        if (readsArchive(filter.getFrom())) {
+            deleted += deleteOrders(tx, "ArchivedOrderEntity", filter, chunkSize);
+        }
+        return deleted;
+    }
+
+    private static long deleteOrders(Session tx, String orderEntity, OrderFilter filter, int chunkSize) {
+        StringBuilder hql = new StringBuilder("select o.orderNo from " + orderEntity + " o ");
+        String and = "where ";
+        if (filter.hasRestaurant()) {
+            hql.append("join o.menu m join m.restaurant r where r.restaurantName = :rName and r.city = :rCity ");
+            and = "and ";
+        }
+        if (filter.getFrom() != null) {
+            hql.append(and).append("o.date >= :from ");
+            and = "and ";
+        }
+        if (filter.getTo() != null) {
+            hql.append(and).append("o.date <= :to ");
+        }
+        long deleted = 0;
+        while (true) {
+            tx.beginTransaction();
+            // Not ordered, the first matches in the index are enough, and the deleted ones are gone from the next chunk
+            SelectionQuery<Integer> query = tx.createSelectionQuery(hql.toString(), Integer.class)
+                    .setMaxResults(chunkSize);
+            if (filter.hasRestaurant()) {
+                query.setParameter("rName", filter.getRestaurantName())
+                        .setParameter("rCity", filter.getCityName());
+            }
+            if (filter.getFrom() != null) {
+                query.setParameter("from", Date.valueOf(filter.getFrom()));
+            }
+            if (filter.getTo() != null) {
+                query.setParameter("to", Date.valueOf(filter.getTo()));
+            }
+            List<Integer> orderNos = query.list();
+            int chunk = orderNos.isEmpty() ? 0 : deleteOrderNos(tx, orderEntity, orderNos);
+            tx.getTransaction().commit();
+            deleted += chunk;
+            if (orderNos.size() < chunkSize) {
+                return deleted;
+            }
+        }
+    }
+
+    private static int deleteOrderNos(Session tx, String orderEntity, List<Integer> orderNos) {
+        return tx.createMutationQuery("delete from " + orderEntity + " o where o.orderNo in :orderNos")
+                .setParameter("orderNos", orderNos)
+                .executeUpdate();
+    }
+
+    private static NameSearch dishNameSearch() {
+        NameSearch search = dishNameSearch;
+        if (search == null) {
+            synchronized (nameSearchLock) {
+                if (dishNameSearch == null) {
+                    dishNameSearch = loadNameSearch("select distinct d.dishName from DishEntity d");
+                }
+                search = dishNameSearch;
+            }
+        }
+        return search;
+    }
+
+    private static NameSearch restaurantNameSearch() {
+        NameSearch search = restaurantNameSearch;
+        if (search == null) {
+            synchronized (nameSearchLock) {
+                if (restaurantNameSearch == null) {
+                    restaurantNameSearch = loadNameSearch("select distinct r.restaurantName from RestaurantEntity r");
+                }
+                search = restaurantNameSearch;
+            }
+        }
+        return search;
+    }
+
+    private static NameSearch loadNameSearch(String hql) {
+        NameSearch search = new NameSearch();
+        try (var tx = sessionFactory.openSession()) {
+            search.addAll(tx.createSelectionQuery(hql, String.class).getResultList());
+        }
+        return search;
+    }
+
+    private static long archiveOrders(Session tx, LocalDate before, int chunkSize) {
+        // Queries reach into the archive for the moved orders while they move, the end is narrowed once they are in
+        LocalDate end = archiveEnd;
+        if (end == null || end.isBefore(before)) {
+            archiveEnd = before;
+        }
+        try {
+            return tx.doReturningWork(connection -> {
+                OrderPartitions.addPartitions(connection, LocalDate.now().plusMonths(PARTITION_MONTHS_AHEAD));
+                return OrderPartitions.archive(connection, before, chunkSize);
+            });
+        } finally {
+            readArchiveEnd(tx);
+        }
     }
 
     private RestaurantEntity getRestaurant(Session tx, String restaurantName, String cityName) throws EmptyResultsException {
@@ -290,11 +1750,101 @@ public class Model implements AutoCloseable{
         tx.beginTransaction();
         tx.persist(dish);
         tx.getTransaction().commit();
+        // The restaurants are detached here, so their cached menuItems collections do not know about the new items
+        for (MenuItemEntity menu : dish.getMenuItems()) {
+            if (menu.getRestaurant() != null) {
+                int restaurantId = menu.getRestaurant().getRestaurantId();
+                sessionFactory.getCache().evictCollectionData(
+                        RestaurantEntity.class.getName() + ".menuItems", restaurantId);
+                RestaurantEntity restaurant = tx.get(RestaurantEntity.class, restaurantId);
+                restaurantMenuCache.invalidate(restaurantKey(restaurant.getRestaurantName(), restaurant.getCity()));
+            }
+        }
+        dishMenuCache.invalidate(normalize(dish.getDishName()));
+        NameSearch search = dishNameSearch;
+        if (search != null) {
+            search.add(dish.getDishName());
+        }
+    }
+
+    /**
+     * Describes the hit, miss and put counts of every second-level cache region and of the menu caches.
+     * @return one line per cache
+     */
+    public List<String> getCacheStatistics() {
+        Statistics statistics = sessionFactory.getStatistics();
+        List<String> lines = new ArrayList<>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(region);
+            lines.add(String.format("%s: hits=%d, misses=%d, puts=%d",
+                    region,
+                    regionStatistics.getHitCount(),
+                    regionStatistics.getMissCount(),
+                    regionStatistics.getPutCount()));
+        }
+        lines.add("menus of restaurant: " + restaurantMenuCache);
+        lines.add("menus of dish: " + dishMenuCache);
+        return lines;
+    }
+
+    /**
+     * Describes every public operation called so far: the number of calls, p50/p90/p99/max latency,
+     * and the SQL statements, entity loads and rows per call.
+     * @return one line per operation
+     */
+    public List<String> getOperationStatistics() {
+        List<String> lines = operationStats.describe();
+        OrderQueue queue = orderQueue;
+        if (queue != null) {
+            lines.add("order queue: " + queue);
+        }
+        OrderJournal journal = orderJournal;
+        if (journal != null) {
+            lines.add("order journal: " + journal);
+        }
+        return lines;
+    }
+
+    /**
+     * The number of SQL statements the calling thread has sent through the Model so far. The difference before and after
+     * a call is the number of statements that call issued, e.g. to check that it does not grow with the result size.
+     * @return the statements of the calling thread
+     */
+    public long getStatementCount() {
+        return statementCounter.getThreadCount();
+    }
+
+    /**
+     * Describes how long each phase of building the sessionFactory and starting up took, e.g.
+     * "session factory 1850ms, connection pool 120ms, ...". The session factory phase includes the schema check
+     * of hbm2ddl.auto.
+     * @return the startup phases of the Model in use
+     */
+    public String getStartupTimings() {
+        return startupPhases.toString();
+    }
+
+    /**
+     * Describes the connection pool: connections in use, idle and waited for, and the time spent waiting for them.
+     * @return the pool metrics, all zero unless the pool is HikariCP
+     */
+    public PoolMetrics getPoolMetrics() {
+        return poolMetrics;
+    }
+
+    /**
+     * @return the most connections the pool opens, hikari.maximumPoolSize in hibernate.cfg.xml, HikariCP's 10 if unset
+     */
+    public int getMaximumPoolSize() {
+        return intProperty(HIKARI_MAXIMUM_POOL_SIZE, 10);
     }
 
     public List<String> listRelation(String relationName, Class<?> className) {
-        try(var tx = sessionFactory.openSession()) {
-            return listRelation(tx, relationName, className).stream().map(Object::toString).collect(Collectors.toList());
+        try(var timer = operationStats.start("listRelation");
+            var tx = sessionFactory.openSession()) {
+            List<String> result = listRelation(tx, relationName, className).stream().map(Object::toString).collect(Collectors.toList());
+            timer.rows(result.size());
+            return result;
         }
     }
 
@@ -0,0 +1,206 @@
+package com.github.truefmartin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves the Model operations to many clients at once over HTTP on the loopback interface.
+ * A client POSTs operations in the script format of {@link BatchControl}, one per line, and gets their output back,
+ * followed by a '#' line with the number of operations and failures.
+ * <p>
+ * Each request runs on its own virtual thread when the JDK has them (21+), otherwise on a fixed pool of threads.
+ * At most maxRequests run at once, a request over the limit is answered right away with 503.
+ * {@link #stop()} stops accepting requests and waits for the running ones to finish.
+ */
+public class ModelServer {
+    private static final Logger logger = LogManager.getLogger(ModelServer.class);
+
+    private final Model model;
+    private final Settings settings;
+    private final Semaphore admissions;
+    private HttpServer server;
+    private ExecutorService workers;
+
+    /**
+     * Port, limits and shutdown grace period of the server.
+     */
+    public static class Settings {
+        public int port = 8080;
+        /** requests running at once, the rest are turned away with 503 */
+        public int maxRequests = 64;
+        /** size of the thread pool when virtual threads are not available, about the size of the connection pool */
+        public int threads = 20;
+        /** how long stop waits for running requests */
+        public int shutdownSeconds = 30;
+
+        /**
+         * Reads settings from arguments of the form key=value, e.g. port=9090 maxRequests=128.
+         * @param args the arguments, unknown keys are rejected
+         * @return the settings, with defaults for any key not given
+         */
+        public static Settings fromArgs(String... args) {
+            Settings settings = new Settings();
+            for (String arg : args) {
+                String[] pair = arg.split("=", 2);
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("expected key=value, got " + arg);
+                }
+                switch (pair[0]) {
+                    case "port":
+                        settings.port = Integer.parseInt(pair[1]);
+                        break;
+                    case "maxRequests":
+                        settings.maxRequests = Integer.parseInt(pair[1]);
+                        break;
+                    case "threads":
+                        settings.threads = Integer.parseInt(pair[1]);
+                        break;
+                    case "shutdownSeconds":
+                        settings.shutdownSeconds = Integer.parseInt(pair[1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown server setting " + pair[0]);
+                }
+            }
+            return settings;
+        }
+    }
+
+    public ModelServer(Model model, Settings settings) {
+        this.model = model;
+        this.settings = settings;
+        this.admissions = new Semaphore(settings.maxRequests);
+    }
+
+    /**
+     * Starts accepting requests on the loopback interface.
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized void start() throws IOException {
+        workers = newWorkers(settings.threads);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), settings.port), 0);
+        // Admission runs on the server's own thread, so a request over the limit is never queued
+        server.createContext("/", this::admit);
+        server.start();
+        logger.info("serving on {}", server.getAddress());
+    }
+
+    /**
+     * @return the port the server listens on, useful when it was started on port 0
+     */
+    public synchronized int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests and waits up to shutdownSeconds for the running ones to finish.
+     * Does not close the Model.
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        // Closes the listening socket, requests already handed to a worker keep running
+        server.stop(0);
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(settings.shutdownSeconds, TimeUnit.SECONDS)) {
+                logger.error("requests still running after {} s, interrupting them", settings.shutdownSeconds);
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        server = null;
+    }
+
+    private void admit(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "POST operations, one per line, see BatchControl for the format\n");
+            return;
+        }
+        if (!admissions.tryAcquire()) {
+            respond(exchange, 503, "too many requests, try again\n");
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    handle(exchange);
+                } finally {
+                    admissions.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            // The workers are shutting down
+            admissions.release();
+            respond(exchange, 503, "shutting down\n");
+        }
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            // The output is streamed as it is produced, so its length is not known up front
+            exchange.sendResponseHeaders(200, 0);
+            try (BufferedReader script = new BufferedReader(
+                    new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+                 Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+                String summary = new BatchControl(model).run(script, out);
+                out.write("# " + summary + "\n");
+            }
+        } catch (IOException | RuntimeException e) {
+            // The client has already been sent a 200, closing the exchange cuts the response short
+            logger.error("request failed: {}", e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        try {
+            byte[] body = message.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /*
+     * A virtual thread per request on JDK 21+, found by reflection as the project still compiles for Java 11,
+     * otherwise a fixed pool. Requests wait for a database connection either way, so more threads than
+     * connections only helps with the time spent outside the database.
+     */
+    private static ExecutorService newWorkers(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory factory = runnable -> new Thread(runnable, "model-server-" + count.incrementAndGet());
+            return Executors.newFixedThreadPool(threads, factory);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.truefmartin;
+
+import java.time.LocalDate;
+
+/**
+ * Narrows an order listing to one restaurant location and/or a range of order dates.
+ * A null field does not filter.
+ */
+public class OrderFilter {
+    private final String restaurantName;
+    private final String cityName;
+    private final LocalDate from;
+    private final LocalDate to;
+
+    /**
+     * @param restaurantName the name of the restaurant, or null for every restaurant
+     * @param cityName the city of the restaurant, required if restaurantName is given
+     * @param from the first order date to include, or null
+     * @param to the last order date to include, or null
+     */
+    public OrderFilter(String restaurantName, String cityName, LocalDate from, LocalDate to) {
+        if ((restaurantName == null) != (cityName == null)) {
+            throw new IllegalArgumentException("a restaurant is filtered by both its name and city");
+        }
+        this.restaurantName = restaurantName;
+        this.cityName = cityName;
+        this.from = from;
+        this.to = to;
+    }
+
+    public static OrderFilter all() {
+        return new OrderFilter(null, null, null, null);
+    }
+
+    public String getRestaurantName() {
+        return restaurantName;
+    }
+
+    public String getCityName() {
+        return cityName;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public boolean hasRestaurant() {
+        return restaurantName != null;
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.truefmartin.analytics;
+
+import java.util.InputMismatchException;
+import java.util.Locale;
+
+/**
+ * What a {@link SalesReport} totals orders by.
+ */
+public enum SalesGrouping {
+    RESTAURANT, CITY, DISH_TYPE, DAY;
+
+    /**
+     * @param name restaurant, city, type or day, in any case
+     * @return the grouping with the name
+     * @throws InputMismatchException if no grouping has the name
+     */
+    public static SalesGrouping fromName(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "restaurant":
+                return RESTAURANT;
+            case "city":
+                return CITY;
+            case "type":
+            case "dish_type":
+                return DISH_TYPE;
+            case "day":
+                return DAY;
+            default:
+                throw new InputMismatchException("Invalid input of " + name + ", please enter restaurant, city, type or day.");
+        }
+    }
+}
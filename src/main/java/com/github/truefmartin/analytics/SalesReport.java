@@ -0,0 +1,172 @@
+package com.github.truefmartin.analytics;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Order counts and revenue per group, with the dishes that brought in the most, totalled from the per dish sums
+ * of any number of date partitions. Revenue is at the menu items' current prices, orders do not keep the price paid.
+ */
+public class SalesReport {
+    private static final String NO_DISH = "(no dish)";
+    private final SalesGrouping grouping;
+    private final LocalDate from;
+    private final LocalDate to;
+    private final int topDishes;
+    // group -> dish name -> {orders, revenue in cents}
+    private final Map<String, Map<String, long[]>> sums = new HashMap<>();
+
+    /**
+     * @param grouping what the groups are
+     * @param from the first order date included
+     * @param to the last order date included
+     * @param topDishes the number of dishes to list per group
+     */
+    public SalesReport(SalesGrouping grouping, LocalDate from, LocalDate to, int topDishes) {
+        this.grouping = grouping;
+        this.from = from;
+        this.to = to;
+        this.topDishes = topDishes;
+    }
+
+    /**
+     * Adds the sums of one dish in one group, e.g. from one date partition. Not thread-safe.
+     * @param group the group, e.g. the restaurant or the day
+     * @param dishName the dish, null for menu items without one
+     * @param orders the number of orders
+     * @param revenueCents the revenue of those orders in cents
+     */
+    public void add(String group, String dishName, long orders, long revenueCents) {
+        long[] dish = sums.computeIfAbsent(group, key -> new HashMap<>())
+                .computeIfAbsent(dishName == null ? NO_DISH : dishName, key -> new long[2]);
+        dish[0] += orders;
+        dish[1] += revenueCents;
+    }
+
+    /**
+     * @return the groups, days in date order and anything else by revenue, most first
+     */
+    public List<Group> getGroups() {
+        List<Group> groups = new ArrayList<>(sums.size());
+        sums.forEach((name, dishes) -> {
+            List<DishSales> dishSales = new ArrayList<>(dishes.size());
+            long orders = 0;
+            long revenueCents = 0;
+            for (Map.Entry<String, long[]> dish : dishes.entrySet()) {
+                dishSales.add(new DishSales(dish.getKey(), dish.getValue()[0], dish.getValue()[1]));
+                orders += dish.getValue()[0];
+                revenueCents += dish.getValue()[1];
+            }
+            dishSales.sort(Comparator.comparingLong(DishSales::getRevenueCents).reversed()
+                    .thenComparing(DishSales::getDishName));
+            groups.add(new Group(name, orders, revenueCents,
+                    dishSales.subList(0, Math.min(topDishes, dishSales.size()))));
+        });
+        if (grouping == SalesGrouping.DAY) {
+            // Days are labelled yyyy-mm-dd, which sorts by date
+            groups.sort(Comparator.comparing(Group::getName));
+        } else {
+            groups.sort(Comparator.comparingLong(Group::getRevenueCents).reversed().thenComparing(Group::getName));
+        }
+        return groups;
+    }
+
+    public boolean isEmpty() {
+        return sums.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("Sales by %s from %s to %s%n", grouping.name().toLowerCase(), from, to));
+        long orders = 0;
+        long revenueCents = 0;
+        for (Group group : getGroups()) {
+            out.append(group).append(System.lineSeparator());
+            orders += group.orders;
+            revenueCents += group.revenueCents;
+        }
+        out.append(String.format("Total: orders=%d, revenue=%s", orders, BigDecimal.valueOf(revenueCents, 2)));
+        return out.toString();
+    }
+
+    /**
+     * The totals of one group.
+     */
+    public static class Group {
+        private final String name;
+        private final long orders;
+        private final long revenueCents;
+        private final List<DishSales> topDishes;
+
+        Group(String name, long orders, long revenueCents, List<DishSales> topDishes) {
+            this.name = name;
+            this.orders = orders;
+            this.revenueCents = revenueCents;
+            this.topDishes = topDishes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getOrders() {
+            return orders;
+        }
+
+        public long getRevenueCents() {
+            return revenueCents;
+        }
+
+        public List<DishSales> getTopDishes() {
+            return topDishes;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(String.format("%s: orders=%d, revenue=%s",
+                    name, orders, BigDecimal.valueOf(revenueCents, 2)));
+            for (DishSales dish : topDishes) {
+                out.append(System.lineSeparator()).append('\t').append(dish);
+            }
+            return out.toString();
+        }
+    }
+
+    /**
+     * The orders and revenue of one dish within a group.
+     */
+    public static class DishSales {
+        private final String dishName;
+        private final long orders;
+        private final long revenueCents;
+
+        DishSales(String dishName, long orders, long revenueCents) {
+            this.dishName = dishName;
+            this.orders = orders;
+            this.revenueCents = revenueCents;
+        }
+
+        public String getDishName() {
+            return dishName;
+        }
+
+        public long getOrders() {
+            return orders;
+        }
+
+        public long getRevenueCents() {
+            return revenueCents;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: orders=%d, revenue=%s", dishName, orders, BigDecimal.valueOf(revenueCents, 2));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.truefmartin.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded map that evicts the least recently used entry once it holds more than maxSize entries.
+ * All methods are synchronized, so one instance can be shared between threads.
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class LruCache<K, V> {
+    private final int maxSize;
+    private final LinkedHashMap<K, V> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public LruCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("cache size must be positive, got " + maxSize);
+        }
+        this.maxSize = maxSize;
+        // Access order makes every get move the entry to the back, so the eldest entry is the least recently used
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param key the key
+     * @return the cached value, or null if there is none
+     */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    /**
+     * A stamp to take before loading a value, see {@link #putIfUnchanged(Object, Object, long)}.
+     * @return the number of invalidations so far
+     */
+    public synchronized long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * Caches a value only if nothing was invalidated since the stamp was taken, so a value loaded
+     * before a concurrent write is not cached after that write invalidated it.
+     * @param key the key
+     * @param value the value, loaded after the stamp was taken
+     * @param stamp the result of {@link #stamp()} from before the value was loaded
+     */
+    public synchronized void putIfUnchanged(K key, V value, long stamp) {
+        if (invalidations == stamp) {
+            entries.put(key, value);
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        invalidations++;
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        invalidations++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("size=%d/%d, hits=%d, misses=%d, evictions=%d", entries.size(), maxSize, hits, misses, evictions);
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.truefmartin.catalog;
+
+/**
+ * The ids of every row of the catalog relations at one point in time, each array sorted.
+ */
+public class CatalogIds {
+    public final int[] restaurantIds;
+    public final int[] dishNos;
+    public final int[] itemNos;
+
+    public CatalogIds(int[] restaurantIds, int[] dishNos, int[] itemNos) {
+        this.restaurantIds = restaurantIds;
+        this.dishNos = dishNos;
+        this.itemNos = itemNos;
+    }
+}
@@ -0,0 +1,422 @@
+package com.github.truefmartin.catalog;
+
+import com.github.truefmartin.Model;
+import com.github.truefmartin.exceptions.EmptyResultsException;
+import com.github.truefmartin.models.DishEntity;
+import com.github.truefmartin.models.MenuItemEntity;
+import com.github.truefmartin.models.RestaurantEntity;
+import com.github.truefmartin.views.DisplayDishMenu;
+import com.github.truefmartin.views.DisplayRestaurantMenu;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An in-memory copy of the catalog (restaurants, dishes and menu items) that answers the menu lookups of
+ * {@link Model#getMenusOfRestaurant(String, String)} and {@link Model#getMenusOfDish(String)} without the database.
+ * <p>
+ * Menu items are kept in primitive arrays, one per column, with prices in cents. Names are dictionary encoded,
+ * and the items of each restaurant (name, city) and of each dish name sit in one contiguous range of an index array.
+ * Names match the way MySQL matches them, ignoring case and trailing spaces.
+ * {@link #forEachMenuOfRestaurant(String, String, MenuVisitor)} and {@link #forEachMenuOfDish(String, MenuVisitor)}
+ * allocate nothing: they hash the name in place and pass each item's columns to the visitor.
+ * <p>
+ * Lookups read an immutable snapshot, so any number of threads can look up while one refreshes.
+ * {@link #refresh()} reads the catalog ids, loads only the rows the replica does not have yet, drops the rows that
+ * are gone and swaps in a new snapshot. A changed price or name of an existing row is only seen by {@link #reload()}.
+ */
+public class CatalogReplica {
+    private final Model model;
+    private volatile Snapshot snapshot = new Snapshot(new Rows());
+
+    /**
+     * Loads the whole catalog.
+     * @param model the Model to read the catalog through
+     */
+    public CatalogReplica(Model model) {
+        this.model = model;
+        reload();
+    }
+
+    /**
+     * Loads the catalog rows added since the last refresh and drops the removed ones.
+     * @return true if anything changed
+     */
+    public synchronized boolean refresh() {
+        Snapshot current = snapshot;
+        CatalogIds ids = model.readCatalogIds();
+        int[] newRestaurants = missing(ids.restaurantIds, current.restaurantIds);
+        int[] newDishes = missing(ids.dishNos, current.dishNos);
+        int[] newItems = missing(ids.itemNos, current.itemNos);
+        boolean removed = ids.restaurantIds.length - newRestaurants.length < current.restaurantIds.length
+                || ids.dishNos.length - newDishes.length < current.dishNos.length
+                || ids.itemNos.length - newItems.length < current.itemNos.length;
+        if (!removed && newRestaurants.length == 0 && newDishes.length == 0 && newItems.length == 0) {
+            return false;
+        }
+        Rows rows = current.rowsStillIn(ids);
+        model.readCatalog(newRestaurants, newDishes, newItems, rows);
+        snapshot = new Snapshot(rows);
+        return true;
+    }
+
+    /**
+     * Loads the whole catalog again, also picking up changed prices and names.
+     */
+    public synchronized void reload() {
+        Rows rows = new Rows();
+        model.readCatalog(null, null, null, rows);
+        snapshot = new Snapshot(rows);
+    }
+
+    /**
+     * Passes each menu item of a restaurant to the visitor, in itemNo order. Allocates nothing.
+     * @return the number of menu items visited, 0 if there is no such restaurant
+     */
+    public int forEachMenuOfRestaurant(String restaurantName, String cityName, MenuVisitor visitor) {
+        Snapshot current = snapshot;
+        int key = current.restaurantKey(restaurantName, cityName);
+        return key < 0 ? 0 : current.visit(current.byRestaurant, current.byRestaurantStart, key, visitor);
+    }
+
+    /**
+     * Passes each menu item of every dish with the name to the visitor, in itemNo order. Allocates nothing.
+     * @return the number of menu items visited, 0 if there is no such dish
+     */
+    public int forEachMenuOfDish(String dishName, MenuVisitor visitor) {
+        Snapshot current = snapshot;
+        int name = current.names.find(dishName);
+        return name < 0 ? 0 : current.visit(current.byDishName, current.byDishNameStart, name, visitor);
+    }
+
+    /**
+     * The same menus as {@link Model#getMenusOfRestaurant(String, String)}, built from the replica.
+     * @throws EmptyResultsException if no menus are found
+     */
+    public List<DisplayDishMenu> getMenusOfRestaurant(String restaurantName, String cityName) throws EmptyResultsException {
+        List<DisplayDishMenu> result = new ArrayList<>();
+        forEachMenuOfRestaurant(restaurantName, cityName, (itemNo, restaurant, city, dishName, priceCents) -> {
+            if (dishName != null) {
+                DishEntity dish = new DishEntity();
+                dish.setDishName(dishName);
+                result.add(new DisplayDishMenu(dish, menuItem(itemNo, priceCents)));
+            } else {
+                result.add(new DisplayDishMenu(String.format("**Menu item_no=%d, with price %.2f has no associated dish**\n",
+                        itemNo, BigDecimal.valueOf(priceCents, 2))));
+            }
+        });
+        if (result.isEmpty()) {
+            throw EmptyResultsException.fromInput(restaurantName, cityName);
+        }
+        return result;
+    }
+
+    /**
+     * The same menus as {@link Model#getMenusOfDish(String)}, built from the replica.
+     * @throws EmptyResultsException if no menus are found
+     */
+    public List<DisplayRestaurantMenu> getMenusOfDish(String dishName) throws EmptyResultsException {
+        List<DisplayRestaurantMenu> result = new ArrayList<>();
+        forEachMenuOfDish(dishName, (itemNo, restaurantName, city, dish, priceCents) -> {
+            RestaurantEntity restaurant = new RestaurantEntity();
+            restaurant.setRestaurantName(restaurantName);
+            restaurant.setCity(city);
+            result.add(new DisplayRestaurantMenu(restaurant, menuItem(itemNo, priceCents)));
+        });
+        if (result.isEmpty()) {
+            throw EmptyResultsException.fromInput(dishName, " or no 'menu_items' with that dishNo");
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of restaurants, dishes, menu items and distinct names in the replica
+     */
+    @Override
+    public String toString() {
+        Snapshot current = snapshot;
+        return String.format("restaurants=%d, dishes=%d, menuItems=%d, names=%d",
+                current.restaurantIds.length, current.dishNos.length, current.itemNos.length, current.names.size());
+    }
+
+    private static MenuItemEntity menuItem(int itemNo, long priceCents) {
+        MenuItemEntity menu = new MenuItemEntity();
+        menu.setItemNo(itemNo);
+        menu.setPrice(BigDecimal.valueOf(priceCents, 2));
+        return menu;
+    }
+
+    // The ids of the sorted array ids that are not in the sorted array known
+    private static int[] missing(int[] ids, int[] known) {
+        int[] result = new int[ids.length];
+        int count = 0;
+        int k = 0;
+        for (int id : ids) {
+            while (k < known.length && known[k] < id) {
+                k++;
+            }
+            if (k == known.length || known[k] != id) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /*
+     * Catalog rows in the order they were received, in growable columns.
+     */
+    private static final class Rows implements CatalogSink {
+        int restaurants;
+        int[] restaurantIds = new int[64];
+        String[] restaurantNames = new String[64];
+        String[] cities = new String[64];
+        int dishes;
+        int[] dishNos = new int[64];
+        String[] dishNames = new String[64];
+        int items;
+        int[] itemNos = new int[64];
+        int[] itemRestaurantIds = new int[64];
+        int[] itemDishNos = new int[64];
+        long[] itemPriceCents = new long[64];
+
+        @Override
+        public void restaurant(int restaurantId, String restaurantName, String city) {
+            if (restaurants == restaurantIds.length) {
+                restaurantIds = Arrays.copyOf(restaurantIds, restaurants * 2);
+                restaurantNames = Arrays.copyOf(restaurantNames, restaurants * 2);
+                cities = Arrays.copyOf(cities, restaurants * 2);
+            }
+            restaurantIds[restaurants] = restaurantId;
+            restaurantNames[restaurants] = restaurantName;
+            cities[restaurants] = city;
+            restaurants++;
+        }
+
+        @Override
+        public void dish(int dishNo, String dishName) {
+            if (dishes == dishNos.length) {
+                dishNos = Arrays.copyOf(dishNos, dishes * 2);
+                dishNames = Arrays.copyOf(dishNames, dishes * 2);
+            }
+            dishNos[dishes] = dishNo;
+            dishNames[dishes] = dishName;
+            dishes++;
+        }
+
+        @Override
+        public void menuItem(int itemNo, int restaurantId, int dishNo, long priceCents) {
+            if (items == itemNos.length) {
+                itemNos = Arrays.copyOf(itemNos, items * 2);
+                itemRestaurantIds = Arrays.copyOf(itemRestaurantIds, items * 2);
+                itemDishNos = Arrays.copyOf(itemDishNos, items * 2);
+                itemPriceCents = Arrays.copyOf(itemPriceCents, items * 2);
+            }
+            itemNos[items] = itemNo;
+            itemRestaurantIds[items] = restaurantId;
+            itemDishNos[items] = dishNo;
+            itemPriceCents[items] = priceCents;
+            items++;
+        }
+    }
+
+    /*
+     * One immutable version of the catalog. Rows are sorted by id, names are codes into the dictionary,
+     * and items refer to restaurants and dishes by their position.
+     */
+    private static final class Snapshot {
+        final NameDictionary names;
+        final int[] restaurantIds;
+        final int[] restaurantNames;
+        final int[] restaurantCities;
+        final int[] dishNos;
+        final int[] dishNames;
+        final int[] itemNos;
+        final int[] itemRestaurants;
+        // -1 for an item without a dish
+        final int[] itemDishes;
+        final long[] itemPriceCents;
+        // Distinct (name, city) pairs of restaurants, open addressing from the packed codes to key + 1
+        final long[] restaurantKeySlots;
+        final int[] restaurantKeys;
+        // The items of restaurant key k are byRestaurant[byRestaurantStart[k] .. byRestaurantStart[k + 1]]
+        final int[] byRestaurantStart;
+        final int[] byRestaurant;
+        // The items of the dishes named with code n are byDishName[byDishNameStart[n] .. byDishNameStart[n + 1]]
+        final int[] byDishNameStart;
+        final int[] byDishName;
+
+        Snapshot(Rows rows) {
+            names = new NameDictionary(rows.restaurants * 2 + rows.dishes);
+
+            int[] order = sortedOrder(rows.restaurantIds, rows.restaurants);
+            restaurantIds = new int[order.length];
+            restaurantNames = new int[order.length];
+            restaurantCities = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                restaurantIds[i] = rows.restaurantIds[order[i]];
+                restaurantNames[i] = names.add(rows.restaurantNames[order[i]]);
+                restaurantCities[i] = names.add(rows.cities[order[i]]);
+            }
+
+            order = sortedOrder(rows.dishNos, rows.dishes);
+            dishNos = new int[order.length];
+            dishNames = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                dishNos[i] = rows.dishNos[order[i]];
+                dishNames[i] = names.add(rows.dishNames[order[i]]);
+            }
+
+            // An item whose restaurant is not in the rows cannot be looked up, it is left out
+            order = sortedOrder(rows.itemNos, rows.items);
+            int[] itemNos = new int[order.length];
+            int[] itemRestaurants = new int[order.length];
+            int[] itemDishes = new int[order.length];
+            long[] itemPriceCents = new long[order.length];
+            int items = 0;
+            for (int row : order) {
+                int restaurant = Arrays.binarySearch(restaurantIds, rows.itemRestaurantIds[row]);
+                if (restaurant < 0) {
+                    continue;
+                }
+                int dish = rows.itemDishNos[row] == 0 ? -1 : Arrays.binarySearch(dishNos, rows.itemDishNos[row]);
+                itemNos[items] = rows.itemNos[row];
+                itemRestaurants[items] = restaurant;
+                itemDishes[items] = dish < 0 ? -1 : dish;
+                itemPriceCents[items] = rows.itemPriceCents[row];
+                items++;
+            }
+            this.itemNos = Arrays.copyOf(itemNos, items);
+            this.itemRestaurants = Arrays.copyOf(itemRestaurants, items);
+            this.itemDishes = Arrays.copyOf(itemDishes, items);
+            this.itemPriceCents = Arrays.copyOf(itemPriceCents, items);
+
+            int tableSize = Integer.highestOneBit(Math.max(16, restaurantIds.length) * 4 - 1);
+            restaurantKeySlots = new long[tableSize];
+            restaurantKeys = new int[tableSize];
+            int[] keyOfRestaurant = new int[restaurantIds.length];
+            int keyCount = 0;
+            for (int r = 0; r < restaurantIds.length; r++) {
+                long packed = pack(restaurantNames[r], restaurantCities[r]);
+                int slot = findSlot(packed);
+                if (restaurantKeys[slot] == 0) {
+                    restaurantKeySlots[slot] = packed;
+                    restaurantKeys[slot] = ++keyCount;
+                }
+                keyOfRestaurant[r] = restaurantKeys[slot] - 1;
+            }
+
+            int[] itemKeys = new int[items];
+            int[] itemDishNames = new int[items];
+            for (int i = 0; i < items; i++) {
+                itemKeys[i] = keyOfRestaurant[this.itemRestaurants[i]];
+                itemDishNames[i] = this.itemDishes[i] < 0 ? -1 : dishNames[this.itemDishes[i]];
+            }
+            byRestaurantStart = new int[keyCount + 1];
+            byRestaurant = group(itemKeys, byRestaurantStart);
+            byDishNameStart = new int[names.size() + 1];
+            byDishName = group(itemDishNames, byDishNameStart);
+        }
+
+        int restaurantKey(String restaurantName, String cityName) {
+            int name = names.find(restaurantName);
+            int city = names.find(cityName);
+            if (name < 0 || city < 0) {
+                return -1;
+            }
+            return restaurantKeys[findSlot(pack(name, city))] - 1;
+        }
+
+        int visit(int[] positions, int[] start, int group, MenuVisitor visitor) {
+            int from = start[group];
+            int to = start[group + 1];
+            for (int i = from; i < to; i++) {
+                int item = positions[i];
+                int restaurant = itemRestaurants[item];
+                int dish = itemDishes[item];
+                visitor.visit(itemNos[item],
+                        names.value(restaurantNames[restaurant]),
+                        names.value(restaurantCities[restaurant]),
+                        dish < 0 ? null : names.value(dishNames[dish]),
+                        itemPriceCents[item]);
+            }
+            return to - from;
+        }
+
+        // The rows of this snapshot whose ids are still in the catalog
+        Rows rowsStillIn(CatalogIds ids) {
+            Rows rows = new Rows();
+            for (int r = 0; r < restaurantIds.length; r++) {
+                if (Arrays.binarySearch(ids.restaurantIds, restaurantIds[r]) >= 0) {
+                    rows.restaurant(restaurantIds[r], names.value(restaurantNames[r]), names.value(restaurantCities[r]));
+                }
+            }
+            for (int d = 0; d < dishNos.length; d++) {
+                if (Arrays.binarySearch(ids.dishNos, dishNos[d]) >= 0) {
+                    rows.dish(dishNos[d], names.value(dishNames[d]));
+                }
+            }
+            for (int i = 0; i < itemNos.length; i++) {
+                if (Arrays.binarySearch(ids.itemNos, itemNos[i]) >= 0) {
+                    int dish = itemDishes[i];
+                    rows.menuItem(itemNos[i], restaurantIds[itemRestaurants[i]], dish < 0 ? 0 : dishNos[dish], itemPriceCents[i]);
+                }
+            }
+            return rows;
+        }
+
+        private int findSlot(long packed) {
+            int mask = restaurantKeySlots.length - 1;
+            int slot = Long.hashCode(packed * 0x9E3779B97F4A7C15L) & mask;
+            while (restaurantKeys[slot] != 0 && restaurantKeySlots[slot] != packed) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static long pack(int name, int city) {
+            return ((long) name << 32) | city;
+        }
+
+        // Positions 0..count-1 ordered by id
+        private static int[] sortedOrder(int[] ids, int count) {
+            long[] packed = new long[count];
+            for (int i = 0; i < count; i++) {
+                packed[i] = ((long) ids[i] << 32) | i;
+            }
+            Arrays.sort(packed);
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = (int) packed[i];
+            }
+            return order;
+        }
+
+        /*
+         * Counting sort of the item positions by group, -1 left out. Items are in itemNo order,
+         * so each group's range is too. Fills start with the first position of each group.
+         */
+        private static int[] group(int[] groupOfItem, int[] start) {
+            int grouped = 0;
+            for (int group : groupOfItem) {
+                if (group >= 0) {
+                    start[group + 1]++;
+                    grouped++;
+                }
+            }
+            for (int g = 1; g < start.length; g++) {
+                start[g] += start[g - 1];
+            }
+            int[] next = Arrays.copyOf(start, start.length - 1);
+            int[] positions = new int[grouped];
+            for (int item = 0; item < groupOfItem.length; item++) {
+                int group = groupOfItem[item];
+                if (group >= 0) {
+                    positions[next[group]++] = item;
+                }
+            }
+            return positions;
+        }
+    }
+}
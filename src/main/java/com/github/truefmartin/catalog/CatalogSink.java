@@ -0,0 +1,33 @@
+package com.github.truefmartin.catalog;
+
+import com.github.truefmartin.models.Type;
+
+/**
+ * Receives catalog rows as they are read from the database, see
+ * {@link com.github.truefmartin.Model#readCatalog(int[], int[], int[], CatalogSink)}.
+ */
+public interface CatalogSink {
+    void restaurant(int restaurantId, String restaurantName, String city);
+
+    /**
+     * Receives a restaurant with its type, for sinks that keep whole rows. By default the type is dropped.
+     */
+    default void restaurant(int restaurantId, String restaurantName, String type, String city) {
+        restaurant(restaurantId, restaurantName, city);
+    }
+
+    void dish(int dishNo, String dishName);
+
+    /**
+     * Receives a dish with its type, null if it has none. By default the type is dropped.
+     */
+    default void dish(int dishNo, String dishName, Type type) {
+        dish(dishNo, dishName);
+    }
+
+    /**
+     * @param dishNo the dish of the menu item, 0 if it has none
+     * @param priceCents the price in cents
+     */
+    void menuItem(int itemNo, int restaurantId, int dishNo, long priceCents);
+}
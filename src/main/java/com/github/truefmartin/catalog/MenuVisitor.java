@@ -0,0 +1,14 @@
+package com.github.truefmartin.catalog;
+
+/**
+ * Receives the menu items of a {@link CatalogReplica} lookup, one call per item.
+ * The strings are the replica's own, so a visitor that only reads them allocates nothing.
+ */
+@FunctionalInterface
+public interface MenuVisitor {
+    /**
+     * @param dishName the name of the item's dish, null if it has none
+     * @param priceCents the price in cents
+     */
+    void visit(int itemNo, String restaurantName, String city, String dishName, long priceCents);
+}
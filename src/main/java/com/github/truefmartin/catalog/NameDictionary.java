@@ -0,0 +1,120 @@
+package com.github.truefmartin.catalog;
+
+import java.util.Arrays;
+
+/**
+ * Gives each distinct name a small int code. Names are compared the way MySQL compares them,
+ * ignoring case and trailing spaces, and the first spelling added is the one kept.
+ * {@link #find(CharSequence)} hashes the characters in place, so looking a name up allocates nothing.
+ * Not thread-safe while names are added, a finished dictionary can be read by any number of threads.
+ */
+final class NameDictionary {
+    private String[] values;
+    private int size;
+    // Open addressing, a slot holds code + 1 and 0 when empty
+    private int[] slots;
+
+    NameDictionary(int expectedNames) {
+        values = new String[Math.max(16, expectedNames)];
+        slots = new int[tableSize(expectedNames)];
+    }
+
+    /**
+     * @param name the name to add
+     * @return the code of the name, a new one if no equal name was added before
+     */
+    int add(String name) {
+        int code = find(name);
+        if (code >= 0) {
+            return code;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        if ((size + 1) * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        code = size++;
+        values[code] = name;
+        insert(code);
+        return code;
+    }
+
+    /**
+     * @param name the name to look up
+     * @return its code, -1 if it was never added
+     */
+    int find(CharSequence name) {
+        int mask = slots.length - 1;
+        for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (sameName(values[entry - 1], name)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    String value(int code) {
+        return values[code];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void insert(int code) {
+        int mask = slots.length - 1;
+        int slot = hash(values[code]) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = code + 1;
+    }
+
+    private void rehash(int tableSize) {
+        slots = new int[tableSize];
+        for (int code = 0; code < size; code++) {
+            insert(code);
+        }
+    }
+
+    private static int tableSize(int names) {
+        // At most half full, so probe sequences stay short
+        return Integer.highestOneBit(Math.max(16, names) * 4 - 1);
+    }
+
+    private static int length(CharSequence name) {
+        int end = name.length();
+        while (end > 0 && Character.isWhitespace(name.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static int hash(CharSequence name) {
+        int hash = 0;
+        for (int i = 0, end = length(name); i < end; i++) {
+            hash = 31 * hash + Character.toLowerCase(name.charAt(i));
+        }
+        // Spread the high bits down, the table only uses the low ones
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean sameName(String value, CharSequence name) {
+        int end = length(value);
+        if (end != length(name)) {
+            return false;
+        }
+        for (int i = 0; i < end; i++) {
+            char a = value.charAt(i);
+            char b = name.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,313 @@
+package com.github.truefmartin.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Finds the names closest to a possibly misspelled or partial one, e.g. for a "did you mean" step after a lookup
+ * by exact name found nothing. Names are compared lowercased, with runs of spaces and punctuation as one space.
+ * <p>
+ * Matches rank by how they match: the same name first, then names starting with the input, then names sharing
+ * enough trigrams (runs of three characters, of the name padded with spaces) with it. Within a rank the
+ * similarity decides, the share of the trigrams of both names that they have in common, then the shorter name.
+ * Each trigram has the list of names holding it, so a search only counts the trigrams of the input over those
+ * lists, and a sorted array of the names answers prefixes with a binary search.
+ * <p>
+ * Searches read an immutable snapshot, so any number of threads can search while one adds a name.
+ * {@link #add(String)} copies only the lists of the new name's trigrams.
+ */
+public final class NameSearch {
+    /** the least similarity of a trigram match, below it names have little more than a letter or two in common */
+    public static final double MIN_SIMILARITY = 0.3;
+
+    private static final int EXACT = 2;
+    private static final int PREFIX = 1;
+    private static final int SIMILAR = 0;
+
+    private volatile Snapshot snapshot = new Snapshot();
+
+    private static final class Snapshot {
+        // By name id: the first spelling added, its normalized form and its number of distinct trigrams
+        final String[] names;
+        final String[] normalized;
+        final int[] trigramCounts;
+        final int size;
+        // Name ids holding each trigram, in ascending order
+        final HashMap<Long, int[]> postings;
+        // Name ids in order of their normalized form
+        final int[] sorted;
+        final HashMap<String, Integer> ids;
+
+        Snapshot() {
+            this(new String[0], new String[0], new int[0], 0, new HashMap<>(), new int[0], new HashMap<>());
+        }
+
+        Snapshot(String[] names, String[] normalized, int[] trigramCounts, int size,
+                 HashMap<Long, int[]> postings, int[] sorted, HashMap<String, Integer> ids) {
+            this.names = names;
+            this.normalized = normalized;
+            this.trigramCounts = trigramCounts;
+            this.size = size;
+            this.postings = postings;
+            this.sorted = sorted;
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * Adds many names at once, building the index once rather than per name.
+     * @param names the names to add, names equal to one added before are skipped
+     */
+    public synchronized void addAll(Collection<String> names) {
+        Snapshot current = snapshot;
+        int capacity = current.size + names.size();
+        String[] spellings = Arrays.copyOf(current.names, capacity);
+        String[] normalized = Arrays.copyOf(current.normalized, capacity);
+        int[] trigramCounts = Arrays.copyOf(current.trigramCounts, capacity);
+        HashMap<String, Integer> ids = new HashMap<>(current.ids);
+        HashMap<Long, List<Integer>> added = new HashMap<>();
+        int size = current.size;
+        for (String name : names) {
+            String key = normalize(name);
+            if (key.isEmpty() || ids.containsKey(key)) {
+                continue;
+            }
+            int id = size++;
+            spellings[id] = name;
+            normalized[id] = key;
+            ids.put(key, id);
+            long[] trigrams = trigrams(key);
+            trigramCounts[id] = trigrams.length;
+            for (long trigram : trigrams) {
+                added.computeIfAbsent(trigram, ignored -> new ArrayList<>()).add(id);
+            }
+        }
+        HashMap<Long, int[]> postings = new HashMap<>(current.postings);
+        added.forEach((trigram, newIds) -> {
+            int[] old = postings.getOrDefault(trigram, new int[0]);
+            int[] merged = Arrays.copyOf(old, old.length + newIds.size());
+            for (int i = 0; i < newIds.size(); i++) {
+                merged[old.length + i] = newIds.get(i);
+            }
+            postings.put(trigram, merged);
+        });
+        Integer[] order = new Integer[size];
+        for (int id = 0; id < size; id++) {
+            order[id] = id;
+        }
+        Arrays.sort(order, (a, b) -> normalized[a].compareTo(normalized[b]));
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = order[i];
+        }
+        snapshot = new Snapshot(spellings, normalized, trigramCounts, size, postings, sorted, ids);
+    }
+
+    /**
+     * Adds a name, e.g. of a dish just added, copying only the lists it changes.
+     * @param name the name to add, skipped if it equals one added before
+     */
+    public synchronized void add(String name) {
+        Snapshot current = snapshot;
+        String key = normalize(name);
+        if (key.isEmpty() || current.ids.containsKey(key)) {
+            return;
+        }
+        int id = current.size;
+        String[] spellings = Arrays.copyOf(current.names, id + 1);
+        String[] normalized = Arrays.copyOf(current.normalized, id + 1);
+        int[] trigramCounts = Arrays.copyOf(current.trigramCounts, id + 1);
+        spellings[id] = name;
+        normalized[id] = key;
+        HashMap<String, Integer> ids = new HashMap<>(current.ids);
+        ids.put(key, id);
+        long[] trigrams = trigrams(key);
+        trigramCounts[id] = trigrams.length;
+        HashMap<Long, int[]> postings = new HashMap<>(current.postings);
+        for (long trigram : trigrams) {
+            int[] old = postings.getOrDefault(trigram, new int[0]);
+            int[] extended = Arrays.copyOf(old, old.length + 1);
+            extended[old.length] = id;
+            postings.put(trigram, extended);
+        }
+        int at = lowerBound(current, key);
+        int[] sorted = new int[id + 1];
+        System.arraycopy(current.sorted, 0, sorted, 0, at);
+        sorted[at] = id;
+        System.arraycopy(current.sorted, at, sorted, at + 1, id - at);
+        snapshot = new Snapshot(spellings, normalized, trigramCounts, id + 1, postings, sorted, ids);
+    }
+
+    /**
+     * @param input a name, or the start of one, possibly misspelled
+     * @param limit the most names to return
+     * @return the closest names in the spelling first added, best first, empty if none is close
+     */
+    public List<String> search(String input, int limit) {
+        Snapshot current = snapshot;
+        String key = normalize(input);
+        if (key.isEmpty() || limit < 1 || current.size == 0) {
+            return List.of();
+        }
+        TopMatches top = new TopMatches(current, limit);
+        for (int i = lowerBound(current, key); i < current.size; i++) {
+            int id = current.sorted[i];
+            if (!current.normalized[id].startsWith(key)) {
+                break;
+            }
+            top.offer(id, current.normalized[id].length() == key.length() ? EXACT : PREFIX,
+                    (double) key.length() / current.normalized[id].length());
+        }
+        // Only the names sharing a trigram are visited, not every name
+        long[] trigrams = trigrams(key);
+        int[] shared = new int[current.size];
+        int[] touched = new int[current.size];
+        int touchedCount = 0;
+        for (long trigram : trigrams) {
+            int[] ids = current.postings.get(trigram);
+            if (ids != null) {
+                for (int id : ids) {
+                    if (shared[id]++ == 0) {
+                        touched[touchedCount++] = id;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < touchedCount; i++) {
+            int id = touched[i];
+            // Names starting with the input were offered above
+            if (current.normalized[id].startsWith(key)) {
+                continue;
+            }
+            double similarity = (double) shared[id] / (trigrams.length + current.trigramCounts[id] - shared[id]);
+            if (similarity >= MIN_SIMILARITY) {
+                top.offer(id, SIMILAR, similarity);
+            }
+        }
+        return top.names();
+    }
+
+    // The best matches of one search so far, best first, without sorting the others
+    private static final class TopMatches {
+        final Snapshot snapshot;
+        final int[] ids;
+        final int[] ranks;
+        final double[] similarities;
+        int size;
+
+        TopMatches(Snapshot snapshot, int limit) {
+            this.snapshot = snapshot;
+            int capacity = Math.min(limit, snapshot.size);
+            ids = new int[capacity];
+            ranks = new int[capacity];
+            similarities = new double[capacity];
+        }
+
+        void offer(int id, int rank, double similarity) {
+            if (size == ids.length && !better(id, rank, similarity, size - 1)) {
+                return;
+            }
+            int at = size == ids.length ? size - 1 : size++;
+            while (at > 0 && better(id, rank, similarity, at - 1)) {
+                ids[at] = ids[at - 1];
+                ranks[at] = ranks[at - 1];
+                similarities[at] = similarities[at - 1];
+                at--;
+            }
+            ids[at] = id;
+            ranks[at] = rank;
+            similarities[at] = similarity;
+        }
+
+        // Whether a match ranks before the one at a position
+        boolean better(int id, int rank, double similarity, int position) {
+            if (rank != ranks[position]) {
+                return rank > ranks[position];
+            }
+            if (similarity != similarities[position]) {
+                return similarity > similarities[position];
+            }
+            String name = snapshot.normalized[id];
+            String other = snapshot.normalized[ids[position]];
+            if (name.length() != other.length()) {
+                return name.length() < other.length();
+            }
+            return name.compareTo(other) < 0;
+        }
+
+        List<String> names() {
+            List<String> names = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                names.add(snapshot.names[ids[i]]);
+            }
+            return names;
+        }
+    }
+
+    /**
+     * @return the number of distinct names
+     */
+    public int size() {
+        return snapshot.size;
+    }
+
+    @Override
+    public String toString() {
+        Snapshot current = snapshot;
+        return String.format("names=%d, trigrams=%d", current.size, current.postings.size());
+    }
+
+    // The first position in the sorted names whose normalized form is not before the key
+    private static int lowerBound(Snapshot snapshot, String key) {
+        int low = 0;
+        int high = snapshot.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (snapshot.normalized[snapshot.sorted[middle]].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static String normalize(String name) {
+        StringBuilder key = new StringBuilder(name.length());
+        boolean space = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && key.length() > 0) {
+                    key.append(' ');
+                }
+                key.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return key.toString().toLowerCase(Locale.ROOT);
+    }
+
+    // The distinct trigrams of a normalized name padded with two spaces in front and one behind, three chars a long
+    private static long[] trigrams(String key) {
+        String padded = "  " + key + " ";
+        long[] trigrams = new long[padded.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        Arrays.sort(trigrams);
+        int distinct = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+}
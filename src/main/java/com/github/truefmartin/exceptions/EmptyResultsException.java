@@ -3,6 +3,8 @@ package com.github.truefmartin.exceptions;
 import java.util.Arrays;
 
 public class EmptyResultsException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public EmptyResultsException(String msg){
         super(msg);
     }
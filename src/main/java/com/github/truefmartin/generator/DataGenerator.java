@@ -0,0 +1,320 @@
+package com.github.truefmartin.generator;
+
+import com.github.truefmartin.models.IdGenerators;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates referentially valid synthetic data for the restaurant, dish, menu_item and food_order relations,
+ * following the constraints in sql/create.sql. Each relation is split into id ranges that are loaded in parallel
+ * with JDBC batch inserts, one connection per thread.
+ * <p>
+ * Rows take ranges of ids reserved from the id generators, above the ids in use and any a running application holds,
+ * so existing data is left untouched.
+ * Orders are spread over restaurants with a zipf distribution, so a few restaurants get most of the orders.
+ */
+public class DataGenerator {
+    private static final Logger logger = LogManager.getLogger(DataGenerator.class);
+
+    private static final String[] RESTAURANT_WORDS =
+            {"Tasty", "Golden", "Eureka", "Blue", "Lucky", "Happy", "Royal", "Spicy", "Green", "Urban"};
+    private static final String[] RESTAURANT_TYPES =
+            {"Asian", "Pizza", "Mexican", "Italian", "Diner", "Indian", "Greek", "BBQ"};
+    private static final String[] CITIES =
+            {"Dallas", "Fayetteville", "Las Vegas", "Austin", "Tulsa", "Denver", "Omaha", "Memphis", "Phoenix", "Reno"};
+    private static final String[] DISH_WORDS =
+            {"Spring Rolls", "Pad Thai", "Pot Stickers", "Curry", "Custard", "Garlic Bread", "Salad", "Pizza", "Tacos",
+                    "Noodles"};
+    private static final String[] DISH_TYPES = {"ap", "en", "ds"};
+    private static final LocalDate FIRST_ORDER_DATE = LocalDate.of(2024, 1, 1);
+    private static final int MIN_PRICE_CENTS = 500;
+    private static final int MAX_PRICE_CENTS = 5000;
+
+    /**
+     * Opens a new connection for a loader thread.
+     */
+    public interface ConnectionSource {
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * Sizes and shape of the generated data.
+     */
+    public static class Settings {
+        public int restaurants = 1_000;
+        public int dishes = 500;
+        public int menuItemsPerRestaurant = 10;
+        public long orders = 1_000_000;
+        /** zipf exponent for choosing the restaurant of an order, 0 is uniform */
+        public double skew = 1.0;
+        /** orders are dated on or after 2024-01-01 and spread over this many days */
+        public int days = 365;
+        public int threads = Runtime.getRuntime().availableProcessors();
+        public int batchSize = 5_000;
+        public long seed = 42;
+
+        /**
+         * Reads settings from arguments of the form key=value, e.g. orders=10000000 threads=8.
+         * @param args the arguments, unknown keys are rejected
+         * @return the settings, with defaults for any key not given
+         */
+        public static Settings fromArgs(String... args) {
+            Settings settings = new Settings();
+            for (String arg : args) {
+                String[] pair = arg.split("=", 2);
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("expected key=value, got " + arg);
+                }
+                switch (pair[0]) {
+                    case "restaurants":
+                        settings.restaurants = Integer.parseInt(pair[1]);
+                        break;
+                    case "dishes":
+                        settings.dishes = Integer.parseInt(pair[1]);
+                        break;
+                    case "menuItemsPerRestaurant":
+                        settings.menuItemsPerRestaurant = Integer.parseInt(pair[1]);
+                        break;
+                    case "orders":
+                        settings.orders = Long.parseLong(pair[1]);
+                        break;
+                    case "skew":
+                        settings.skew = Double.parseDouble(pair[1]);
+                        break;
+                    case "days":
+                        settings.days = Integer.parseInt(pair[1]);
+                        break;
+                    case "threads":
+                        settings.threads = Integer.parseInt(pair[1]);
+                        break;
+                    case "batchSize":
+                        settings.batchSize = Integer.parseInt(pair[1]);
+                        break;
+                    case "seed":
+                        settings.seed = Long.parseLong(pair[1]);
+                        break;
+                    case "url":
+                    case "user":
+                    case "password":
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown generator setting " + pair[0]);
+                }
+            }
+            return settings;
+        }
+    }
+
+    /**
+     * The first id generated for each relation, so callers can find the rows again.
+     */
+    public static class IdOffsets {
+        public final int restaurant;
+        public final int dish;
+        public final int menuItem;
+        public final long order;
+
+        IdOffsets(int restaurant, int dish, int menuItem, long order) {
+            this.restaurant = restaurant;
+            this.dish = dish;
+            this.menuItem = menuItem;
+            this.order = order;
+        }
+    }
+
+    private final Settings settings;
+    private final ConnectionSource connections;
+
+    public DataGenerator(Settings settings, ConnectionSource connections) {
+        this.settings = settings;
+        this.connections = connections;
+    }
+
+    /**
+     * Runs the generator against a MySQL database, e.g.
+     * {@code url=jdbc:mysql://localhost/fcmartin user=me password=secret orders=10000000}.
+     * @param args key=value settings, see {@link Settings#fromArgs(String...)}
+     * @throws Exception if the load fails
+     */
+    public static void main(String[] args) throws Exception {
+        String url = null;
+        String user = null;
+        String password = null;
+        for (String arg : args) {
+            if (arg.startsWith("url=")) {
+                url = arg.substring("url=".length());
+            } else if (arg.startsWith("user=")) {
+                user = arg.substring("user=".length());
+            } else if (arg.startsWith("password=")) {
+                password = arg.substring("password=".length());
+            }
+        }
+        if (url == null) {
+            throw new IllegalArgumentException("missing url=<jdbc url> argument");
+        }
+        // MySQL only sends real multi-row inserts for a batch with this flag
+        if (url.startsWith("jdbc:mysql:") && !url.contains("rewriteBatchedStatements")) {
+            url += (url.contains("?") ? "&" : "?") + "rewriteBatchedStatements=true";
+        }
+        final String jdbcUrl = url;
+        final String jdbcUser = user;
+        final String jdbcPassword = password;
+        new DataGenerator(Settings.fromArgs(args), () -> DriverManager.getConnection(jdbcUrl, jdbcUser, jdbcPassword))
+                .generate();
+    }
+
+    public static String restaurantName(int restaurantId) {
+        return RESTAURANT_WORDS[restaurantId % RESTAURANT_WORDS.length] + " " + Integer.toString(restaurantId, 36);
+    }
+
+    public static String cityName(int restaurantId) {
+        return CITIES[(restaurantId / RESTAURANT_WORDS.length) % CITIES.length];
+    }
+
+    public static String dishName(int dishNo) {
+        return DISH_WORDS[dishNo % DISH_WORDS.length] + " " + Integer.toString(dishNo, 36);
+    }
+
+    /**
+     * Generates and loads every relation in foreign key order.
+     * @return the first id generated for each relation
+     * @throws SQLException if an insert fails
+     * @throws InterruptedException if interrupted while waiting on the loader threads
+     */
+    public IdOffsets generate() throws SQLException, InterruptedException {
+        if (settings.restaurants < 1 || settings.dishes < 1 || settings.menuItemsPerRestaurant < 1) {
+            throw new IllegalArgumentException("need at least one restaurant, dish and menu item per restaurant");
+        }
+        long menuItems = (long) settings.restaurants * settings.menuItemsPerRestaurant;
+        IdOffsets offsets = reserveIds(menuItems);
+        ExecutorService executor = Executors.newFixedThreadPool(settings.threads);
+        try {
+            load(executor, "restaurant", settings.restaurants,
+                    "INSERT INTO fcmartin.restaurant (restaurant_id, restaurant_name, type, city) VALUES (?, ?, ?, ?)",
+                    (insert, row, random) -> {
+                        int id = offsets.restaurant + (int) row;
+                        insert.setInt(1, id);
+                        insert.setString(2, restaurantName(id));
+                        insert.setString(3, RESTAURANT_TYPES[random.nextInt(RESTAURANT_TYPES.length)]);
+                        insert.setString(4, cityName(id));
+                    });
+            load(executor, "dish", settings.dishes,
+                    "INSERT INTO fcmartin.dish (dish_no, dish_name, type) VALUES (?, ?, ?)",
+                    (insert, row, random) -> {
+                        int id = offsets.dish + (int) row;
+                        insert.setInt(1, id);
+                        insert.setString(2, dishName(id));
+                        insert.setString(3, DISH_TYPES[id % DISH_TYPES.length]);
+                    });
+            ZipfDistribution dishPopularity = new ZipfDistribution(settings.dishes, settings.skew);
+            load(executor, "menu_item", menuItems,
+                    "INSERT INTO fcmartin.menu_item (item_no, restaurant_no, dish_no, price) VALUES (?, ?, ?, ?)",
+                    (insert, row, random) -> {
+                        // Menu items of a restaurant are contiguous, so an order can pick one from its restaurant's range
+                        insert.setInt(1, offsets.menuItem + (int) row);
+                        insert.setInt(2, offsets.restaurant + (int) (row / settings.menuItemsPerRestaurant));
+                        insert.setInt(3, offsets.dish + dishPopularity.sample(random) - 1);
+                        insert.setBigDecimal(4, BigDecimal.valueOf(
+                                MIN_PRICE_CENTS + random.nextInt(MAX_PRICE_CENTS - MIN_PRICE_CENTS + 1), 2));
+                    });
+            ZipfDistribution restaurantPopularity = new ZipfDistribution(settings.restaurants, settings.skew);
+            load(executor, "food_order", settings.orders,
+                    "INSERT INTO fcmartin.food_order (order_no, item_no, date, time) VALUES (?, ?, ?, ?)",
+                    (insert, row, random) -> {
+                        int restaurant = restaurantPopularity.sample(random) - 1;
+                        int item = restaurant * settings.menuItemsPerRestaurant + random.nextInt(settings.menuItemsPerRestaurant);
+                        insert.setLong(1, offsets.order + row);
+                        insert.setInt(2, offsets.menuItem + item);
+                        insert.setDate(3, Date.valueOf(FIRST_ORDER_DATE.plusDays(random.nextInt(settings.days))));
+                        insert.setTime(4, new Time(random.nextInt(24 * 60 * 60) * 1000L));
+                    });
+        } finally {
+            executor.shutdown();
+        }
+        return offsets;
+    }
+
+    /*
+     * Fills one prepared statement with the values for a row, the row is zero based within this load.
+     */
+    private interface RowWriter {
+        void write(PreparedStatement insert, long row, SplittableRandom random) throws SQLException;
+    }
+
+    private void load(ExecutorService executor, String relation, long rows, String sql, RowWriter writer)
+            throws SQLException, InterruptedException {
+        long start = System.nanoTime();
+        int workers = (int) Math.max(1, Math.min(settings.threads, rows / settings.batchSize));
+        long perWorker = (rows + workers - 1) / workers;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            long from = w * perWorker;
+            long to = Math.min(rows, from + perWorker);
+            SplittableRandom random = new SplittableRandom(settings.seed * 31 + relation.hashCode() * 17L + w);
+            futures.add(executor.submit(() -> {
+                loadRange(sql, writer, from, to, random);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-10s %,12d rows in %8.2fs (%,.0f rows/s)%n", relation, rows, seconds, rows / seconds);
+    }
+
+    private void loadRange(String sql, RowWriter writer, long from, long to, SplittableRandom random) throws SQLException {
+        try (Connection connection = connections.open();
+             PreparedStatement insert = connection.prepareStatement(sql)) {
+            connection.setAutoCommit(false);
+            for (long row = from; row < to; row++) {
+                writer.write(insert, row, random);
+                insert.addBatch();
+                if ((row - from + 1) % settings.batchSize == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            logger.error("loading rows {} to {} failed: {}", from, to, e.getMessage());
+            throw e;
+        }
+    }
+
+    // Takes the ids of the rows to insert from Hibernate's id generators, so they never collide with ids a running
+    // application already reserved above the highest id in use
+    private IdOffsets reserveIds(long menuItems) throws SQLException {
+        try (Connection connection = connections.open()) {
+            return new IdOffsets(
+                    (int) IdGenerators.reserve(connection, "restaurant", settings.restaurants),
+                    (int) IdGenerators.reserve(connection, "dish", settings.dishes),
+                    (int) IdGenerators.reserve(connection, "menu_item", menuItems),
+                    IdGenerators.reserve(connection, "food_order", settings.orders));
+        }
+    }
+}
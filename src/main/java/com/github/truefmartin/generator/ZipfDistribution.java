@@ -0,0 +1,40 @@
+package com.github.truefmartin.generator;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Samples ranks 1..n where rank k is drawn with probability proportional to 1/k^exponent.
+ * An exponent of 0 is uniform, around 1 a few low ranks get most of the draws.
+ */
+public class ZipfDistribution {
+    private final double[] cumulative;
+
+    public ZipfDistribution(int n, double exponent) {
+        if (n < 1) {
+            throw new IllegalArgumentException("zipf distribution needs at least one rank, got " + n);
+        }
+        cumulative = new double[n];
+        double total = 0;
+        for (int k = 1; k <= n; k++) {
+            total += 1.0 / Math.pow(k, exponent);
+            cumulative[k - 1] = total;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= total;
+        }
+    }
+
+    /**
+     * Draws a rank.
+     * @param random the source of randomness, one per thread
+     * @return a rank between 1 and n inclusive
+     */
+    public int sample(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return Math.min(index, cumulative.length - 1) + 1;
+    }
+}
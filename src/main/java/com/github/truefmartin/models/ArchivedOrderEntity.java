@@ -0,0 +1,90 @@
+package com.github.truefmartin.models;
+
+import jakarta.persistence.*;
+
+import java.sql.Date;
+import java.sql.Time;
+import java.util.Objects;
+
+/**
+ * An order of a month moved out of food_order by the archive job, see {@link OrderPartitions}. Only written by
+ * the job, the order listings read it as a {@link FoodOrderEntity} when their dates reach back that far.
+ */
+@Entity
+@Table(name = "food_order_archive", schema = "fcmartin", indexes = {
+        @Index(name = "food_order_archive_item_idx", columnList = "item_no, date, time"),
+        @Index(name = "food_order_archive_date_idx", columnList = "date")})
+@NamedEntityGraph(name = ArchivedOrderEntity.WITH_RESTAURANT_AND_DISH,
+        attributeNodes = @NamedAttributeNode(value = "menu", subgraph = "menu"),
+        subgraphs = @NamedSubgraph(name = "menu", attributeNodes = {@NamedAttributeNode("restaurant"), @NamedAttributeNode("dish")}))
+public class ArchivedOrderEntity {
+    /** fetch graph of an archived order with its menu item, restaurant and dish, for listing orders */
+    public static final String WITH_RESTAURANT_AND_DISH = "ArchivedOrderEntity.withRestaurantAndDish";
+
+    // Keeps the number the order had in food_order
+    @Id
+    @Column(name = "order_no")
+    private int orderNo;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "item_no", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
+    private MenuItemEntity menu;
+
+    @Basic
+    @Column(name = "date", nullable = false)
+    private Date date;
+    @Basic
+    @Column(name = "time")
+    private Time time;
+
+    public int getOrderNo() {
+        return orderNo;
+    }
+
+    public MenuItemEntity getMenu() {
+        return menu;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public Time getTime() {
+        return time;
+    }
+
+    /**
+     * @return a detached copy of the order as it was in food_order
+     */
+    public FoodOrderEntity toFoodOrder() {
+        FoodOrderEntity order = new FoodOrderEntity();
+        order.setOrderNo(orderNo);
+        order.setMenu(menu);
+        order.setDate(date);
+        order.setTime(time);
+        return order;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ArchivedOrderEntity that = (ArchivedOrderEntity) o;
+        return orderNo == that.orderNo;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(orderNo);
+    }
+
+    @Override
+    public String toString() {
+        return "ArchivedOrderEntity{" +
+                "orderNo=" + orderNo +
+                ", itemNo=" + (menu == null ? "null" : String.valueOf(menu.getItemNo())) +
+                ", date=" + date +
+                ", time=" + time +
+                '}';
+    }
+}
@@ -1,15 +1,25 @@
 package com.github.truefmartin.models;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.Set;
 
 @Entity
-@Table(name = "dish", schema = "fcmartin")
+// Dishes are looked up by name
+@Table(name = "dish", schema = "fcmartin",
+        indexes = @Index(name = "dish_name_idx", columnList = "dish_name"))
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "catalog.dish")
+@BatchSize(size = 50)
 public class DishEntity {
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @TableGenerator(name = "dish_ids", schema = "fcmartin", table = IdGenerators.TABLE,
+            pkColumnName = IdGenerators.NAME_COLUMN, valueColumnName = IdGenerators.VALUE_COLUMN,
+            pkColumnValue = "dish", allocationSize = IdGenerators.CATALOG_ALLOCATION_SIZE)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "dish_ids")
     @Id
     @Column(name = "dish_no")
     private int dishNo;
@@ -20,6 +30,8 @@ public class DishEntity {
     @Enumerated(EnumType.STRING)
     private Type type;
 
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "catalog.dish.menuItems")
+    @BatchSize(size = 50)
     @OneToMany(mappedBy = "dish", cascade = {CascadeType.PERSIST, CascadeType.MERGE})
     private Set<MenuItemEntity> menuItems = new LinkedHashSet<>();
 
@@ -31,7 +43,7 @@ public class DishEntity {
         this.menuItems = menuItems;
     }
 
-    public final int getDishNo() {
+    public int getDishNo() {
         return dishNo;
     }
 
@@ -8,19 +8,32 @@ import java.time.Instant;
 import java.util.Objects;
 
 @Entity
-@Table(name = "food_order", schema = "fcmartin")
+// Orders are joined by menu item for the restaurant reports, which read only the date and time, and filtered by date
+@Table(name = "food_order", schema = "fcmartin", indexes = {
+        @Index(name = "food_order_item_idx", columnList = "item_no, date, time"),
+        @Index(name = "food_order_date_idx", columnList = "date")})
+@NamedEntityGraph(name = FoodOrderEntity.WITH_RESTAURANT_AND_DISH,
+        attributeNodes = @NamedAttributeNode(value = "menu", subgraph = "menu"),
+        subgraphs = @NamedSubgraph(name = "menu", attributeNodes = {@NamedAttributeNode("restaurant"), @NamedAttributeNode("dish")}))
 public class FoodOrderEntity {
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    /** fetch graph of an order with its menu item, restaurant and dish, for listing all orders */
+    public static final String WITH_RESTAURANT_AND_DISH = "FoodOrderEntity.withRestaurantAndDish";
+
+    @TableGenerator(name = "food_order_ids", schema = "fcmartin", table = IdGenerators.TABLE,
+            pkColumnName = IdGenerators.NAME_COLUMN, valueColumnName = IdGenerators.VALUE_COLUMN,
+            pkColumnValue = "food_order", allocationSize = IdGenerators.ORDER_ALLOCATION_SIZE)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "food_order_ids")
     @Id
     @Column(name = "order_no")
     private int orderNo;
 
-    @ManyToOne(fetch = FetchType.EAGER)
-    @JoinColumn(name = "item_no", nullable = false)
+    // No foreign key, food_order is partitioned by month and MySQL has none on partitioned tables
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "item_no", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private MenuItemEntity menu;
 
     @Basic
-    @Column(name = "date")
+    @Column(name = "date", nullable = false)
     private Date date;
     @Basic
     @Column(name = "time")
@@ -0,0 +1,126 @@
+package com.github.truefmartin.models;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings shared by the table based id generators of the entities. Every relation has a row in the id_generator
+ * table holding the last id handed out. Hibernate reserves a block of ids per round trip (pooled-lo), so inserts no longer
+ * need the id back from an AUTO_INCREMENT column and can be sent as JDBC batches.
+ * <p>
+ * The AUTO_INCREMENT columns are kept, so rows inserted outside of Hibernate still get an id. {@link #sync(Connection)}
+ * moves each generator past the ids already in use. Rows inserted outside of Hibernate with explicit ids take them from
+ * {@link #reserve(Connection, String, long)}, as a running application may hold blocks of ids above the highest one in use.
+ */
+public final class IdGenerators {
+    public static final String TABLE = "id_generator";
+    public static final String NAME_COLUMN = "sequence_name";
+    public static final String VALUE_COLUMN = "next_val";
+    /** ids reserved per round trip for the catalog relations, which see few inserts */
+    public static final int CATALOG_ALLOCATION_SIZE = 50;
+    /** ids reserved per round trip for food_order, large enough to cover a JDBC batch of orders */
+    public static final int ORDER_ALLOCATION_SIZE = 1000;
+
+    // Each relation, its key and the tables holding its ids. Archived orders keep their order_no, which must not be
+    // handed out again.
+    private static final String[][] RELATION_KEYS = {
+            {"restaurant", "restaurant_id", "restaurant"},
+            {"dish", "dish_no", "dish"},
+            {"menu_item", "item_no", "menu_item"},
+            {"food_order", "order_no", "food_order", "food_order_archive"},
+    };
+
+    private IdGenerators() {
+    }
+
+    /**
+     * Moves every generator row up to the highest id in its relation, and for food_order in the archive too,
+     * creating the row if it is missing, so the next id handed out is the one after it.
+     * Safe to run at any time, a generator is never moved backwards.
+     * @param connection an open connection, committed by this method if it is not in auto commit mode
+     * @throws SQLException if the id_generator table or a relation is missing
+     */
+    public static void sync(Connection connection) throws SQLException {
+        for (String[] relation : RELATION_KEYS) {
+            String maxId = maxId(relation);
+            int updated;
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE fcmartin." + TABLE + " SET " + VALUE_COLUMN + " = GREATEST(" + VALUE_COLUMN + ", " + maxId + ") " +
+                            "WHERE " + NAME_COLUMN + " = ?")) {
+                update.setString(1, relation[0]);
+                updated = update.executeUpdate();
+            }
+            if (updated == 0) {
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO fcmartin." + TABLE + " (" + NAME_COLUMN + ", " + VALUE_COLUMN + ") " +
+                                "SELECT ?, " + maxId)) {
+                    insert.setString(1, relation[0]);
+                    insert.executeUpdate();
+                }
+            }
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    // The highest id of a relation over each of its tables, 0 if it has none
+    private static String maxId(String[] relation) {
+        List<String> maxima = new ArrayList<>();
+        for (int table = 2; table < relation.length; table++) {
+            maxima.add("(SELECT COALESCE(MAX(" + relation[1] + "), 0) FROM fcmartin." + relation[table] + ")");
+        }
+        return maxima.size() == 1 ? maxima.get(0) : "GREATEST(" + String.join(", ", maxima) + ")";
+    }
+
+    /**
+     * Reserves a range of ids of a relation by moving its generator past them, so neither Hibernate nor another
+     * reservation hands them out. The range starts after the generator's value, above any block of ids a running
+     * application already took, rather than after the highest id in the relation.
+     * @param connection an open connection, committed by this method and left in the auto commit mode it had
+     * @param relation the relation, e.g. food_order
+     * @param count the number of ids to reserve
+     * @return the first id of the range
+     * @throws SQLException if the id_generator table or the relation is missing
+     */
+    public static long reserve(Connection connection, String relation, long count) throws SQLException {
+        if (count < 0) {
+            throw new IllegalArgumentException("cannot reserve " + count + " ids");
+        }
+        // Creates the generator row if it is missing and moves it past rows inserted without a reservation
+        sync(connection);
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            long first;
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT " + VALUE_COLUMN + " FROM fcmartin." + TABLE + " WHERE " + NAME_COLUMN + " = ? FOR UPDATE")) {
+                select.setString(1, relation);
+                try (ResultSet result = select.executeQuery()) {
+                    if (!result.next()) {
+                        throw new IllegalArgumentException("no id generator for " + relation);
+                    }
+                    // Hibernate stores the last id it handed out, its next block starts after it
+                    first = result.getLong(1) + 1;
+                }
+            }
+            try (PreparedStatement update = connection.prepareStatement(
+                    "UPDATE fcmartin." + TABLE + " SET " + VALUE_COLUMN + " = ? WHERE " + NAME_COLUMN + " = ?")) {
+                update.setLong(1, first + count - 1);
+                update.setString(2, relation);
+                update.executeUpdate();
+            }
+            connection.commit();
+            return first;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
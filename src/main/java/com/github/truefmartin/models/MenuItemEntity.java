@@ -1,6 +1,9 @@
 package com.github.truefmartin.models;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.math.BigDecimal;
 import java.util.HashSet;
@@ -8,18 +11,33 @@ import java.util.Objects;
 import java.util.Set;
 
 @Entity
-@Table(name = "menu_item", schema = "fcmartin")
+// Menus are looked up by restaurant or by dish, each index holds every column so the rows are read from it alone
+@Table(name = "menu_item", schema = "fcmartin", indexes = {
+        @Index(name = "menu_item_restaurant_idx", columnList = "restaurant_no, dish_no, price"),
+        @Index(name = "menu_item_dish_idx", columnList = "dish_no, restaurant_no, price")})
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "catalog.menuItem")
+@BatchSize(size = 50)
+@NamedEntityGraph(name = MenuItemEntity.WITH_DISH, attributeNodes = @NamedAttributeNode("dish"))
+@NamedEntityGraph(name = MenuItemEntity.WITH_RESTAURANT, attributeNodes = @NamedAttributeNode("restaurant"))
 public class MenuItemEntity {
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    /** fetch graph of a menu item and its dish, for listing a restaurant's menu */
+    public static final String WITH_DISH = "MenuItemEntity.withDish";
+    /** fetch graph of a menu item and its restaurant, for listing the menus of a dish */
+    public static final String WITH_RESTAURANT = "MenuItemEntity.withRestaurant";
+
+    @TableGenerator(name = "menu_item_ids", schema = "fcmartin", table = IdGenerators.TABLE,
+            pkColumnName = IdGenerators.NAME_COLUMN, valueColumnName = IdGenerators.VALUE_COLUMN,
+            pkColumnValue = "menu_item", allocationSize = IdGenerators.CATALOG_ALLOCATION_SIZE)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "menu_item_ids")
     @Id
     @Column(name = "item_no")
     private int itemNo;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "restaurant_no", nullable = false)
     private RestaurantEntity restaurant;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "dish_no", nullable = true)
     private DishEntity dish;
     
@@ -27,6 +45,7 @@ public class MenuItemEntity {
     @Column(name = "price")
     private BigDecimal price;
 
+    @BatchSize(size = 50)
     @OneToMany(mappedBy = "menu", cascade = {CascadeType.PERSIST, CascadeType.MERGE, CascadeType.REMOVE})
     private Set<FoodOrderEntity> foodOrders = new HashSet<>();
 
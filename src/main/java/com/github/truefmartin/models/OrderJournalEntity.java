@@ -0,0 +1,58 @@
+package com.github.truefmartin.models;
+
+import jakarta.persistence.*;
+
+import java.util.Objects;
+
+/**
+ * How far the orders of an order journal have been written to food_order, updated in the same transaction as
+ * the orders, so a replay after a crash knows which orders are already in.
+ */
+@Entity
+@Table(name = "order_journal", schema = "fcmartin")
+public class OrderJournalEntity {
+    @Id
+    @Column(name = "journal_id", length = 36)
+    private String journalId;
+
+    @Basic
+    @Column(name = "replayed_sequence", nullable = false)
+    private long replayedSequence;
+
+    public String getJournalId() {
+        return journalId;
+    }
+
+    public void setJournalId(String journalId) {
+        this.journalId = journalId;
+    }
+
+    public long getReplayedSequence() {
+        return replayedSequence;
+    }
+
+    public void setReplayedSequence(long replayedSequence) {
+        this.replayedSequence = replayedSequence;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        OrderJournalEntity that = (OrderJournalEntity) o;
+        return replayedSequence == that.replayedSequence && Objects.equals(journalId, that.journalId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(journalId, replayedSequence);
+    }
+
+    @Override
+    public String toString() {
+        return "OrderJournalEntity{" +
+                "journalId='" + journalId + '\'' +
+                ", replayedSequence=" + replayedSequence +
+                '}';
+    }
+}
@@ -0,0 +1,215 @@
+package com.github.truefmartin.models;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the monthly partitions of food_order and moves old months to food_order_archive. On MySQL, with food_order
+ * partitioned as in sql/create.sql, a month is archived by swapping its partition with an empty staging table
+ * (EXCHANGE PARTITION, which only renames files), copying the staging table into the archive and dropping the then
+ * empty partition, so archiving never scans or locks the months still in use. The staging table is left behind if
+ * this is interrupted, and its orders are archived first by the next run. Any other database, or a food_order that
+ * was never partitioned, has its old orders moved in chunks instead, each chunk in one transaction.
+ */
+public final class OrderPartitions {
+    private static final String ORDERS = "fcmartin.food_order";
+    private static final String ARCHIVE = "fcmartin.food_order_archive";
+    private static final String STAGING_NAME = "food_order_staging";
+    private static final String STAGING = "fcmartin." + STAGING_NAME;
+    private static final String COLUMNS = "order_no, item_no, date, time";
+
+    // A partition of food_order, holding the dates before end, or every later date if end is null (MAXVALUE)
+    private static final class Partition {
+        final String name;
+        final LocalDate end;
+
+        Partition(String name, LocalDate end) {
+            this.name = name;
+            this.end = end;
+        }
+    }
+
+    private OrderPartitions() {
+    }
+
+    /**
+     * @param connection an open connection
+     * @return true if the database is MySQL and food_order is partitioned
+     * @throws SQLException if the partitions cannot be read
+     */
+    public static boolean isPartitioned(Connection connection) throws SQLException {
+        String database = connection.getMetaData().getDatabaseProductName();
+        if (!database.startsWith("MySQL") && !database.startsWith("MariaDB")) {
+            return false;
+        }
+        return !partitions(connection).isEmpty();
+    }
+
+    /**
+     * Splits a partition per month out of the partition of every later date, up to and including the month of
+     * the given date, so that coming orders land in monthly partitions. Does nothing unless food_order is partitioned.
+     * @param connection an open connection
+     * @param through a date in the last month to add a partition for
+     * @return the number of partitions added
+     * @throws SQLException if the partitions cannot be changed
+     */
+    public static int addPartitions(Connection connection, LocalDate through) throws SQLException {
+        if (!isPartitioned(connection)) {
+            return 0;
+        }
+        List<Partition> partitions = partitions(connection);
+        Partition future = partitions.get(partitions.size() - 1);
+        if (future.end != null) {
+            // Without a MAXVALUE partition there is nothing to split, and orders past the last month are refused
+            return 0;
+        }
+        LocalDate month = partitions.size() > 1
+                ? partitions.get(partitions.size() - 2).end
+                : through.withDayOfMonth(1);
+        StringBuilder ddl = new StringBuilder("ALTER TABLE " + ORDERS + " REORGANIZE PARTITION " + future.name + " INTO (");
+        int added = 0;
+        for (; !month.isAfter(through); month = month.plusMonths(1)) {
+            ddl.append(String.format("PARTITION p%04d%02d VALUES LESS THAN ('%s'), ",
+                    month.getYear(), month.getMonthValue(), month.plusMonths(1)));
+            added++;
+        }
+        if (added == 0) {
+            return 0;
+        }
+        ddl.append("PARTITION ").append(future.name).append(" VALUES LESS THAN (MAXVALUE))");
+        execute(connection, ddl.toString());
+        return added;
+    }
+
+    /**
+     * Moves the orders dated before the first day of a month from food_order to food_order_archive. A partitioned
+     * food_order has every monthly partition that ends by then swapped out, other orders of those dates, which
+     * the first remaining partition holds, stay until that partition is archived.
+     * @param connection an open connection, left in the auto commit mode it had
+     * @param before the first day of the first month to keep
+     * @param chunkSize the number of orders moved per transaction when food_order is not partitioned
+     * @return the number of orders archived
+     * @throws SQLException if the orders cannot be moved, the chunks or months moved before stay archived
+     */
+    public static long archive(Connection connection, LocalDate before, int chunkSize) throws SQLException {
+        if (before.getDayOfMonth() != 1) {
+            throw new IllegalArgumentException("orders are archived by whole months, " + before + " is not the first of one");
+        }
+        boolean autoCommit = connection.getAutoCommit();
+        try {
+            if (isPartitioned(connection)) {
+                connection.setAutoCommit(true);
+                return archivePartitions(connection, before);
+            }
+            connection.setAutoCommit(false);
+            return archiveChunks(connection, before, chunkSize);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static long archivePartitions(Connection connection, LocalDate before) throws SQLException {
+        long archived = archiveStaging(connection);
+        for (Partition partition : partitions(connection)) {
+            if (partition.end == null || partition.end.isAfter(before)) {
+                break;
+            }
+            execute(connection, "CREATE TABLE " + STAGING + " LIKE " + ORDERS);
+            execute(connection, "ALTER TABLE " + STAGING + " REMOVE PARTITIONING");
+            execute(connection, "ALTER TABLE " + ORDERS + " EXCHANGE PARTITION " + partition.name + " WITH TABLE " + STAGING);
+            archived += archiveStaging(connection);
+            execute(connection, "ALTER TABLE " + ORDERS + " DROP PARTITION " + partition.name);
+        }
+        return archived;
+    }
+
+    // Copies the orders of a staging table left by this or an interrupted run into the archive, then drops it
+    private static long archiveStaging(Connection connection) throws SQLException {
+        try (PreparedStatement exists = connection.prepareStatement(
+                "SELECT COUNT(*) FROM information_schema.TABLES WHERE TABLE_SCHEMA = 'fcmartin' AND TABLE_NAME = ?")) {
+            exists.setString(1, STAGING_NAME);
+            try (ResultSet result = exists.executeQuery()) {
+                if (!result.next() || result.getInt(1) == 0) {
+                    return 0;
+                }
+            }
+        }
+        long archived;
+        try (Statement statement = connection.createStatement()) {
+            // Orders copied before an interruption are already in the archive
+            archived = statement.executeUpdate(
+                    "INSERT IGNORE INTO " + ARCHIVE + " (" + COLUMNS + ") SELECT " + COLUMNS + " FROM " + STAGING);
+        }
+        execute(connection, "DROP TABLE " + STAGING);
+        return archived;
+    }
+
+    private static long archiveChunks(Connection connection, LocalDate before, int chunkSize) throws SQLException {
+        long archived = 0;
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT order_no FROM " + ORDERS + " WHERE date < ? LIMIT " + Math.max(1, chunkSize))) {
+            select.setDate(1, Date.valueOf(before));
+            while (true) {
+                List<Integer> orderNos = new ArrayList<>();
+                try (ResultSet result = select.executeQuery()) {
+                    while (result.next()) {
+                        orderNos.add(result.getInt(1));
+                    }
+                }
+                if (orderNos.isEmpty()) {
+                    break;
+                }
+                String in = " WHERE order_no IN (" + "?,".repeat(orderNos.size() - 1) + "?)";
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO " + ARCHIVE + " (" + COLUMNS + ") SELECT " + COLUMNS + " FROM " + ORDERS + in);
+                     PreparedStatement delete = connection.prepareStatement("DELETE FROM " + ORDERS + in)) {
+                    for (int i = 0; i < orderNos.size(); i++) {
+                        insert.setInt(i + 1, orderNos.get(i));
+                        delete.setInt(i + 1, orderNos.get(i));
+                    }
+                    archived += insert.executeUpdate();
+                    delete.executeUpdate();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+                if (orderNos.size() < chunkSize) {
+                    break;
+                }
+            }
+        }
+        return archived;
+    }
+
+    // The partitions of food_order in order of their dates, empty if it is not partitioned
+    private static List<Partition> partitions(Connection connection) throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(
+                     "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+                             "WHERE TABLE_SCHEMA = 'fcmartin' AND TABLE_NAME = 'food_order' AND PARTITION_NAME IS NOT NULL " +
+                             "ORDER BY PARTITION_ORDINAL_POSITION")) {
+            while (result.next()) {
+                // A RANGE COLUMNS bound is a quoted date, e.g. '2024-02-01', or MAXVALUE
+                String bound = result.getString(2).replace("'", "");
+                partitions.add(new Partition(result.getString(1),
+                        bound.equalsIgnoreCase("MAXVALUE") ? null : LocalDate.parse(bound)));
+            }
+        }
+        return partitions;
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
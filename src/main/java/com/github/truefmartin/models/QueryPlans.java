@@ -0,0 +1,72 @@
+package com.github.truefmartin.models;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the execution plan of a statement with EXPLAIN and reports the tables it reads in full, with a table scan
+ * or by walking a whole index. Understands the plans of MySQL, where these are the access types ALL and index,
+ * and of H2, which marks a table scan as tableScan and names an index without a condition when it walks all of it.
+ */
+public final class QueryPlans {
+    // Either "/* SCHEMA.TABLE.tableScan */" or "/* SCHEMA.INDEX */", an index used for a lookup is followed by ": condition"
+    private static final Pattern H2_FULL_SCAN = Pattern.compile("/\\* ([\\w.]+?)(\\.tableScan)? \\*/");
+
+    private QueryPlans() {
+    }
+
+    /**
+     * Runs EXPLAIN on a statement with its parameters bound in order.
+     * @param connection an open connection to MySQL or H2
+     * @param sql the statement, with ? placeholders
+     * @param parameters the values of the placeholders
+     * @return the tables read with a full table scan and the indexes walked in full, empty if every table is read
+     * through an index lookup
+     * @throws SQLException if the statement cannot be explained
+     */
+    public static List<String> fullScans(Connection connection, String sql, List<?> parameters) throws SQLException {
+        String database = connection.getMetaData().getDatabaseProductName();
+        boolean mysql = database.startsWith("MySQL") || database.startsWith("MariaDB");
+        if (!mysql && !database.startsWith("H2")) {
+            throw new SQLException("query plans can only be read from MySQL or H2, not " + database);
+        }
+        // A subquery may be listed more than once in the plan
+        Set<String> tables = new LinkedHashSet<>();
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                explain.setObject(i + 1, parameters.get(i));
+            }
+            try (ResultSet plan = explain.executeQuery()) {
+                while (plan.next()) {
+                    if (mysql) {
+                        String table = plan.getString("table");
+                        // Derived and materialized tables (<derived2>, <subquery2>) are built by the plan itself
+                        String type = plan.getString("type");
+                        if (table == null || table.startsWith("<")) {
+                            continue;
+                        }
+                        if ("ALL".equals(type)) {
+                            tables.add(table);
+                        } else if ("index".equals(type)) {
+                            tables.add(table + "." + plan.getString("key") + " (whole index)");
+                        }
+                    } else {
+                        Matcher scan = H2_FULL_SCAN.matcher(plan.getString(1));
+                        while (scan.find()) {
+                            tables.add(scan.group(2) != null ? scan.group(1) : scan.group(1) + " (whole index)");
+                        }
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(tables);
+    }
+}
@@ -1,15 +1,25 @@
 package com.github.truefmartin.models;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.Set;
 
 @Entity
-@Table(name = "restaurant", schema = "fcmartin")
+// Restaurants are looked up by name and city
+@Table(name = "restaurant", schema = "fcmartin",
+        indexes = @Index(name = "restaurant_name_city_idx", columnList = "restaurant_name, city"))
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "catalog.restaurant")
+@BatchSize(size = 50)
 public class RestaurantEntity {
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @TableGenerator(name = "restaurant_ids", schema = "fcmartin", table = IdGenerators.TABLE,
+            pkColumnName = IdGenerators.NAME_COLUMN, valueColumnName = IdGenerators.VALUE_COLUMN,
+            pkColumnValue = "restaurant", allocationSize = IdGenerators.CATALOG_ALLOCATION_SIZE)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "restaurant_ids")
     @Id
     @Column(name = "restaurant_id")
     private int restaurantId;
@@ -23,6 +33,8 @@ public class RestaurantEntity {
     @Column(name = "city")
     private String city;
 
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "catalog.restaurant.menuItems")
+    @BatchSize(size = 50)
     @OneToMany(mappedBy = "restaurant")
     private Set<MenuItemEntity> menuItems = new LinkedHashSet<>();
 
@@ -0,0 +1,116 @@
+package com.github.truefmartin.pool;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long threads wait for a connection from the HikariCP pool and how long they hold it,
+ * next to the pool's own active, idle and waiting counts. Install it with
+ * {@link com.zaxxer.hikari.HikariDataSource#setMetricsTrackerFactory(MetricsTrackerFactory)}.
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAccumulator maxAcquireNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder released = new LongAdder();
+    private final LongAdder usageMillis = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private volatile PoolStats poolStats;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                created.increment();
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquired.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+                maxAcquireNanos.accumulate(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                released.increment();
+                usageMillis.add(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    /** @return connections handed out and not yet returned, refreshed by the pool at most once a second */
+    public int getActiveConnections() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getActiveConnections();
+    }
+
+    /** @return connections open and ready to be handed out */
+    public int getIdleConnections() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getIdleConnections();
+    }
+
+    /** @return threads waiting for a connection */
+    public int getWaitingThreads() {
+        PoolStats stats = poolStats;
+        return stats == null ? 0 : stats.getPendingThreads();
+    }
+
+    public long getAcquiredCount() {
+        return acquired.sum();
+    }
+
+    /** @return connections opened since the metrics were installed, e.g. to replace ones past their maxLifetime */
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    /** @return the mean time a thread waited for a connection */
+    public long getMeanWaitNanos() {
+        long count = acquired.sum();
+        return count == 0 ? 0 : acquireNanos.sum() / count;
+    }
+
+    public long getMaxWaitNanos() {
+        return maxAcquireNanos.get();
+    }
+
+    /** @return the mean time a connection was held before it was returned */
+    public long getMeanUsageMillis() {
+        long count = released.sum();
+        return count == 0 ? 0 : usageMillis.sum() / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("active=%d, idle=%d, waiting=%d, acquired=%d, mean wait=%dus, max wait=%dus, " +
+                        "mean use=%dms, created=%d, timeouts=%d",
+                getActiveConnections(),
+                getIdleConnections(),
+                getWaitingThreads(),
+                getAcquiredCount(),
+                TimeUnit.NANOSECONDS.toMicros(getMeanWaitNanos()),
+                TimeUnit.NANOSECONDS.toMicros(getMaxWaitNanos()),
+                getMeanUsageMillis(),
+                getCreatedCount(),
+                getTimeoutCount());
+    }
+}
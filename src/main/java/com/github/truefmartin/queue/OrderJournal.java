@@ -0,0 +1,430 @@
+package com.github.truefmartin.queue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * Takes orders into a memory-mapped file before they reach the database, so an order is kept once
+ * {@link #append} returns even if the database is slow or down. A replayer thread then writes the journaled
+ * orders to the database in batches, retrying until it succeeds.
+ * <p>
+ * Each order is a fixed-size record: its sequence number, item number, date and time, and a CRC32C checksum.
+ * Appenders that arrive while the file is being forced to disk wait and are then forced together, so there is one
+ * force per group of appends rather than one each. On open, the journal ends at the first record whose checksum
+ * or sequence number does not match, e.g. one torn by a crash before its append returned.
+ * <p>
+ * The journal has a random id, stored in its header. The {@link Sink} records the last sequence number it wrote
+ * for the id in the same transaction as the orders, and skips what it already wrote, so orders replayed again after
+ * a crash are not added twice. Once every record is replayed the file is reused from the start.
+ */
+// close() waits for the replayer thread, so it can be interrupted
+@SuppressWarnings("try")
+public class OrderJournal implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(OrderJournal.class);
+    private static final int MAGIC = 0x4F524A4E; // ORJN
+    // Header
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int RECORD_SIZE_OFFSET = 4;
+    private static final int ID_OFFSET = 8;
+    private static final int FIRST_SEQUENCE_OFFSET = 24;
+    // Record: the checksum covers the bytes before it
+    private static final int RECORD_SIZE = 32;
+    private static final int SEQUENCE = 0;
+    private static final int ITEM_NO = 8;
+    private static final int EPOCH_DAY = 12;
+    private static final int SECOND_OF_DAY = 16;
+    private static final int CHECKSUM = 24;
+    private static final int MIN_CAPACITY = 4096;
+    // Replayed records kept before the file is reused from the start, which costs a force of the header
+    private static final int COMPACT_RECORDS = 4096;
+    // How often an idle replayer checks whether the journal was closed
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    /**
+     * Writes journaled orders to the database, e.g. a Model.
+     */
+    public interface Sink {
+        /**
+         * Adds the orders of the entries, in one transaction with the last sequence number written for the journal.
+         * Entries at or below the sequence number already written are skipped.
+         * @param journalId the id of the journal
+         * @param entries the entries, in sequence order
+         */
+        void write(String journalId, List<Entry> entries);
+    }
+
+    /**
+     * One journaled order.
+     */
+    public static final class Entry {
+        private final long sequence;
+        private final int itemNo;
+        private final LocalDate date;
+        private final LocalTime time;
+
+        Entry(long sequence, int itemNo, LocalDate date, LocalTime time) {
+            this.sequence = sequence;
+            this.itemNo = itemNo;
+            this.date = date;
+            this.time = time;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public int getItemNo() {
+            return itemNo;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public LocalTime getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{sequence=" + sequence + ", itemNo=" + itemNo + ", date=" + date + ", time=" + time + '}';
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final String journalId;
+    private final Sink sink;
+    private final int maxBatch;
+    private final long retryMillis;
+    private final Thread thread;
+    // The mapping, records and first sequence are guarded by this
+    private volatile MappedByteBuffer buffer;
+    private int capacity;
+    private long firstSequence;
+    private int count;
+    // Forced and replayed sequence numbers are guarded by syncLock, which is taken before this
+    private final Object syncLock = new Object();
+    private long synced;
+    private long replayed;
+    private volatile boolean closed;
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Opens the journal, creating it if the file does not exist, and starts the replayer thread,
+     * which begins with the records left from before.
+     * @param path the file
+     * @param sink writes the orders to the database
+     * @param maxBatch the most orders written in one transaction
+     * @param retryMillis how long the replayer waits after a failed write before trying again
+     * @throws IllegalStateException if the file is not an order journal
+     */
+    public OrderJournal(Path path, Sink sink, int maxBatch, long retryMillis) throws IOException {
+        if (maxBatch < 1 || retryMillis < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "invalid order journal settings: maxBatch=%d, retry=%dms", maxBatch, retryMillis));
+        }
+        this.path = path;
+        this.sink = sink;
+        this.maxBatch = maxBatch;
+        this.retryMillis = retryMillis;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                map(MIN_CAPACITY);
+                UUID id = UUID.randomUUID();
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+                buffer.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);
+                buffer.putLong(ID_OFFSET, id.getMostSignificantBits());
+                buffer.putLong(ID_OFFSET + Long.BYTES, id.getLeastSignificantBits());
+                buffer.putLong(FIRST_SEQUENCE_OFFSET, 1);
+                buffer.force();
+            } else {
+                map((int) Math.max(MIN_CAPACITY, (channel.size() - HEADER_SIZE) / RECORD_SIZE));
+                if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+                    throw new IllegalStateException(path + " is not an order journal");
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        journalId = new UUID(buffer.getLong(ID_OFFSET), buffer.getLong(ID_OFFSET + Long.BYTES)).toString();
+        firstSequence = buffer.getLong(FIRST_SEQUENCE_OFFSET);
+        while (count < capacity && isValid(count)) {
+            count++;
+        }
+        // What is in the file is on disk, or as good as, and may not have been replayed
+        synced = firstSequence + count - 1;
+        replayed = firstSequence - 1;
+        if (count > 0) {
+            logger.info("order journal {} has {} orders to replay", path, count);
+        }
+        thread = new Thread(this::run, "order-journal-replayer");
+        // Does not keep the JVM running, the orders left are replayed on the next start
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Adds an order to the journal and returns once it is forced to disk.
+     * @param itemNo the menu item ordered
+     * @param date the date of the order
+     * @param time the time of the order, kept to the second as the time column is
+     * @return the sequence number of the order in the journal
+     * @throws IllegalStateException if the journal is closed
+     */
+    public long append(int itemNo, LocalDate date, LocalTime time) {
+        long sequence = write(itemNo, date, time);
+        sync(sequence);
+        appended.increment();
+        return sequence;
+    }
+
+    /**
+     * Waits until every order appended so far has been written to the database, which may be never if it stays down.
+     * Returns early if the journal is closed.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        synchronized (syncLock) {
+            long target = synced;
+            while (replayed < target && !closed) {
+                syncLock.wait(IDLE_POLL_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * @return the id the database records the replayed sequence number under
+     */
+    public String getJournalId() {
+        return journalId;
+    }
+
+    /**
+     * @return the number of orders in the journal not yet written to the database
+     */
+    public long getPending() {
+        synchronized (syncLock) {
+            return synced - replayed;
+        }
+    }
+
+    /**
+     * Stops accepting orders and stops the replayer once it has written what it can. Orders it could not write
+     * stay in the file and are replayed when the journal is opened again.
+     */
+    @Override
+    public void close() throws IOException, InterruptedException {
+        synchronized (syncLock) {
+            closed = true;
+            syncLock.notifyAll();
+        }
+        thread.join();
+        synchronized (syncLock) {
+            compact(1);
+        }
+        synchronized (this) {
+            buffer.force();
+            channel.close();
+        }
+    }
+
+    /**
+     * @return orders pending, appended, forced and written, and the average orders per force and per transaction
+     */
+    @Override
+    public String toString() {
+        long syncCount = syncs.sum();
+        long batchCount = batches.sum();
+        return String.format("%s: pending=%d, appended=%d, syncs=%d, orders/sync=%.1f, written=%d, batches=%d, "
+                        + "orders/batch=%.1f, write failures=%d",
+                path.getFileName(), getPending(), appended.sum(), syncCount,
+                syncCount == 0 ? 0 : (double) appended.sum() / syncCount, written.sum(), batchCount,
+                batchCount == 0 ? 0 : (double) written.sum() / batchCount, failures.sum());
+    }
+
+    private synchronized long write(int itemNo, LocalDate date, LocalTime time) {
+        if (closed) {
+            throw new IllegalStateException("the order journal is closed");
+        }
+        ensureCapacity(count + 1);
+        long sequence = firstSequence + count;
+        int at = offset(count);
+        buffer.putLong(at + SEQUENCE, sequence);
+        buffer.putInt(at + ITEM_NO, itemNo);
+        buffer.putInt(at + EPOCH_DAY, (int) date.toEpochDay());
+        buffer.putInt(at + SECOND_OF_DAY, time.toSecondOfDay());
+        buffer.putInt(at + CHECKSUM, checksum(at));
+        count++;
+        return sequence;
+    }
+
+    // Forces the file unless a force that started after the record was written already covered it. Appenders
+    // that wait here while one forces are covered together by the next force.
+    private void sync(long sequence) {
+        synchronized (syncLock) {
+            if (synced >= sequence) {
+                return;
+            }
+            long last;
+            MappedByteBuffer mapped;
+            synchronized (this) {
+                last = firstSequence + count - 1;
+                // Maps the whole file, so it covers records written through an earlier, smaller mapping too
+                mapped = buffer;
+            }
+            mapped.force();
+            synced = last;
+            syncs.increment();
+            syncLock.notifyAll();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            List<Entry> batch;
+            try {
+                batch = awaitEntries();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == null) {
+                return;
+            }
+            try {
+                sink.write(journalId, batch);
+            } catch (RuntimeException e) {
+                failures.increment();
+                logger.error("writing {} journaled orders failed, retrying in {}ms: {}", batch.size(), retryMillis, e.getMessage());
+                if (!pause()) {
+                    return;
+                }
+                continue;
+            }
+            written.add(batch.size());
+            batches.increment();
+            synchronized (syncLock) {
+                replayed = batch.get(batch.size() - 1).getSequence();
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    // The next forced records not replayed yet, waiting for some, null once closed with none left
+    private List<Entry> awaitEntries() throws InterruptedException {
+        long last;
+        synchronized (syncLock) {
+            while (synced <= replayed) {
+                if (closed) {
+                    return null;
+                }
+                compact(COMPACT_RECORDS);
+                syncLock.wait(IDLE_POLL_MILLIS);
+            }
+            last = Math.min(synced, replayed + maxBatch);
+        }
+        List<Entry> entries = new ArrayList<>((int) (last - replayed));
+        synchronized (this) {
+            for (long sequence = replayed + 1; sequence <= last; sequence++) {
+                int at = offset((int) (sequence - firstSequence));
+                entries.add(new Entry(sequence, buffer.getInt(at + ITEM_NO),
+                        LocalDate.ofEpochDay(buffer.getInt(at + EPOCH_DAY)), LocalTime.ofSecondOfDay(buffer.getInt(at + SECOND_OF_DAY))));
+            }
+        }
+        return entries;
+    }
+
+    // Waits out the retry delay, false if the journal was closed meanwhile
+    private boolean pause() {
+        synchronized (syncLock) {
+            try {
+                if (!closed) {
+                    syncLock.wait(retryMillis);
+                }
+            } catch (InterruptedException e) {
+                return false;
+            }
+            return !closed;
+        }
+    }
+
+    // Once every record is replayed and there are at least minRecords, starts the next record at the front of the file.
+    // The header moves to the next sequence number first, so after a crash the old records no longer match it.
+    // Callers hold syncLock.
+    private void compact(int minRecords) {
+        synchronized (this) {
+            if (count < minRecords || replayed != firstSequence + count - 1) {
+                return;
+            }
+            firstSequence += count;
+            count = 0;
+            buffer.putLong(FIRST_SEQUENCE_OFFSET, firstSequence);
+            buffer.force();
+        }
+    }
+
+    private boolean isValid(int index) {
+        int at = offset(index);
+        return buffer.getLong(at + SEQUENCE) == firstSequence + index && buffer.getInt(at + CHECKSUM) == checksum(at);
+    }
+
+    private int checksum(int at) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer record = buffer.duplicate();
+        record.position(at).limit(at + CHECKSUM);
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private static int offset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private void ensureCapacity(int records) {
+        if (records <= capacity) {
+            return;
+        }
+        long newCapacity = capacity;
+        while (newCapacity < records) {
+            newCapacity *= 2;
+        }
+        if (HEADER_SIZE + newCapacity * RECORD_SIZE > Integer.MAX_VALUE) {
+            newCapacity = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+            if (newCapacity < records) {
+                throw new IllegalStateException(path + " is full at " + capacity + " orders not yet replayed");
+            }
+        }
+        try {
+            map((int) newCapacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not grow " + path, e);
+        }
+    }
+
+    private void map(int records) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) records * RECORD_SIZE);
+        capacity = records;
+    }
+}
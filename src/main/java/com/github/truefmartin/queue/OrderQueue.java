@@ -0,0 +1,337 @@
+package com.github.truefmartin.queue;
+
+import com.github.truefmartin.models.FoodOrderEntity;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.JDBCConnectionException;
+import org.hibernate.exception.LockAcquisitionException;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Accepts orders into a bounded queue and writes them behind the caller's back, many orders per transaction.
+ * One writer thread takes every order waiting in the queue, up to maxBatch, and hands them to the writer function
+ * in one call. When the queue holds fewer, it waits up to maxDelay after the first for more to arrive,
+ * so under load each commit carries the orders that came in during the previous one.
+ * <p>
+ * {@link #put(FoodOrderEntity)} blocks while the queue is full, so callers slow down to the rate the database takes.
+ * A batch that fails for a lost connection, a pool or lock timeout or a deadlock is written again, whole, after a delay
+ * that doubles with each failure, for as long as the queue is open. A batch that breaks a constraint is written again
+ * one order at a time, so one bad order only fails itself. An order that cannot be written is handed to the dead letter
+ * function rather than dropped, and the next {@link #flush()} or {@link #close()} reports it.
+ * {@link #close()} stops accepting orders and returns once every accepted order has been written or handed over.
+ */
+// close() waits for the writer thread, so it can be interrupted
+@SuppressWarnings("try")
+public class OrderQueue implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(OrderQueue.class);
+    // How often an idle writer checks whether the queue was closed
+    private static final long IDLE_POLL_MILLIS = 100;
+    // The delay between retries stops doubling at this many times the first one
+    private static final int MAX_BACKOFF = 32;
+    // Retries of a failing batch once the queue is closed, after which its orders are handed to the dead letter function
+    private static final int CLOSING_RETRIES = 3;
+
+    private final BlockingQueue<FoodOrderEntity> queue;
+    private final Consumer<List<FoodOrderEntity>> writer;
+    private final Consumer<List<FoodOrderEntity>> deadLetter;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final long putTimeoutNanos;
+    private final long retryMillis;
+    private final Thread thread;
+    // Orders accepted and not yet written or failed, flush waits for it to reach 0
+    private final Object pendingLock = new Object();
+    private volatile boolean closed;
+    private long pending;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    // Failed orders already reported by flush or close, guarded by pendingLock
+    private long failedReported;
+
+    /**
+     * Starts the writer thread.
+     * @param writer writes a batch of orders in one transaction, e.g. Model::addOrders
+     * @param deadLetter keeps the orders that could not be written, e.g. in a file
+     * @param capacity the most orders waiting to be written
+     * @param maxBatch the most orders written in one transaction
+     * @param maxDelayMillis how long the first order of a batch waits for more orders, 0 to write what is queued right away
+     * @param putTimeoutMillis how long put waits for room in a full queue before giving up
+     * @param retryMillis how long a failed batch waits before it is written again, doubling with each failure
+     */
+    public OrderQueue(Consumer<List<FoodOrderEntity>> writer, Consumer<List<FoodOrderEntity>> deadLetter,
+                      int capacity, int maxBatch, long maxDelayMillis, long putTimeoutMillis, long retryMillis) {
+        if (capacity < 1 || maxBatch < 1 || maxDelayMillis < 0 || putTimeoutMillis < 0 || retryMillis < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "invalid order queue settings: capacity=%d, maxBatch=%d, maxDelay=%dms, putTimeout=%dms, retry=%dms",
+                    capacity, maxBatch, maxDelayMillis, putTimeoutMillis, retryMillis));
+        }
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = writer;
+        this.deadLetter = deadLetter;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.putTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(putTimeoutMillis);
+        this.retryMillis = retryMillis;
+        this.thread = new Thread(this::run, "order-queue-writer");
+        // Does not keep the JVM running, close writes the queued orders
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues an order to be written, waiting for room if the queue is full.
+     * @param order the order, with its menu item number, date and time set
+     * @throws IllegalStateException if the queue is closed or stays full for longer than the put timeout
+     */
+    public void put(FoodOrderEntity order) {
+        synchronized (pendingLock) {
+            if (closed) {
+                throw new IllegalStateException("the order queue is closed");
+            }
+            pending++;
+        }
+        boolean queued = false;
+        try {
+            queued = queue.offer(order, putTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!queued) {
+                done(1);
+            }
+        }
+        if (!queued) {
+            throw new IllegalStateException("the order queue stayed full for " +
+                    TimeUnit.NANOSECONDS.toMillis(putTimeoutNanos) + "ms, the database is falling behind");
+        }
+    }
+
+    /**
+     * Waits until every order accepted so far has been written or handed to the dead letter function.
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if orders were handed to the dead letter function since the last flush or close
+     */
+    public void flush() throws InterruptedException {
+        synchronized (pendingLock) {
+            while (pending > 0) {
+                pendingLock.wait();
+            }
+        }
+        reportFailed();
+    }
+
+    /**
+     * Stops accepting orders, writes every order already accepted and stops the writer thread. A batch still failing
+     * is retried a few more times before its orders are handed to the dead letter function.
+     * @throws IllegalStateException if orders were handed to the dead letter function since the last flush or close
+     */
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (pendingLock) {
+            closed = true;
+            // Ends a retry delay early
+            pendingLock.notifyAll();
+        }
+        thread.join();
+        reportFailed();
+    }
+
+    /**
+     * @return orders waiting, written and failed, the retries of failed writes and the average orders per transaction
+     */
+    @Override
+    public String toString() {
+        long batchCount = batches.sum();
+        return String.format("queued=%d, written=%d, failed=%d, retries=%d, batches=%d, orders/batch=%.1f",
+                queue.size(), written.sum(), failed.sum(), retries.sum(), batchCount,
+                batchCount == 0 ? 0 : (double) written.sum() / batchCount);
+    }
+
+    private void run() {
+        List<FoodOrderEntity> batch = new ArrayList<>(maxBatch);
+        try {
+            while (true) {
+                FoodOrderEntity first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // put checks closed and counts the order under one lock, so once closed nothing pending is missed
+                    if (closed && isIdle()) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                fill(batch);
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            logger.error("order queue writer interrupted with {} orders not written", queue.size() + batch.size());
+        }
+    }
+
+    // Adds what is queued, then, unless closing, waits out the rest of maxDelay for more
+    private void fill(List<FoodOrderEntity> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelayNanos;
+        queue.drainTo(batch, maxBatch - batch.size());
+        while (batch.size() < maxBatch && !closed) {
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0) {
+                return;
+            }
+            FoodOrderEntity next = queue.poll(wait, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatch - batch.size());
+        }
+    }
+
+    private void write(List<FoodOrderEntity> batch) {
+        try {
+            RuntimeException failure = writeWithRetries(batch);
+            if (failure == null) {
+                return;
+            }
+            if (!isConstraintViolation(failure)) {
+                logger.error("writing {} queued orders failed: {}", batch.size(), failure.getMessage());
+                deadLetter(batch, failure);
+                return;
+            }
+            logger.error("writing {} queued orders failed, retrying them one at a time: {}", batch.size(), failure.getMessage());
+            for (FoodOrderEntity order : batch) {
+                RuntimeException orderFailure = writeWithRetries(List.of(order));
+                if (orderFailure != null) {
+                    deadLetter(List.of(order), orderFailure);
+                }
+            }
+        } finally {
+            done(batch.size());
+        }
+    }
+
+    // Writes the orders, again after a growing delay while the failures are transient, and returns the failure that ended it
+    private RuntimeException writeWithRetries(List<FoodOrderEntity> orders) {
+        long delay = retryMillis;
+        int closingRetries = 0;
+        while (true) {
+            try {
+                writer.accept(orders);
+                written.add(orders.size());
+                batches.increment();
+                return null;
+            } catch (RuntimeException e) {
+                // The failed transaction may have assigned orderNos that were rolled back
+                for (FoodOrderEntity order : orders) {
+                    order.setOrderNo(0);
+                }
+                if (!isTransient(e) || (closed && closingRetries++ == CLOSING_RETRIES)) {
+                    return e;
+                }
+                retries.increment();
+                logger.warn("writing {} queued orders failed, retrying in {}ms: {}", orders.size(), delay, e.getMessage());
+                if (!pause(delay)) {
+                    return e;
+                }
+                delay = Math.min(delay * 2, retryMillis * MAX_BACKOFF);
+            }
+        }
+    }
+
+    // Waits out a retry delay, which close ends early, false if interrupted
+    private boolean pause(long millis) {
+        synchronized (pendingLock) {
+            try {
+                if (millis > 0) {
+                    pendingLock.wait(millis);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private void deadLetter(List<FoodOrderEntity> orders, RuntimeException cause) {
+        failed.add(orders.size());
+        try {
+            deadLetter.accept(orders);
+        } catch (RuntimeException e) {
+            // The log is all that is left of them
+            for (FoodOrderEntity order : orders) {
+                logger.error("lost queued order of item {} at {} {}: {}, then {}", order.getMenu().getItemNo(),
+                        order.getDate(), order.getTime(), cause.getMessage(), e.getMessage());
+            }
+        }
+    }
+
+    private void reportFailed() {
+        long unreported;
+        synchronized (pendingLock) {
+            unreported = failed.sum() - failedReported;
+            failedReported += unreported;
+        }
+        if (unreported > 0) {
+            throw new IllegalStateException(unreported + " queued orders could not be written and were set aside");
+        }
+    }
+
+    // A lost or refused connection, a pool or lock timeout or a deadlock, which the same write may get past later
+    private static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JDBCConnectionException || cause instanceof LockAcquisitionException
+                    || cause instanceof SQLTransientException || cause instanceof SQLRecoverableException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                // Connection exceptions and transaction rollbacks, such as deadlocks
+                String state = ((SQLException) cause).getSQLState();
+                return state != null && (state.startsWith("08") || state.startsWith("40"));
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConstraintViolation(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException || cause instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                return state != null && state.startsWith("23");
+            }
+        }
+        return false;
+    }
+
+    private void done(int orders) {
+        synchronized (pendingLock) {
+            pending -= orders;
+            if (pending == 0) {
+                pendingLock.notifyAll();
+            }
+        }
+    }
+
+    private boolean isIdle() {
+        synchronized (pendingLock) {
+            return pending == 0;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.truefmartin.stats;
+
+import org.hibernate.stat.Statistics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and SQL statement, entity and row counts for each named operation.
+ * Operations are measured with {@link #start(String)}:
+ * <pre>{@code
+ * try (var timer = stats.start("getRestaurant")) {
+ *     ...
+ *     timer.rows(1);
+ * }
+ * }</pre>
+ * Statements are counted per thread by the {@link StatementCounter}. Entity loads come from Hibernate's
+ * {@link Statistics}, which only keeps totals, so operations running at the same time share their counts.
+ */
+public class OperationStats {
+    private final StatementCounter statementCounter;
+    private final Statistics statistics;
+    private final Map<String, Operation> operations = new ConcurrentSkipListMap<>();
+
+    public OperationStats(StatementCounter statementCounter, Statistics statistics) {
+        this.statementCounter = statementCounter;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Starts measuring one call of an operation, recorded when the timer is closed, also if the call throws.
+     * @param operation the name of the operation
+     * @return the timer to close when the call returns
+     */
+    public Timer start(String operation) {
+        return new Timer(operations.computeIfAbsent(operation, name -> new Operation()));
+    }
+
+    /**
+     * @return one line per operation with its call count, latency percentiles and per call SQL, entity and row counts
+     */
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>(operations.size());
+        operations.forEach((name, operation) -> lines.add(name + ": " + operation));
+        return lines;
+    }
+
+    /**
+     * Replaces the file with the current description, written to a temporary file first
+     * so that a reader never sees half of it.
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void dump(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# " + Instant.now());
+        lines.addAll(describe());
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, lines, StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * One call of an operation. Not thread-safe, it belongs to the thread that started it.
+     */
+    public final class Timer implements AutoCloseable {
+        private final Operation operation;
+        private final long startNanos;
+        private final long startStatements;
+        private final long startEntityLoads;
+        private long rows;
+
+        private Timer(Operation operation) {
+            this.operation = operation;
+            this.startStatements = statementCounter.getThreadCount();
+            this.startEntityLoads = statistics.getEntityLoadCount();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * @param rows the number of rows the call returned or changed
+         */
+        public void rows(long rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public void close() {
+            operation.latency.record(System.nanoTime() - startNanos);
+            operation.statements.add(statementCounter.getThreadCount() - startStatements);
+            operation.entityLoads.add(statistics.getEntityLoadCount() - startEntityLoads);
+            operation.rows.add(rows);
+        }
+    }
+
+    private static final class Operation {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder entityLoads = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        @Override
+        public String toString() {
+            long calls = latency.getCount();
+            return String.format("calls=%d, p50=%dus, p90=%dus, p99=%dus, max=%dus, " +
+                            "statements/call=%.1f, entities/call=%.1f, rows/call=%.1f",
+                    calls,
+                    micros(latency.getPercentileNanos(50)),
+                    micros(latency.getPercentileNanos(90)),
+                    micros(latency.getPercentileNanos(99)),
+                    micros(latency.getMaxNanos()),
+                    perCall(statements, calls),
+                    perCall(entityLoads, calls),
+                    perCall(rows, calls));
+        }
+
+        private static long micros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+
+        private static double perCall(LongAdder total, long calls) {
+            return calls == 0 ? 0 : (double) total.sum() / calls;
+        }
+    }
+}
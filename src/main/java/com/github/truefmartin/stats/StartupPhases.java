@@ -0,0 +1,39 @@
+package com.github.truefmartin.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the consecutive phases of starting up. Each {@link #mark(String)} ends a phase that began at the previous mark,
+ * or when this was created.
+ */
+public class StartupPhases {
+    private final long startNanos = System.nanoTime();
+    private final List<String> names = new ArrayList<>();
+    private final List<Long> nanos = new ArrayList<>();
+    private long lastNanos = startNanos;
+
+    /**
+     * Ends the current phase.
+     * @param phase what was done since the previous mark
+     */
+    public synchronized void mark(String phase) {
+        long now = System.nanoTime();
+        names.add(phase);
+        nanos.add(now - lastNanos);
+        lastNanos = now;
+    }
+
+    /**
+     * @return each phase with its milliseconds, and the total up to the last mark
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < names.size(); i++) {
+            out.append(names.get(i)).append(' ').append(TimeUnit.NANOSECONDS.toMillis(nanos.get(i))).append("ms, ");
+        }
+        return out.append("total ").append(TimeUnit.NANOSECONDS.toMillis(lastNanos - startNanos)).append("ms").toString();
+    }
+}
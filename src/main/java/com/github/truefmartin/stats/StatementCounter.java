@@ -0,0 +1,25 @@
+package com.github.truefmartin.stats;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares, per thread, so an operation can tell how many statements it issued
+ * while other threads run their own. Install it with
+ * {@link org.hibernate.cfg.Configuration#setStatementInspector(StatementInspector)}.
+ */
+// StatementInspector is Serializable, but the counter lives in one SessionFactory and is never serialized
+@SuppressWarnings("serial")
+public class StatementCounter implements StatementInspector {
+    private final ThreadLocal<long[]> statements = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public String inspect(String sql) {
+        statements.get()[0]++;
+        return sql;
+    }
+
+    /** @return the statements prepared by the calling thread so far */
+    public long getThreadCount() {
+        return statements.get()[0];
+    }
+}
@@ -0,0 +1,515 @@
+package com.github.truefmartin.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A B+tree of (key, value) entries in a file of 4 KiB pages, e.g. a secondary index from a name to the ids
+ * of its rows. Keys are fixed-size byte strings compared unsigned, so big-endian numbers and chars sort in their
+ * natural order and a range of keys answers both exact and prefix searches. An entry is unique by key and value
+ * together, so a key can have any number of values, returned in value order.
+ * <p>
+ * Pages are read through a {@link PageCache}. Deleted entries leave their leaf underfull rather than merging it.
+ * The header records whether the file was flushed after its last change: one that was not, e.g. after a crash,
+ * reports {@link #needsRebuild()} and is rebuilt with {@link #bulkLoad}. Not thread-safe for writes,
+ * callers lock around them; reads may run in parallel with each other.
+ */
+public class BPlusTree implements AutoCloseable {
+    private static final int MAGIC = 0x42505452; // BPTR
+    // Header page
+    private static final int MAGIC_OFFSET = 0;
+    private static final int KEY_SIZE_OFFSET = 4;
+    private static final int ROOT_OFFSET = 8;
+    private static final int PAGE_COUNT_OFFSET = 12;
+    private static final int ENTRIES_OFFSET = 16;
+    private static final int CLEAN_OFFSET = 24;
+    // Node pages: type, entry count, then the next leaf, or the leftmost child of an internal node
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+    private static final int TYPE = 0;
+    private static final int COUNT = 1;
+    private static final int LINK = 4;
+    private static final int ENTRIES = 8;
+    private static final int BULK_LOAD_FILL_PERCENT = 90;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final PageCache cache;
+    private final int keySize;
+    private final int leafEntrySize;
+    private final int internalEntrySize;
+    private final int leafCapacity;
+    private final int internalCapacity;
+    private final boolean needsRebuild;
+    private int root;
+    private int pageCount;
+    private long entries;
+    private boolean clean;
+
+    /**
+     * Opens a tree, creating an empty one if the file does not exist.
+     * @param path the file
+     * @param keySize the bytes of every key
+     * @param cachePages the number of pages kept in memory
+     */
+    public BPlusTree(Path path, int keySize, int cachePages) throws IOException {
+        this.path = path;
+        this.keySize = keySize;
+        leafEntrySize = keySize + Integer.BYTES;
+        internalEntrySize = keySize + 2 * Integer.BYTES;
+        leafCapacity = (PageCache.PAGE_SIZE - ENTRIES) / leafEntrySize;
+        internalCapacity = (PageCache.PAGE_SIZE - ENTRIES) / internalEntrySize;
+        if (internalCapacity < 3) {
+            throw new IllegalArgumentException("keys of " + keySize + " bytes do not fit 3 to a page");
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        cache = new PageCache(channel, cachePages);
+        ByteBuffer header = cache.read(0);
+        boolean valid = channel.size() >= 2L * PageCache.PAGE_SIZE
+                && header.getInt(MAGIC_OFFSET) == MAGIC
+                && header.getInt(KEY_SIZE_OFFSET) == keySize;
+        if (valid) {
+            root = header.getInt(ROOT_OFFSET);
+            pageCount = header.getInt(PAGE_COUNT_OFFSET);
+            entries = header.getLong(ENTRIES_OFFSET);
+            clean = header.get(CLEAN_OFFSET) == 1;
+        }
+        needsRebuild = !valid || !clean;
+        if (!valid) {
+            clear();
+        }
+    }
+
+    /**
+     * @return true if the file is new, of another key size, or was changed and not flushed, so its entries
+     * may not match the rows it indexes
+     */
+    public boolean needsRebuild() {
+        return needsRebuild;
+    }
+
+    /**
+     * @return the bytes of every key
+     */
+    public int getKeySize() {
+        return keySize;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public long size() {
+        return entries;
+    }
+
+    /**
+     * Adds an entry, unless it is already in the tree.
+     * @return true if it was added
+     */
+    public boolean insert(byte[] key, int value) {
+        checkKey(key);
+        startChange();
+        cache.beginWrite();
+        try {
+            Split split = insert(root, key, value);
+            if (split == Split.DUPLICATE) {
+                return false;
+            }
+            if (split != null) {
+                int newRoot = pageCount++;
+                ByteBuffer page = cache.create(newRoot);
+                page.put(TYPE, INTERNAL);
+                page.putInt(LINK, root);
+                insertInPlace(page, 0, internalEntrySize, 0, split.key, split.value, split.page);
+                root = newRoot;
+            }
+            entries++;
+            return true;
+        } finally {
+            cache.endWrite();
+        }
+    }
+
+    /**
+     * Removes an entry.
+     * @return true if it was in the tree
+     */
+    public boolean delete(byte[] key, int value) {
+        checkKey(key);
+        int pageNo = leafOf(key, value);
+        ByteBuffer page = cache.read(pageNo);
+        int count = count(page);
+        int position = lowerBound(page, count, key, value);
+        if (position == count || compareLeaf(page, position, key, value) != 0) {
+            return false;
+        }
+        startChange();
+        page = cache.write(pageNo);
+        int at = ENTRIES + position * leafEntrySize;
+        System.arraycopy(page.array(), at + leafEntrySize, page.array(), at, (count - position - 1) * leafEntrySize);
+        setCount(page, count - 1);
+        entries--;
+        return true;
+    }
+
+    /**
+     * Passes the values of every entry with a key from low to high, both included, in key then value order.
+     * Low and high can pad a prefix with 0x00 and 0xFF bytes to find every key that starts with it.
+     * @return the number of values passed
+     */
+    public int range(byte[] low, byte[] high, IntConsumer consumer) {
+        checkKey(low);
+        checkKey(high);
+        int pageNo = leafOf(low, Integer.MIN_VALUE);
+        ByteBuffer page = cache.read(pageNo);
+        int position = lowerBound(page, count(page), low, Integer.MIN_VALUE);
+        int found = 0;
+        while (true) {
+            int count = count(page);
+            for (; position < count; position++) {
+                int at = ENTRIES + position * leafEntrySize;
+                if (compareKey(page, at, high) > 0) {
+                    return found;
+                }
+                consumer.accept(page.getInt(at + keySize));
+                found++;
+            }
+            pageNo = page.getInt(LINK);
+            if (pageNo == 0) {
+                return found;
+            }
+            page = cache.read(pageNo);
+            position = 0;
+        }
+    }
+
+    /**
+     * Replaces the whole tree with the given entries, writing the leaves from left to right instead of inserting
+     * one entry at a time. Nodes are left 10% empty, so the first inserts after do not split them.
+     * The entries may be in any order.
+     * @param keys the keys of the entries, one after the other, keySize bytes each
+     * @param values the values of the entries
+     */
+    public void bulkLoad(byte[] keys, int[] values) {
+        if (keys.length != values.length * keySize) {
+            throw new IllegalArgumentException(values.length + " values need " + values.length * keySize + " key bytes, got " + keys.length);
+        }
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byKey = Arrays.compareUnsigned(keys, a * keySize, (a + 1) * keySize, keys, b * keySize, (b + 1) * keySize);
+            return byKey != 0 ? byKey : Integer.compare(values[a], values[b]);
+        });
+        startChange();
+        cache.clear();
+        try {
+            channel.truncate(PageCache.PAGE_SIZE);
+            pageCount = 1;
+            // Leaves, and the first entry of each to separate it from the one before in the level above
+            int perLeaf = Math.max(1, leafCapacity * BULK_LOAD_FILL_PERCENT / 100);
+            int leaves = Math.max(1, (order.length + perLeaf - 1) / perLeaf);
+            int[] levelPages = new int[leaves];
+            byte[] levelKeys = new byte[leaves * keySize];
+            int[] levelValues = new int[leaves];
+            ByteBuffer page = ByteBuffer.allocate(PageCache.PAGE_SIZE);
+            int previous = 0;
+            for (int leaf = 0; leaf < leaves; leaf++) {
+                Arrays.fill(page.array(), (byte) 0);
+                page.put(TYPE, LEAF);
+                int from = leaf * perLeaf;
+                int to = Math.min(order.length, from + perLeaf);
+                for (int i = from; i < to; i++) {
+                    int at = ENTRIES + (i - from) * leafEntrySize;
+                    System.arraycopy(keys, order[i] * keySize, page.array(), at, keySize);
+                    page.putInt(at + keySize, values[order[i]]);
+                }
+                setCount(page, to - from);
+                int pageNo = pageCount++;
+                if (previous != 0) {
+                    // The next link of the previous leaf is only known now
+                    ByteBuffer link = ByteBuffer.allocate(Integer.BYTES);
+                    link.putInt(0, pageNo);
+                    channel.write(link, (long) previous * PageCache.PAGE_SIZE + LINK);
+                }
+                PageCache.writePage(channel, pageNo, page);
+                previous = pageNo;
+                levelPages[leaf] = pageNo;
+                if (from < to) {
+                    System.arraycopy(keys, order[from] * keySize, levelKeys, leaf * keySize, keySize);
+                    levelValues[leaf] = values[order[from]];
+                }
+            }
+            // Internal levels until one node is left
+            int perNode = Math.max(2, internalCapacity * BULK_LOAD_FILL_PERCENT / 100) + 1;
+            int nodes = levelPages.length;
+            while (nodes > 1) {
+                int parents = (nodes + perNode - 1) / perNode;
+                for (int parent = 0; parent < parents; parent++) {
+                    Arrays.fill(page.array(), (byte) 0);
+                    page.put(TYPE, INTERNAL);
+                    int from = parent * perNode;
+                    int to = Math.min(nodes, from + perNode);
+                    page.putInt(LINK, levelPages[from]);
+                    for (int child = from + 1; child < to; child++) {
+                        int at = ENTRIES + (child - from - 1) * internalEntrySize;
+                        System.arraycopy(levelKeys, child * keySize, page.array(), at, keySize);
+                        page.putInt(at + keySize, levelValues[child]);
+                        page.putInt(at + keySize + Integer.BYTES, levelPages[child]);
+                    }
+                    setCount(page, to - from - 1);
+                    int pageNo = pageCount++;
+                    PageCache.writePage(channel, pageNo, page);
+                    // A node's first entry is its first child's
+                    levelPages[parent] = pageNo;
+                    System.arraycopy(levelKeys, from * keySize, levelKeys, parent * keySize, keySize);
+                    levelValues[parent] = levelValues[from];
+                }
+                nodes = parents;
+            }
+            root = levelPages[0];
+            entries = values.length;
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not bulk load " + path, e);
+        }
+    }
+
+    /**
+     * Writes the changed pages and marks the file as up to date with the rows it indexes.
+     */
+    public void flush() {
+        if (clean) {
+            return;
+        }
+        cache.flush();
+        force();
+        clean = true;
+        writeHeader();
+        force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: entries=%d, pages=%d, %s", path.getFileName(), entries, pageCount, cache);
+    }
+
+    private static final class Split {
+        static final Split DUPLICATE = new Split(null, 0, 0);
+        final byte[] key;
+        final int value;
+        final int page;
+
+        Split(byte[] key, int value, int page) {
+            this.key = key;
+            this.value = value;
+            this.page = page;
+        }
+    }
+
+    // Inserts below a node, returning the entry and page to add to its parent if the node split
+    private Split insert(int pageNo, byte[] key, int value) {
+        ByteBuffer page = cache.read(pageNo);
+        int count = count(page);
+        if (page.get(TYPE) == LEAF) {
+            int position = lowerBound(page, count, key, value);
+            if (position < count && compareLeaf(page, position, key, value) == 0) {
+                return Split.DUPLICATE;
+            }
+            if (count < leafCapacity) {
+                page = cache.write(pageNo);
+                insertInPlace(page, count, leafEntrySize, position, key, value, -1);
+                return null;
+            }
+            byte[] all = insertEntry(page, count, leafEntrySize, position, key, value, -1);
+            page = cache.write(pageNo);
+            int left = (count + 1) / 2;
+            int rightPageNo = pageCount++;
+            ByteBuffer right = cache.create(rightPageNo);
+            right.put(TYPE, LEAF);
+            right.putInt(LINK, page.getInt(LINK));
+            System.arraycopy(all, left * leafEntrySize, right.array(), ENTRIES, all.length - left * leafEntrySize);
+            setCount(right, count + 1 - left);
+            System.arraycopy(all, 0, page.array(), ENTRIES, left * leafEntrySize);
+            Arrays.fill(page.array(), ENTRIES + left * leafEntrySize, ENTRIES + all.length - leafEntrySize, (byte) 0);
+            page.putInt(LINK, rightPageNo);
+            setCount(page, left);
+            return new Split(Arrays.copyOfRange(all, left * leafEntrySize, left * leafEntrySize + keySize),
+                    right.getInt(ENTRIES + keySize), rightPageNo);
+        }
+        int position = childPosition(page, count, key, value);
+        int child = position == 0 ? page.getInt(LINK) : page.getInt(ENTRIES + (position - 1) * internalEntrySize + keySize + Integer.BYTES);
+        Split split = insert(child, key, value);
+        if (split == null || split == Split.DUPLICATE) {
+            return split;
+        }
+        page = cache.write(pageNo);
+        if (count < internalCapacity) {
+            insertInPlace(page, count, internalEntrySize, position, split.key, split.value, split.page);
+            return null;
+        }
+        byte[] all = insertEntry(page, count, internalEntrySize, position, split.key, split.value, split.page);
+        // The middle entry moves up, its child becomes the leftmost child of the new right node
+        int middle = (count + 1) / 2;
+        int middleAt = middle * internalEntrySize;
+        int rightPageNo = pageCount++;
+        ByteBuffer right = cache.create(rightPageNo);
+        right.put(TYPE, INTERNAL);
+        right.putInt(LINK, ByteBuffer.wrap(all).getInt(middleAt + keySize + Integer.BYTES));
+        System.arraycopy(all, middleAt + internalEntrySize, right.array(), ENTRIES, all.length - middleAt - internalEntrySize);
+        setCount(right, count - middle);
+        System.arraycopy(all, 0, page.array(), ENTRIES, middleAt);
+        setCount(page, middle);
+        return new Split(Arrays.copyOfRange(all, middleAt, middleAt + keySize),
+                ByteBuffer.wrap(all).getInt(middleAt + keySize), rightPageNo);
+    }
+
+    // Shifts the entries from the position one to the right and puts the new one there, in a node with room for it
+    private void insertInPlace(ByteBuffer page, int count, int entrySize, int position, byte[] key, int value, int child) {
+        int at = ENTRIES + position * entrySize;
+        System.arraycopy(page.array(), at, page.array(), at + entrySize, (count - position) * entrySize);
+        System.arraycopy(key, 0, page.array(), at, keySize);
+        page.putInt(at + keySize, value);
+        if (child >= 0) {
+            page.putInt(at + keySize + Integer.BYTES, child);
+        }
+        setCount(page, count + 1);
+    }
+
+    // The entries of a node with one more at the position
+    private static byte[] insertEntry(ByteBuffer page, int count, int entrySize, int position, byte[] key, int value, int child) {
+        byte[] all = new byte[(count + 1) * entrySize];
+        System.arraycopy(page.array(), ENTRIES, all, 0, position * entrySize);
+        ByteBuffer entry = ByteBuffer.wrap(all, position * entrySize, entrySize);
+        entry.put(key).putInt(value);
+        if (child >= 0) {
+            entry.putInt(child);
+        }
+        System.arraycopy(page.array(), ENTRIES + position * entrySize, all, (position + 1) * entrySize, (count - position) * entrySize);
+        return all;
+    }
+
+    // The leaf where the entry is or would be
+    private int leafOf(byte[] key, int value) {
+        int pageNo = root;
+        ByteBuffer page = cache.read(pageNo);
+        while (page.get(TYPE) == INTERNAL) {
+            int position = childPosition(page, count(page), key, value);
+            pageNo = position == 0 ? page.getInt(LINK) : page.getInt(ENTRIES + (position - 1) * internalEntrySize + keySize + Integer.BYTES);
+            page = cache.read(pageNo);
+        }
+        return pageNo;
+    }
+
+    // The number of separators at or below the entry, which is the child to descend to
+    private int childPosition(ByteBuffer page, int count, byte[] key, int value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(page, ENTRIES + middle * internalEntrySize, key, value) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // The first position in a leaf whose entry is not less than the given one
+    private int lowerBound(ByteBuffer page, int count, byte[] key, int value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareLeaf(page, middle, key, value) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compareLeaf(ByteBuffer page, int position, byte[] key, int value) {
+        return compare(page, ENTRIES + position * leafEntrySize, key, value);
+    }
+
+    // Compares the entry at an offset with the given key and value
+    private int compare(ByteBuffer page, int at, byte[] key, int value) {
+        int byKey = compareKey(page, at, key);
+        return byKey != 0 ? byKey : Integer.compare(page.getInt(at + keySize), value);
+    }
+
+    private int compareKey(ByteBuffer page, int at, byte[] key) {
+        return Arrays.compareUnsigned(page.array(), at, at + keySize, key, 0, keySize);
+    }
+
+    private static int count(ByteBuffer page) {
+        return page.getShort(COUNT) & 0xFFFF;
+    }
+
+    private static void setCount(ByteBuffer page, int count) {
+        page.putShort(COUNT, (short) count);
+    }
+
+    private void checkKey(byte[] key) {
+        if (key.length != keySize) {
+            throw new IllegalArgumentException("keys are " + keySize + " bytes, got " + key.length);
+        }
+    }
+
+    // An empty tree: the header and an empty root leaf
+    private void clear() throws IOException {
+        cache.clear();
+        channel.truncate(0);
+        root = 1;
+        pageCount = 2;
+        entries = 0;
+        cache.create(1).put(TYPE, LEAF);
+        clean = false;
+        writeHeader();
+    }
+
+    // Marks the file as changed on disk before the first change after a flush, so a crash leaves it marked
+    private void startChange() {
+        if (!clean) {
+            return;
+        }
+        clean = false;
+        writeHeader();
+        force();
+    }
+
+    private void writeHeader() {
+        ByteBuffer header = ByteBuffer.allocate(PageCache.PAGE_SIZE);
+        header.putInt(MAGIC_OFFSET, MAGIC);
+        header.putInt(KEY_SIZE_OFFSET, keySize);
+        header.putInt(ROOT_OFFSET, root);
+        header.putInt(PAGE_COUNT_OFFSET, pageCount);
+        header.putLong(ENTRIES_OFFSET, entries);
+        header.put(CLEAN_OFFSET, (byte) (clean ? 1 : 0));
+        System.arraycopy(header.array(), 0, cache.create(0).array(), 0, PageCache.PAGE_SIZE);
+        cache.flush();
+    }
+
+    private void force() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not write " + path, e);
+        }
+    }
+}
@@ -0,0 +1,930 @@
+package com.github.truefmartin.storage;
+
+import com.github.truefmartin.Model;
+import com.github.truefmartin.OrderFilter;
+import com.github.truefmartin.catalog.CatalogSink;
+import com.github.truefmartin.exceptions.EmptyResultsException;
+import com.github.truefmartin.models.DishEntity;
+import com.github.truefmartin.models.FoodOrderEntity;
+import com.github.truefmartin.models.MenuItemEntity;
+import com.github.truefmartin.models.RestaurantEntity;
+import com.github.truefmartin.models.Type;
+import com.github.truefmartin.views.DisplayDishMenu;
+import com.github.truefmartin.views.DisplayDishMenuOrder;
+import com.github.truefmartin.views.DisplayRestaurantDishOrder;
+import com.github.truefmartin.views.DisplayRestaurantMenu;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * An embedded database of the four relations, each a {@link RecordFile} of fixed-width rows in one directory,
+ * with the same operations and results as {@link Model} but no server. A row's id is its slot + 1, so reading a row
+ * by id is an offset into the mapped file. Ids of deleted rows are reused by the next insert.
+ * <p>
+ * Columns are stored at their widths in sql/create.sql: names as up to 15 or 25 chars, the price in cents,
+ * the date as its epoch day and the time as its second of day.
+ * <p>
+ * The lookups by name and city, by dish name, and from restaurant or dish to menu items to orders use
+ * {@link BPlusTree} indexes, one .idx file each next to the relations. A name key is the name and city in lower case
+ * without trailing spaces, as MySQL compares them, so a lookup is a range of the index and a prefix search is too.
+ * The indexes change with the rows they index and are bulk loaded from a scan of the relations after a copy, or on
+ * open if they were not flushed after their last change.
+ * <p>
+ * Reads run in parallel, writes one at a time. A write is in the page cache when the operation returns
+ * and on disk after {@link #flush()} or {@link #close()}.
+ */
+public class FixedLengthDatabase implements AutoCloseable {
+    private static final int NAME_LENGTH = 15;
+    private static final int DISH_NAME_LENGTH = 25;
+    private static final int MIN_PRICE_CENTS = 500;
+    private static final int MAX_PRICE_CENTS = 5000;
+    private static final int DEFAULT_CACHE_PAGES = 1024;
+
+    // restaurant: restaurant_name varchar(15), type varchar(15), city varchar(15)
+    private static final int RESTAURANT_NAME = 0;
+    private static final int RESTAURANT_TYPE = RESTAURANT_NAME + RecordFile.stringSize(NAME_LENGTH);
+    private static final int RESTAURANT_CITY = RESTAURANT_TYPE + RecordFile.stringSize(NAME_LENGTH);
+    private static final int RESTAURANT_SIZE = RESTAURANT_CITY + RecordFile.stringSize(NAME_LENGTH);
+    // dish: dish_name varchar(25), type as the Type ordinal + 1, 0 for null
+    private static final int DISH_NAME = 0;
+    private static final int DISH_TYPE = DISH_NAME + RecordFile.stringSize(DISH_NAME_LENGTH);
+    private static final int DISH_SIZE = DISH_TYPE + 1;
+    // menu_item: restaurant_no, dish_no 0 for null, price dec(4,2) in cents
+    private static final int ITEM_RESTAURANT = 0;
+    private static final int ITEM_DISH = 4;
+    private static final int ITEM_PRICE = 8;
+    private static final int ITEM_SIZE = 10;
+    // food_order: item_no, date as epoch day, time as second of day
+    private static final int ORDER_ITEM = 0;
+    private static final int ORDER_DATE = 4;
+    private static final int ORDER_TIME = 8;
+    private static final int ORDER_SIZE = 12;
+
+    private final RecordFile restaurants;
+    private final RecordFile dishes;
+    private final RecordFile menuItems;
+    private final RecordFile orders;
+    // Name and city to restaurantId, dish name to dishNo, restaurantId and dishNo to itemNo, itemNo to orderNo
+    private final BPlusTree restaurantsByName;
+    private final BPlusTree dishesByName;
+    private final BPlusTree itemsByRestaurant;
+    private final BPlusTree itemsByDish;
+    private final BPlusTree ordersByItem;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Opens the database in a directory with up to 1024 pages, 4 MiB, of each index in memory.
+     * @see #FixedLengthDatabase(Path, int)
+     */
+    public FixedLengthDatabase(Path directory) throws IOException {
+        this(directory, DEFAULT_CACHE_PAGES);
+    }
+
+    /**
+     * Opens the database in a directory, creating it and its files if they do not exist, and rebuilds the indexes
+     * that are out of date.
+     * @param directory holds restaurant.fld, dish.fld, menu_item.fld, food_order.fld and the indexes
+     * @param cachePages the number of 4 KiB pages of each index kept in memory
+     * @throws IllegalStateException if a file was written with another layout
+     */
+    public FixedLengthDatabase(Path directory, int cachePages) throws IOException {
+        Files.createDirectories(directory);
+        List<AutoCloseable> opened = new ArrayList<>(9);
+        try {
+            restaurants = opened(opened, new RecordFile(directory.resolve("restaurant.fld"), RESTAURANT_SIZE));
+            dishes = opened(opened, new RecordFile(directory.resolve("dish.fld"), DISH_SIZE));
+            menuItems = opened(opened, new RecordFile(directory.resolve("menu_item.fld"), ITEM_SIZE));
+            orders = opened(opened, new RecordFile(directory.resolve("food_order.fld"), ORDER_SIZE));
+            restaurantsByName = opened(opened, new BPlusTree(directory.resolve("restaurant_name_city.idx"),
+                    2 * NAME_LENGTH * Character.BYTES, cachePages));
+            dishesByName = opened(opened, new BPlusTree(directory.resolve("dish_name.idx"),
+                    DISH_NAME_LENGTH * Character.BYTES, cachePages));
+            itemsByRestaurant = opened(opened, new BPlusTree(directory.resolve("menu_item_restaurant.idx"), Integer.BYTES, cachePages));
+            itemsByDish = opened(opened, new BPlusTree(directory.resolve("menu_item_dish.idx"), Integer.BYTES, cachePages));
+            ordersByItem = opened(opened, new BPlusTree(directory.resolve("food_order_item.idx"), Integer.BYTES, cachePages));
+        } catch (IOException | RuntimeException e) {
+            for (AutoCloseable file : opened) {
+                try {
+                    file.close();
+                } catch (Exception closing) {
+                    e.addSuppressed(closing);
+                }
+            }
+            throw e;
+        }
+        if (rebuildIndexes(false)) {
+            flush();
+        }
+    }
+
+    private static <T extends AutoCloseable> T opened(List<AutoCloseable> opened, T file) {
+        opened.add(file);
+        return file;
+    }
+
+    /**
+     * Bulk loads indexes from a scan of the relations they index.
+     * @param all true to rebuild every index, false for those not flushed after their last change or that do not
+     * have an entry per row, e.g. because a relation's file was replaced
+     * @return true if any index was rebuilt
+     */
+    private boolean rebuildIndexes(boolean all) {
+        boolean rebuilt = false;
+        if (all || restaurantsByName.needsRebuild() || restaurantsByName.size() != restaurants.size()) {
+            load(restaurantsByName, restaurants, this::restaurantKeyOf);
+            rebuilt = true;
+        }
+        if (all || dishesByName.needsRebuild() || dishesByName.size() != dishes.size()) {
+            load(dishesByName, dishes, this::dishKeyOf);
+            rebuilt = true;
+        }
+        if (all || itemsByRestaurant.needsRebuild() || itemsByRestaurant.size() != menuItems.size()) {
+            load(itemsByRestaurant, menuItems, slot -> intKey(menuItems.getInt(slot, ITEM_RESTAURANT)));
+            rebuilt = true;
+        }
+        // Not every menu item has a dish, so the entries are not counted
+        if (all || itemsByDish.needsRebuild()) {
+            load(itemsByDish, menuItems, this::itemDishKeyOf);
+            rebuilt = true;
+        }
+        if (all || ordersByItem.needsRebuild() || ordersByItem.size() != orders.size()) {
+            load(ordersByItem, orders, slot -> intKey(orders.getInt(slot, ORDER_ITEM)));
+            rebuilt = true;
+        }
+        return rebuilt;
+    }
+
+    // Bulk loads an index with the key of every used slot of a file, null for none, to the slot's id
+    private static void load(BPlusTree index, RecordFile file, IntFunction<byte[]> keyOfSlot) {
+        int keySize = index.getKeySize();
+        byte[] keys = new byte[file.size() * keySize];
+        int[] values = new int[file.size()];
+        int count = 0;
+        for (int slot = 0; slot < file.getSlotCount(); slot++) {
+            byte[] key = file.isUsed(slot) ? keyOfSlot.apply(slot) : null;
+            if (key != null) {
+                System.arraycopy(key, 0, keys, count * keySize, keySize);
+                values[count++] = slot + 1;
+            }
+        }
+        index.bulkLoad(Arrays.copyOf(keys, count * keySize), Arrays.copyOf(values, count));
+    }
+
+    /**
+     * Copies every restaurant, dish, menu item and order of a Model into this database, keeping their ids.
+     * Orders of menu items without a dish are not copied, none of the order operations show them.
+     * @param model the database to copy
+     * @return the number of rows copied
+     * @throws IllegalStateException if this database is not empty
+     */
+    public long copyFrom(Model model) {
+        lock.writeLock().lock();
+        try {
+            if (restaurants.size() + dishes.size() + menuItems.size() + orders.size() > 0) {
+                throw new IllegalStateException("can only copy into an empty database, this one has " + this);
+            }
+            CatalogRows catalog = new CatalogRows();
+            model.readCatalog(null, null, null, catalog);
+            // Ids in order, so each row takes a slot at the end instead of one on the free list
+            catalog.restaurants.sort(Comparator.comparingInt(row -> (Integer) row[0]));
+            catalog.dishes.sort(Comparator.comparingInt(row -> (Integer) row[0]));
+            catalog.menuItems.sort(Comparator.comparingInt(row -> row[0]));
+            for (Object[] row : catalog.restaurants) {
+                int slot = (Integer) row[0] - 1;
+                restaurants.allocate(slot);
+                writeRestaurant(slot, (String) row[1], (String) row[2], (String) row[3]);
+            }
+            for (Object[] row : catalog.dishes) {
+                int slot = (Integer) row[0] - 1;
+                dishes.allocate(slot);
+                writeDish(slot, (String) row[1], (Type) row[2]);
+            }
+            for (int[] row : catalog.menuItems) {
+                int slot = row[0] - 1;
+                menuItems.allocate(slot);
+                menuItems.putInt(slot, ITEM_RESTAURANT, row[1]);
+                menuItems.putInt(slot, ITEM_DISH, row[2]);
+                menuItems.putShort(slot, ITEM_PRICE, (short) row[3]);
+            }
+            // Orders are streamed in orderNo order
+            model.forEachOrder(OrderFilter.all(), display -> {
+                FoodOrderEntity order = display.getOrder();
+                int slot = order.getOrderNo() - 1;
+                orders.allocate(slot);
+                writeOrder(slot, order.getMenu().getItemNo(), order.getDate().toLocalDate(), order.getTime().toLocalTime());
+            });
+            // Sorting every key once is far less work than inserting them one at a time
+            rebuildIndexes(true);
+            return (long) restaurants.size() + dishes.size() + menuItems.size() + orders.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the menus of a specific restaurant.
+     * @param restaurantName the name of the restaurant
+     * @param cityName the city where the restaurant is located
+     * @return a list of menus
+     * @throws EmptyResultsException if no menus are found
+     */
+    public List<DisplayDishMenu> getMenusOfRestaurant(String restaurantName, String cityName) throws EmptyResultsException {
+        lock.readLock().lock();
+        try {
+            IntList items = lookup(itemsByRestaurant, intKey(restaurantId(restaurantName, cityName)));
+            if (items.size() == 0) {
+                throw EmptyResultsException.fromInput(restaurantName, cityName);
+            }
+            List<DisplayDishMenu> result = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                int slot = items.get(i) - 1;
+                MenuItemEntity menu = menuItem(slot);
+                int dishNo = menuItems.getInt(slot, ITEM_DISH);
+                if (dishNo != 0) {
+                    result.add(new DisplayDishMenu(dish(dishNo - 1), menu));
+                } else {
+                    result.add(new DisplayDishMenu(String.format("**Menu item_no=%d, with price %.2f has no associated dish**\n",
+                            menu.getItemNo(), menu.getPrice())));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the menus of a specific dish.
+     * @param dishName the name of the dish
+     * @return a list of menus
+     * @throws EmptyResultsException if no menus are found
+     */
+    public List<DisplayRestaurantMenu> getMenusOfDish(String dishName) throws EmptyResultsException {
+        lock.readLock().lock();
+        try {
+            List<DisplayRestaurantMenu> result = new ArrayList<>();
+            IntList dishNos = dishNos(dishName);
+            for (int d = 0; d < dishNos.size(); d++) {
+                IntList items = lookup(itemsByDish, intKey(dishNos.get(d)));
+                for (int i = 0; i < items.size(); i++) {
+                    int slot = items.get(i) - 1;
+                    MenuItemEntity menu = menuItem(slot);
+                    menu.setRestaurant(restaurant(menuItems.getInt(slot, ITEM_RESTAURANT) - 1));
+                    result.add(new DisplayRestaurantMenu(menu.getRestaurant(), menu));
+                }
+            }
+            if (result.isEmpty()) {
+                throw EmptyResultsException.fromInput(dishName, " or no 'menu_items' with that dishNo");
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the orders of a specific restaurant.
+     * @param restaurantName the name of the restaurant
+     * @param cityName the city where the restaurant is located
+     * @return a list of orders
+     * @throws EmptyResultsException if no orders are found
+     */
+    public List<DisplayDishMenuOrder> getOrdersOfRestaurant(String restaurantName, String cityName) throws EmptyResultsException {
+        List<DisplayDishMenuOrder> result = new ArrayList<>();
+        forEachOrderOfRestaurant(restaurantName, cityName, result::add);
+        return result;
+    }
+
+    /**
+     * Passes the orders of a specific restaurant to a consumer without building a list of them.
+     * The consumer runs while the database is read and must not change it.
+     * @param restaurantName the name of the restaurant
+     * @param cityName the city where the restaurant is located
+     * @param consumer called once per order
+     * @return the number of orders visited
+     * @throws EmptyResultsException if no orders are found
+     */
+    public long forEachOrderOfRestaurant(String restaurantName, String cityName, Consumer<DisplayDishMenuOrder> consumer)
+            throws EmptyResultsException {
+        lock.readLock().lock();
+        try {
+            long count = 0;
+            IntList items = lookup(itemsByRestaurant, intKey(restaurantId(restaurantName, cityName)));
+            for (int i = 0; i < items.size(); i++) {
+                int itemSlot = items.get(i) - 1;
+                int dishNo = menuItems.getInt(itemSlot, ITEM_DISH);
+                if (dishNo == 0) {
+                    continue;
+                }
+                IntList itemOrders = lookup(ordersByItem, intKey(items.get(i)));
+                String dishName = dishes.getString(dishNo - 1, DISH_NAME);
+                int priceCents = menuItems.getShort(itemSlot, ITEM_PRICE);
+                for (int o = 0; o < itemOrders.size(); o++) {
+                    int slot = itemOrders.get(o) - 1;
+                    consumer.accept(new DisplayDishMenuOrder(dishName, priceCents,
+                            orders.getInt(slot, ORDER_DATE), orders.getInt(slot, ORDER_TIME)));
+                    count++;
+                }
+            }
+            if (count == 0) {
+                throw EmptyResultsException.fromInput(restaurantName, cityName, " with possibly no menus for given restaurant");
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves all orders, ordered by orderNo.
+     * @return a list of orders
+     * @throws EmptyResultsException if there are no orders
+     */
+    public List<DisplayRestaurantDishOrder> getAllOrders() throws EmptyResultsException {
+        List<DisplayRestaurantDishOrder> result = new ArrayList<>();
+        forEachOrder(OrderFilter.all(), result::add);
+        if (result.isEmpty()) {
+            throw new EmptyResultsException("found no orders in food_order");
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves one page of orders, ordered by orderNo. The page starts at the slot of afterOrderNo,
+     * so any page is as fast as the first.
+     * @param filter the orders to include
+     * @param afterOrderNo only orders with a greater orderNo are returned, 0 for the first page
+     * @param pageSize the maximum number of orders to return
+     * @return the page, empty once there are no more orders
+     */
+    public List<DisplayRestaurantDishOrder> getOrdersPage(OrderFilter filter, int afterOrderNo, int pageSize) {
+        List<DisplayRestaurantDishOrder> page = new ArrayList<>(Math.min(pageSize, 1024));
+        lock.readLock().lock();
+        try {
+            int restaurantId = filterRestaurant(filter);
+            for (int slot = Math.max(0, afterOrderNo); slot < orders.getSlotCount() && page.size() < pageSize; slot++) {
+                if (matches(slot, filter, restaurantId)) {
+                    page.add(displayOrder(slot));
+                }
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Passes orders to a consumer in orderNo order without building a list of them.
+     * The consumer runs while the database is read and must not change it.
+     * @param filter the orders to include
+     * @param consumer called once per order
+     * @return the number of orders visited
+     */
+    public long forEachOrder(OrderFilter filter, Consumer<DisplayRestaurantDishOrder> consumer) {
+        lock.readLock().lock();
+        try {
+            long count = 0;
+            int restaurantId = filterRestaurant(filter);
+            for (int slot = 0; slot < orders.getSlotCount(); slot++) {
+                if (matches(slot, filter, restaurantId)) {
+                    consumer.accept(displayOrder(slot));
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a new order of a menu item, stamped with the current date and time.
+     * @param menu the menu item to be ordered, only its itemNo is read
+     * @throws IllegalArgumentException if there is no menu item with the itemNo
+     */
+    public void addOrder(MenuItemEntity menu) {
+        FoodOrderEntity order = new FoodOrderEntity();
+        order.setMenu(menu);
+        addOrders(List.of(order));
+    }
+
+    /**
+     * Adds many orders at once. Orders without a date are stamped with the current date and time.
+     * Either every order is added or, if one has an unknown menu item, none is.
+     * @param newOrders the orders to be added, their orderNo is set once added
+     * @throws IllegalArgumentException if there is no menu item with the itemNo of an order
+     */
+    public void addOrders(Collection<FoodOrderEntity> newOrders) {
+        lock.writeLock().lock();
+        try {
+            for (FoodOrderEntity order : newOrders) {
+                int itemNo = order.getMenu().getItemNo();
+                if (!menuItems.isUsed(itemNo - 1)) {
+                    throw new IllegalArgumentException("no menu item with itemNo " + itemNo);
+                }
+            }
+            for (FoodOrderEntity order : newOrders) {
+                if (order.getDate() == null) {
+                    order.setDateTimeNow();
+                }
+                int slot = orders.allocate();
+                writeOrder(slot, order.getMenu().getItemNo(), order.getDate().toLocalDate(), order.getTime().toLocalTime());
+                indexOrder(slot);
+                order.setOrderNo(slot + 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes an order.
+     * @param order the order to be deleted, only its orderNo is read
+     */
+    public void deleteOrder(FoodOrderEntity order) {
+        deleteOrder(order.getOrderNo());
+    }
+
+    /**
+     * Deletes an order by its number. Its slot is reused by the next order added.
+     * @param orderNo the number of the order to be deleted
+     * @return true if the order existed
+     */
+    public boolean deleteOrder(int orderNo) {
+        lock.writeLock().lock();
+        try {
+            int slot = orderNo - 1;
+            if (!orders.isUsed(slot)) {
+                return false;
+            }
+            ordersByItem.delete(intKey(orders.getInt(slot, ORDER_ITEM)), orderNo);
+            orders.free(slot);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves a specific restaurant.
+     * @param restaurantName the name of the restaurant
+     * @param cityName the city where the restaurant is located
+     * @return the restaurant entity
+     * @throws EmptyResultsException if the restaurant is not found
+     */
+    public RestaurantEntity getRestaurant(String restaurantName, String cityName) throws EmptyResultsException {
+        lock.readLock().lock();
+        try {
+            int restaurantId = restaurantId(restaurantName, cityName);
+            if (restaurantId == 0) {
+                throw EmptyResultsException.fromInput(restaurantName, cityName);
+            }
+            return restaurant(restaurantId - 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the restaurants whose name starts with a prefix, ignoring case, in name then city order.
+     * @param namePrefix the start of the name
+     * @return the restaurants, empty if there are none
+     */
+    public List<RestaurantEntity> findRestaurants(String namePrefix) {
+        String prefix = normalize(namePrefix);
+        lock.readLock().lock();
+        try {
+            IntList ids = lookup(restaurantsByName, nameKey(NAME_LENGTH, (byte) 0, prefix, ""),
+                    nameKey(NAME_LENGTH, (byte) 0xFF, prefix, ""));
+            List<RestaurantEntity> result = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                RestaurantEntity restaurant = restaurant(ids.get(i) - 1);
+                // A prefix longer than the key only matched its first chars
+                if (normalize(restaurant.getRestaurantName()).startsWith(prefix)) {
+                    result.add(restaurant);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the dishes whose name starts with a prefix, ignoring case, in name order.
+     * @param namePrefix the start of the name
+     * @return the dishes, empty if there are none
+     */
+    public List<DishEntity> findDishes(String namePrefix) {
+        String prefix = normalize(namePrefix);
+        lock.readLock().lock();
+        try {
+            IntList dishNos = lookup(dishesByName, nameKey(DISH_NAME_LENGTH, (byte) 0, prefix),
+                    nameKey(DISH_NAME_LENGTH, (byte) 0xFF, prefix));
+            List<DishEntity> result = new ArrayList<>(dishNos.size());
+            for (int i = 0; i < dishNos.size(); i++) {
+                DishEntity dish = dish(dishNos.get(i) - 1);
+                if (normalize(dish.getDishName()).startsWith(prefix)) {
+                    result.add(dish);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a new dish with its menu items. The dishNo and itemNos are set once added.
+     * @param dish the dish to be added, its menu items each with a restaurant and a price
+     * @throws IllegalArgumentException if the name is too long, a restaurant does not exist or a price is outside
+     * 5 to 50, the constraints of sql/create.sql. Nothing is added then.
+     */
+    public void addDish(DishEntity dish) {
+        if (dish.getDishName().length() > DISH_NAME_LENGTH) {
+            throw new IllegalArgumentException(String.format("'%s' is longer than %d characters", dish.getDishName(), DISH_NAME_LENGTH));
+        }
+        lock.writeLock().lock();
+        try {
+            for (MenuItemEntity menu : dish.getMenuItems()) {
+                int restaurantId = menu.getRestaurant().getRestaurantId();
+                if (!restaurants.isUsed(restaurantId - 1)) {
+                    throw new IllegalArgumentException("no restaurant with restaurantId " + restaurantId);
+                }
+                int priceCents = priceCents(menu.getPrice());
+                if (priceCents < MIN_PRICE_CENTS || priceCents > MAX_PRICE_CENTS) {
+                    throw new IllegalArgumentException("price " + menu.getPrice() + " is not between 5 and 50");
+                }
+            }
+            int dishSlot = dishes.allocate();
+            writeDish(dishSlot, dish.getDishName(), dish.getType());
+            indexDish(dishSlot);
+            dish.setDishNo(dishSlot + 1);
+            for (MenuItemEntity menu : dish.getMenuItems()) {
+                int slot = menuItems.allocate();
+                menuItems.putInt(slot, ITEM_RESTAURANT, menu.getRestaurant().getRestaurantId());
+                menuItems.putInt(slot, ITEM_DISH, dishSlot + 1);
+                menuItems.putShort(slot, ITEM_PRICE, (short) priceCents(menu.getPrice()));
+                indexMenuItem(slot);
+                menu.setItemNo(slot + 1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Lists every row of a relation.
+     * @param relationName dish, food_order, menu_item or restaurant
+     * @param className the entity class of the relation
+     * @return the rows, as the entities' toString
+     * @throws IllegalArgumentException if there is no such relation, or its entity is not of the class
+     */
+    public List<String> listRelation(String relationName, Class<?> className) {
+        RecordFile file;
+        switch (relationName) {
+            case "dish":
+                file = dishes;
+                break;
+            case "food_order":
+                file = orders;
+                break;
+            case "menu_item":
+                file = menuItems;
+                break;
+            case "restaurant":
+                file = restaurants;
+                break;
+            default:
+                throw new IllegalArgumentException("no relation named " + relationName);
+        }
+        lock.readLock().lock();
+        try {
+            List<String> result = new ArrayList<>(file.size());
+            for (int slot = 0; slot < file.getSlotCount(); slot++) {
+                if (!file.isUsed(slot)) {
+                    continue;
+                }
+                Object entity = file == dishes ? dish(slot)
+                        : file == orders ? order(slot)
+                        : file == menuItems ? menuItemWithReferences(slot)
+                        : restaurant(slot);
+                if (!className.isInstance(entity)) {
+                    throw new IllegalArgumentException(relationName + " holds " + entity.getClass().getSimpleName());
+                }
+                result.add(entity.toString());
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the entries, pages and page cache hits and misses of each index
+     */
+    public List<String> getIndexStatistics() {
+        lock.readLock().lock();
+        try {
+            return List.of(restaurantsByName.toString(), dishesByName.toString(), itemsByRestaurant.toString(),
+                    itemsByDish.toString(), ordersByItem.toString());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the changes so far to the files. The rows go first, so an index is only marked up to date
+     * once the rows it indexes are on disk.
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            restaurants.force();
+            dishes.force();
+            menuItems.force();
+            orders.force();
+            restaurantsByName.flush();
+            dishesByName.flush();
+            itemsByRestaurant.flush();
+            itemsByDish.flush();
+            ordersByItem.flush();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            restaurants.close();
+            dishes.close();
+            menuItems.close();
+            orders.close();
+            restaurantsByName.close();
+            dishesByName.close();
+            itemsByRestaurant.close();
+            itemsByDish.close();
+            ordersByItem.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("restaurants=%d, dishes=%d, menu items=%d, orders=%d",
+                restaurants.size(), dishes.size(), menuItems.size(), orders.size());
+    }
+
+    // The restaurant of an order filter, 0 for all restaurants, -1 if it does not exist
+    private int filterRestaurant(OrderFilter filter) {
+        if (!filter.hasRestaurant()) {
+            return 0;
+        }
+        int restaurantId = restaurantId(filter.getRestaurantName(), filter.getCityName());
+        return restaurantId == 0 ? -1 : restaurantId;
+    }
+
+    // The restaurant with the name and city, 0 if there is none
+    private int restaurantId(String restaurantName, String cityName) {
+        IntList ids = lookup(restaurantsByName, nameKey(NAME_LENGTH, (byte) 0, restaurantName, cityName));
+        for (int i = 0; i < ids.size(); i++) {
+            int slot = ids.get(i) - 1;
+            // The key holds at most the column's chars, so a longer name can match a shorter one
+            if (normalize(restaurants.getString(slot, RESTAURANT_NAME)).equals(normalize(restaurantName))
+                    && normalize(restaurants.getString(slot, RESTAURANT_CITY)).equals(normalize(cityName))) {
+                return ids.get(i);
+            }
+        }
+        return 0;
+    }
+
+    // The dishes with the name
+    private IntList dishNos(String dishName) {
+        IntList candidates = lookup(dishesByName, nameKey(DISH_NAME_LENGTH, (byte) 0, dishName));
+        IntList dishNos = new IntList();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (normalize(dishes.getString(candidates.get(i) - 1, DISH_NAME)).equals(normalize(dishName))) {
+                dishNos.add(candidates.get(i));
+            }
+        }
+        return dishNos;
+    }
+
+    // The same orders as Model's order queries: those of menu items with a dish, within the filter
+    private boolean matches(int slot, OrderFilter filter, int restaurantId) {
+        if (!orders.isUsed(slot)) {
+            return false;
+        }
+        int itemSlot = orders.getInt(slot, ORDER_ITEM) - 1;
+        if (menuItems.getInt(itemSlot, ITEM_DISH) == 0) {
+            return false;
+        }
+        if (restaurantId != 0 && menuItems.getInt(itemSlot, ITEM_RESTAURANT) != restaurantId) {
+            return false;
+        }
+        int epochDay = orders.getInt(slot, ORDER_DATE);
+        return (filter.getFrom() == null || epochDay >= filter.getFrom().toEpochDay())
+                && (filter.getTo() == null || epochDay <= filter.getTo().toEpochDay());
+    }
+
+    private DisplayRestaurantDishOrder displayOrder(int slot) {
+        FoodOrderEntity order = order(slot);
+        MenuItemEntity menu = menuItemWithReferences(order.getMenu().getItemNo() - 1);
+        order.setMenu(menu);
+        return new DisplayRestaurantDishOrder(menu.getRestaurant(), menu.getDish(), order);
+    }
+
+    private RestaurantEntity restaurant(int slot) {
+        RestaurantEntity restaurant = new RestaurantEntity();
+        restaurant.setRestaurantId(slot + 1);
+        restaurant.setRestaurantName(restaurants.getString(slot, RESTAURANT_NAME));
+        restaurant.setType(restaurants.getString(slot, RESTAURANT_TYPE));
+        restaurant.setCity(restaurants.getString(slot, RESTAURANT_CITY));
+        return restaurant;
+    }
+
+    private DishEntity dish(int slot) {
+        DishEntity dish = new DishEntity();
+        dish.setDishNo(slot + 1);
+        dish.setDishName(dishes.getString(slot, DISH_NAME));
+        byte type = dishes.getByte(slot, DISH_TYPE);
+        dish.setType(type == 0 ? null : Type.values()[type - 1]);
+        return dish;
+    }
+
+    // The menu item with only the ids of its restaurant and dish
+    private MenuItemEntity menuItem(int slot) {
+        MenuItemEntity menu = new MenuItemEntity();
+        menu.setItemNo(slot + 1);
+        menu.setPrice(BigDecimal.valueOf(menuItems.getShort(slot, ITEM_PRICE), 2));
+        RestaurantEntity restaurant = new RestaurantEntity();
+        restaurant.setRestaurantId(menuItems.getInt(slot, ITEM_RESTAURANT));
+        menu.setRestaurant(restaurant);
+        int dishNo = menuItems.getInt(slot, ITEM_DISH);
+        if (dishNo != 0) {
+            DishEntity dish = new DishEntity();
+            dish.setDishNo(dishNo);
+            menu.setDish(dish);
+        }
+        return menu;
+    }
+
+    private MenuItemEntity menuItemWithReferences(int slot) {
+        MenuItemEntity menu = menuItem(slot);
+        menu.setRestaurant(restaurant(menu.getRestaurant().getRestaurantId() - 1));
+        if (menu.getDish() != null) {
+            menu.setDish(dish(menu.getDish().getDishNo() - 1));
+        }
+        return menu;
+    }
+
+    // The order with only the itemNo of its menu item
+    private FoodOrderEntity order(int slot) {
+        FoodOrderEntity order = new FoodOrderEntity();
+        order.setOrderNo(slot + 1);
+        MenuItemEntity menu = new MenuItemEntity();
+        menu.setItemNo(orders.getInt(slot, ORDER_ITEM));
+        order.setMenu(menu);
+        order.setDate(Date.valueOf(LocalDate.ofEpochDay(orders.getInt(slot, ORDER_DATE))));
+        order.setTime(Time.valueOf(LocalTime.ofSecondOfDay(orders.getInt(slot, ORDER_TIME))));
+        return order;
+    }
+
+    private void writeRestaurant(int slot, String restaurantName, String type, String city) {
+        restaurants.putString(slot, RESTAURANT_NAME, restaurantName, NAME_LENGTH);
+        restaurants.putString(slot, RESTAURANT_TYPE, type, NAME_LENGTH);
+        restaurants.putString(slot, RESTAURANT_CITY, city, NAME_LENGTH);
+    }
+
+    private void writeDish(int slot, String dishName, Type type) {
+        dishes.putString(slot, DISH_NAME, dishName, DISH_NAME_LENGTH);
+        dishes.putByte(slot, DISH_TYPE, (byte) (type == null ? 0 : type.ordinal() + 1));
+    }
+
+    private void writeOrder(int slot, int itemNo, LocalDate date, LocalTime time) {
+        orders.putInt(slot, ORDER_ITEM, itemNo);
+        orders.putInt(slot, ORDER_DATE, (int) date.toEpochDay());
+        orders.putInt(slot, ORDER_TIME, time.toSecondOfDay());
+    }
+
+    private void indexDish(int slot) {
+        dishesByName.insert(dishKeyOf(slot), slot + 1);
+    }
+
+    private void indexMenuItem(int slot) {
+        itemsByRestaurant.insert(intKey(menuItems.getInt(slot, ITEM_RESTAURANT)), slot + 1);
+        byte[] dishKey = itemDishKeyOf(slot);
+        if (dishKey != null) {
+            itemsByDish.insert(dishKey, slot + 1);
+        }
+    }
+
+    private void indexOrder(int slot) {
+        ordersByItem.insert(intKey(orders.getInt(slot, ORDER_ITEM)), slot + 1);
+    }
+
+    private byte[] restaurantKeyOf(int slot) {
+        return nameKey(NAME_LENGTH, (byte) 0, restaurants.getString(slot, RESTAURANT_NAME), restaurants.getString(slot, RESTAURANT_CITY));
+    }
+
+    private byte[] dishKeyOf(int slot) {
+        return nameKey(DISH_NAME_LENGTH, (byte) 0, dishes.getString(slot, DISH_NAME));
+    }
+
+    // Null for a menu item without a dish
+    private byte[] itemDishKeyOf(int slot) {
+        int dishNo = menuItems.getInt(slot, ITEM_DISH);
+        return dishNo == 0 ? null : intKey(dishNo);
+    }
+
+    // The ids in an index under a key, or from a low to a high key
+    private static IntList lookup(BPlusTree index, byte[] key) {
+        return lookup(index, key, key);
+    }
+
+    private static IntList lookup(BPlusTree index, byte[] low, byte[] high) {
+        IntList ids = new IntList();
+        index.range(low, high, ids::add);
+        return ids;
+    }
+
+    private static int priceCents(BigDecimal price) {
+        return price.setScale(2, RoundingMode.HALF_UP).unscaledValue().intValueExact();
+    }
+
+    // MySQL compares names case-insensitively and ignores trailing spaces, so the index keys do as well
+    private static String normalize(String name) {
+        return name.stripTrailing().toLowerCase(Locale.ROOT);
+    }
+
+    // Each name normalized and as up to length big-endian chars, padded with a byte, so keys sort as their names
+    private static byte[] nameKey(int length, byte padding, String... names) {
+        byte[] key = new byte[names.length * length * Character.BYTES];
+        Arrays.fill(key, padding);
+        for (int n = 0; n < names.length; n++) {
+            String name = normalize(names[n]);
+            for (int i = 0; i < Math.min(length, name.length()); i++) {
+                int at = (n * length + i) * Character.BYTES;
+                key[at] = (byte) (name.charAt(i) >>> 8);
+                key[at + 1] = (byte) name.charAt(i);
+            }
+        }
+        return key;
+    }
+
+    private static byte[] intKey(int value) {
+        return new byte[] {(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    // Catalog rows read from a Model, kept to be written in id order
+    private static final class CatalogRows implements CatalogSink {
+        final List<Object[]> restaurants = new ArrayList<>();
+        final List<Object[]> dishes = new ArrayList<>();
+        final List<int[]> menuItems = new ArrayList<>();
+
+        @Override
+        public void restaurant(int restaurantId, String restaurantName, String city) {
+            restaurant(restaurantId, restaurantName, "", city);
+        }
+
+        @Override
+        public void restaurant(int restaurantId, String restaurantName, String type, String city) {
+            restaurants.add(new Object[] {restaurantId, restaurantName, type, city});
+        }
+
+        @Override
+        public void dish(int dishNo, String dishName) {
+            dish(dishNo, dishName, null);
+        }
+
+        @Override
+        public void dish(int dishNo, String dishName, Type type) {
+            dishes.add(new Object[] {dishNo, dishName, type});
+        }
+
+        @Override
+        public void menuItem(int itemNo, int restaurantId, int dishNo, long priceCents) {
+            menuItems.add(new int[] {itemNo, restaurantId, dishNo, (int) priceCents});
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.truefmartin.storage;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of ints in insertion order, for the ids found in the indexes of {@link FixedLengthDatabase}.
+ */
+final class IntList {
+    private int[] values = new int[4];
+    private int size;
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.truefmartin.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The most recently used pages of a file, read on first use and written back when evicted or flushed.
+ * Pages are not evicted between {@link #beginWrite()} and {@link #endWrite()}, so a page changed by a
+ * write is never dropped before the write is done with it.
+ */
+final class PageCache {
+    static final int PAGE_SIZE = 4096;
+
+    private final FileChannel channel;
+    private final int capacity;
+    private final LinkedHashMap<Integer, Page> pages;
+    private boolean writing;
+    private long hits;
+    private long misses;
+
+    private static final class Page {
+        final ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        boolean dirty;
+    }
+
+    PageCache(FileChannel channel, int capacity) {
+        this.channel = channel;
+        this.capacity = Math.max(8, capacity);
+        pages = new LinkedHashMap<>(this.capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                if (writing || size() <= PageCache.this.capacity) {
+                    return false;
+                }
+                writeBack(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return the page, to be read only
+     */
+    synchronized ByteBuffer read(int pageNo) {
+        return page(pageNo).buffer;
+    }
+
+    /**
+     * @return the page, marked to be written back
+     */
+    synchronized ByteBuffer write(int pageNo) {
+        Page page = page(pageNo);
+        page.dirty = true;
+        return page.buffer;
+    }
+
+    /**
+     * @return a zeroed page that is not read from the file, marked to be written back
+     */
+    synchronized ByteBuffer create(int pageNo) {
+        Page page = new Page();
+        page.dirty = true;
+        pages.put(pageNo, page);
+        return page.buffer;
+    }
+
+    synchronized void beginWrite() {
+        writing = true;
+    }
+
+    // Evicts the pages over capacity that were kept while writing
+    synchronized void endWrite() {
+        writing = false;
+        var eldest = pages.entrySet().iterator();
+        while (pages.size() > capacity && eldest.hasNext()) {
+            var entry = eldest.next();
+            writeBack(entry.getKey(), entry.getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Writes every changed page to the file, without forcing it to disk.
+     */
+    synchronized void flush() {
+        for (Map.Entry<Integer, Page> entry : pages.entrySet()) {
+            writeBack(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Drops every page without writing it, e.g. before the file is rewritten.
+     */
+    synchronized void clear() {
+        pages.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("pages cached=%d/%d, hits=%d, misses=%d", pages.size(), capacity, hits, misses);
+    }
+
+    private Page page(int pageNo) {
+        Page page = pages.get(pageNo);
+        if (page != null) {
+            hits++;
+            return page;
+        }
+        misses++;
+        page = new Page();
+        try {
+            // Past the end of the file the page stays zeroed
+            ByteBuffer target = page.buffer.duplicate();
+            while (target.hasRemaining() && channel.read(target, (long) pageNo * PAGE_SIZE + target.position()) > 0) {
+                // A read may stop short of a full page
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not read page " + pageNo, e);
+        }
+        pages.put(pageNo, page);
+        return page;
+    }
+
+    /**
+     * Writes a page straight to the file, e.g. while bulk loading past the cache.
+     */
+    static void writePage(FileChannel channel, int pageNo, ByteBuffer page) throws IOException {
+        ByteBuffer source = page.duplicate().clear();
+        while (source.hasRemaining()) {
+            channel.write(source, (long) pageNo * PAGE_SIZE + source.position());
+        }
+    }
+
+    private void writeBack(int pageNo, Page page) {
+        if (!page.dirty) {
+            return;
+        }
+        try {
+            writePage(channel, pageNo, page.buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not write page " + pageNo, e);
+        }
+        page.dirty = false;
+    }
+}
@@ -0,0 +1,269 @@
+package com.github.truefmartin.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of fixed-length records, memory-mapped, so the record in a slot is read and written at
+ * header + slot * slot size without any search. Deleted slots are kept on a free list, linked through the slots
+ * themselves, and reused before the file grows.
+ * <p>
+ * Each slot is one status byte and the record. The header holds the record size, the number of slots ever used,
+ * the first free slot and the number of records. Not thread-safe, callers lock around it.
+ * Writes reach the file when the operating system writes the mapped pages back, or at {@link #force()}.
+ */
+public class RecordFile implements AutoCloseable {
+    private static final int MAGIC = 0x464C4442; // FLDB
+    private static final int HEADER_SIZE = 32;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int RECORD_SIZE_OFFSET = 4;
+    private static final int SLOT_COUNT_OFFSET = 8;
+    private static final int FREE_HEAD_OFFSET = 12;
+    private static final int RECORDS_OFFSET = 16;
+    private static final byte FREE = 0;
+    private static final byte USED = 1;
+    private static final int MIN_CAPACITY = 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int slotSize;
+    private MappedByteBuffer buffer;
+    private int capacity;
+
+    /**
+     * Opens a record file, creating it if it does not exist.
+     * @param path the file
+     * @param recordSize the bytes of each record, at least 4 so a free slot can link to the next
+     * @throws IllegalStateException if the file holds records of another size or is not a record file
+     */
+    public RecordFile(Path path, int recordSize) throws IOException {
+        if (recordSize < Integer.BYTES) {
+            throw new IllegalArgumentException("records must be at least 4 bytes, got " + recordSize);
+        }
+        this.path = path;
+        this.slotSize = recordSize + 1;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                map(MIN_CAPACITY);
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+                buffer.putInt(RECORD_SIZE_OFFSET, recordSize);
+            } else {
+                map((int) Math.max(MIN_CAPACITY, (channel.size() - HEADER_SIZE) / slotSize));
+                if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                    throw new IllegalStateException(path + " is not a record file");
+                }
+                if (buffer.getInt(RECORD_SIZE_OFFSET) != recordSize) {
+                    throw new IllegalStateException(String.format("%s holds records of %d bytes, expected %d",
+                            path, buffer.getInt(RECORD_SIZE_OFFSET), recordSize));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of slots ever used, records are in slots 0 to this - 1
+     */
+    public int getSlotCount() {
+        return buffer.getInt(SLOT_COUNT_OFFSET);
+    }
+
+    /**
+     * @return the number of records
+     */
+    public int size() {
+        return buffer.getInt(RECORDS_OFFSET);
+    }
+
+    public boolean isUsed(int slot) {
+        return slot >= 0 && slot < getSlotCount() && buffer.get(offset(slot)) == USED;
+    }
+
+    /**
+     * Takes the most recently freed slot, or a new one at the end if none is free.
+     * @return the slot, its record zeroed
+     */
+    public int allocate() {
+        int freeHead = buffer.getInt(FREE_HEAD_OFFSET);
+        int slot;
+        if (freeHead != 0) {
+            slot = freeHead - 1;
+            buffer.putInt(FREE_HEAD_OFFSET, buffer.getInt(offset(slot) + 1));
+        } else {
+            slot = getSlotCount();
+            ensureCapacity(slot + 1);
+            buffer.putInt(SLOT_COUNT_OFFSET, slot + 1);
+        }
+        use(slot);
+        return slot;
+    }
+
+    /**
+     * Takes a given slot, e.g. to keep the ids of copied records. Slots skipped over at the end are freed.
+     * Taking a slot in the middle of the free list walks the list, copies in id order never do.
+     * @param slot the slot to take
+     * @throws IllegalStateException if the slot is in use
+     */
+    public void allocate(int slot) {
+        int slotCount = getSlotCount();
+        if (slot >= slotCount) {
+            ensureCapacity(slot + 1);
+            buffer.putInt(SLOT_COUNT_OFFSET, slot + 1);
+            for (int skipped = slotCount; skipped < slot; skipped++) {
+                pushFree(skipped);
+            }
+            use(slot);
+            return;
+        }
+        if (buffer.get(offset(slot)) == USED) {
+            throw new IllegalStateException(path + " slot " + slot + " is in use");
+        }
+        int link = FREE_HEAD_OFFSET;
+        while (buffer.getInt(link) != slot + 1) {
+            link = offset(buffer.getInt(link) - 1) + 1;
+        }
+        buffer.putInt(link, buffer.getInt(offset(slot) + 1));
+        use(slot);
+    }
+
+    /**
+     * Puts a slot on the free list.
+     * @throws IllegalStateException if the slot is not in use
+     */
+    public void free(int slot) {
+        if (!isUsed(slot)) {
+            throw new IllegalStateException(path + " slot " + slot + " is not in use");
+        }
+        pushFree(slot);
+        buffer.putInt(RECORDS_OFFSET, size() - 1);
+    }
+
+    public byte getByte(int slot, int field) {
+        return buffer.get(offset(slot) + 1 + field);
+    }
+
+    public void putByte(int slot, int field, byte value) {
+        buffer.put(offset(slot) + 1 + field, value);
+    }
+
+    public short getShort(int slot, int field) {
+        return buffer.getShort(offset(slot) + 1 + field);
+    }
+
+    public void putShort(int slot, int field, short value) {
+        buffer.putShort(offset(slot) + 1 + field, value);
+    }
+
+    public int getInt(int slot, int field) {
+        return buffer.getInt(offset(slot) + 1 + field);
+    }
+
+    public void putInt(int slot, int field, int value) {
+        buffer.putInt(offset(slot) + 1 + field, value);
+    }
+
+    /**
+     * Reads a string field written by {@link #putString}.
+     */
+    public String getString(int slot, int field) {
+        int at = offset(slot) + 1 + field;
+        int length = buffer.get(at) & 0xFF;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar(at + 1 + 2 * i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Writes a string field of {@link #stringSize(int)} bytes: its length, then its chars.
+     * @throws IllegalArgumentException if the string is longer than maxLength, like varchar(maxLength) in strict mode
+     */
+    public void putString(int slot, int field, String value, int maxLength) {
+        if (value.length() > maxLength) {
+            throw new IllegalArgumentException(String.format("'%s' is longer than %d characters", value, maxLength));
+        }
+        int at = offset(slot) + 1 + field;
+        buffer.put(at, (byte) value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer.putChar(at + 1 + 2 * i, value.charAt(i));
+        }
+    }
+
+    /**
+     * @return the bytes of a string field of at most maxLength chars
+     */
+    public static int stringSize(int maxLength) {
+        return 1 + 2 * maxLength;
+    }
+
+    /**
+     * Writes the changed pages to the file.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private int offset(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    private void use(int slot) {
+        int at = offset(slot);
+        buffer.put(at, USED);
+        for (int i = 1; i < slotSize; i++) {
+            buffer.put(at + i, (byte) 0);
+        }
+        buffer.putInt(RECORDS_OFFSET, size() + 1);
+    }
+
+    private void pushFree(int slot) {
+        int at = offset(slot);
+        buffer.put(at, FREE);
+        buffer.putInt(at + 1, buffer.getInt(FREE_HEAD_OFFSET));
+        buffer.putInt(FREE_HEAD_OFFSET, slot + 1);
+    }
+
+    // Doubles the mapping until the slots fit, the file grows with it
+    private void ensureCapacity(int slots) {
+        if (slots <= capacity) {
+            return;
+        }
+        long newCapacity = capacity;
+        while (newCapacity < slots) {
+            newCapacity *= 2;
+        }
+        if (HEADER_SIZE + newCapacity * slotSize > Integer.MAX_VALUE) {
+            newCapacity = (Integer.MAX_VALUE - HEADER_SIZE) / slotSize;
+            if (newCapacity < slots) {
+                throw new IllegalStateException(path + " is full at " + capacity + " records");
+            }
+        }
+        try {
+            map((int) newCapacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not grow " + path, e);
+        }
+    }
+
+    private void map(int slots) throws IOException {
+        if (buffer != null) {
+            buffer.force();
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * slotSize);
+        capacity = slots;
+    }
+}
@@ -4,57 +4,85 @@ import com.github.truefmartin.models.DishEntity;
 import com.github.truefmartin.models.FoodOrderEntity;
 import com.github.truefmartin.models.MenuItemEntity;
 
-import java.math.BigDecimal;
-import java.sql.Date;
-import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
 
 /*
     Display the dishName, price, date, and time for all orders for that restaurant.
+    Rows hold the four values as primitives, the text is only built when a row is printed.
  */
 public class DisplayDishMenuOrder {
-    public final DishEntity dish;
-    public final MenuItemEntity menu;
-    public final FoodOrderEntity order;
-    private final String alternativeText;
+    private final String dishName;
+    private final int priceCents;
+    private final int epochDay;
+    private final int secondOfDay;
+
+    public DisplayDishMenuOrder(String dishName, int priceCents, int epochDay, int secondOfDay) {
+        this.dishName = dishName;
+        this.priceCents = priceCents;
+        this.epochDay = epochDay;
+        this.secondOfDay = secondOfDay;
+    }
+
+    public DisplayDishMenuOrder(String dishName, int priceCents, LocalDate date, LocalTime time) {
+        this(dishName, priceCents, (int) date.toEpochDay(), time.toSecondOfDay());
+    }
 
     public DisplayDishMenuOrder(DishEntity dish, MenuItemEntity menu, FoodOrderEntity order) {
-        this.dish = dish;
-        this.menu = menu;
-        this.order = order;
-        alternativeText = null;
-    }
-    public DisplayDishMenuOrder(Object[] untypedObjects) {
-        dish = null;
-        menu = null;
-        order = null;
-
-        String dName = (String) untypedObjects[0];
-        BigDecimal price = (BigDecimal) untypedObjects[1];
-        Date date = (Date) untypedObjects[2];
-        Time time = (Time) untypedObjects[3];
-        this.alternativeText = String.format("DisplayDishMenuOrder{\n" +
-                "\t%s\n" +
-                "\t%.2f\n" +
-                "\t%s\n" +
-                "\t%s\n" +
-                "}", dName, price.floatValue(), date.toString(), time.toString());
+        this(dish.getDishName(),
+                menu.getPrice().movePointRight(2).intValue(),
+                order.getDate().toLocalDate(),
+                order.getTime().toLocalTime());
+    }
+
+    public String getDishName() {
+        return dishName;
+    }
+
+    public int getPriceCents() {
+        return priceCents;
+    }
+
+    public LocalDate getDate() {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
+    public LocalTime getTime() {
+        return LocalTime.ofSecondOfDay(secondOfDay);
+    }
+
+    /**
+     * Writes the same text as toString, without building an intermediate String.
+     * @param out the builder to append to
+     * @return the builder
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        out.append("DisplayDishMenuOrder{\n\t").append(dishName).append("\n\t");
+        appendPrice(out, priceCents).append("\n\t")
+                .append(getDate()).append("\n\t");
+        appendTwoDigits(out, secondOfDay / 3600).append(':');
+        appendTwoDigits(out, secondOfDay / 60 % 60).append(':');
+        return appendTwoDigits(out, secondOfDay % 60).append("\n}");
+    }
+
+    private static StringBuilder appendPrice(StringBuilder out, int cents) {
+        if (cents < 0) {
+            out.append('-');
+            cents = -cents;
+        }
+        out.append(cents / 100).append('.');
+        return appendTwoDigits(out, cents % 100);
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder out, int value) {
+        if (value < 10) {
+            out.append('0');
+        }
+        return out.append(value);
     }
 
     @Override
     public String toString() {
-        if (alternativeText != null) {
-            return alternativeText;
-        }
-        return String.format("DisplayDishMenuOrder{\n" +
-                "\tdishName=%s,\n" +
-                "\tprice=%.2f\n" +
-                "\tdate=%s,\n" +
-                "\ttime=%s,\n" +
-                '}',
-                dish.getDishName(),
-                menu.getPrice(),
-                order.getDate().toString(),
-                order.getTime().toString()
-        );
+        return appendTo(new StringBuilder(64)).toString();
     }
 }